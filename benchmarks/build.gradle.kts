@@ -0,0 +1,72 @@
+// Standalone JMH build for the app module. Run with `gradle jmh` from this directory,
+// or `gradle jmhJar` and `java -jar build/libs/benchmarks-jmh.jar <regex>` for a subset.
+// `gradle loadTest --args="..."` runs the headless load generator (see loadtest.LoadGenerator),
+// `gradle referenceServer --args="..."` the in-process reference server (see server.ReferenceServer).
+
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.3"
+}
+
+repositories {
+    mavenCentral()
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// Plain-JVM build of the Android-free sources of the app module, so they can be measured with JMH.
+// src/main/java holds a console shim for android.util.Log and the JVM-only tools.
+// `gradle test` runs the unit tests of the app module along with those of src/test/java; none of them needs Android.
+sourceSets {
+    main {
+        java {
+            srcDir("../src/main/java")
+            include("android/**")
+            include("clarkson/ee408/tictactoev4/**")
+            include("client/**")
+            include("loadtest/**")
+            include("model/**")
+            include("server/**")
+            include("socket/**")
+            exclude("**/MainActivity.java", "client/AppExecutors.java")
+        }
+    }
+    test {
+        java {
+            srcDir("../src/test/java")
+        }
+    }
+}
+
+dependencies {
+    implementation("com.google.code.gson:gson:2.10.1")
+    testImplementation("junit:junit:4.13.2")
+}
+
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+}
+
+tasks.register<JavaExec>("generateOutcomeTable") {
+    description = "Regenerates the outcome table asset of the app."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("clarkson.ee408.tictactoev4.OutcomeTableGenerator")
+    args(file("../src/main/assets/outcomes.bin").absolutePath)
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Runs simulated players against a server and reports latency per request type."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("loadtest.LoadGenerator")
+}
+
+tasks.register<JavaExec>("referenceServer") {
+    description = "Runs the reference server of the protocol."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("server.ReferenceServer")
+}
@@ -0,0 +1,57 @@
+package clarkson.ee408.tictactoev4;
+
+/**
+ * The original int[][] implementation of {@link TicTacToe}, kept only as a baseline for the benchmarks.
+ */
+public class ArrayTicTacToe {
+    private final int [][] game = new int[TicTacToe.SIDE][TicTacToe.SIDE];
+    private int turn = 1;
+
+    public int play( int row, int col ) {
+        int currentTurn = turn;
+        if( row >= 0 && col >= 0 && row < TicTacToe.SIDE && col < TicTacToe.SIDE
+                && game[row][col] == 0 ) {
+            game[row][col] = turn;
+            turn = turn == 1 ? 2 : 1;
+            return currentTurn;
+        }
+        return 0;
+    }
+
+    public int whoWon( ) {
+        for( int row = 0; row < TicTacToe.SIDE; row++ )
+            if ( game[row][0] != 0 && game[row][0] == game[row][1]
+                    && game[row][1] == game[row][2] )
+                return game[row][0];
+        for( int col = 0; col < TicTacToe.SIDE; col++ )
+            if ( game[0][col] != 0 && game[0][col] == game[1][col]
+                    && game[1][col] == game[2][col] )
+                return game[0][col];
+        if ( game[0][0] != 0 && game[0][0] == game[1][1]
+                && game[1][1] == game[2][2] )
+            return game[0][0];
+        if ( game[0][2] != 0 && game[0][2] == game[1][1]
+                && game[1][1] == game[2][0] )
+            return game[2][0];
+        return 0;
+    }
+
+    public boolean canNotPlay( ) {
+        for (int row = 0; row < TicTacToe.SIDE; row++)
+            for( int col = 0; col < TicTacToe.SIDE; col++ )
+                if ( game[row][col] == 0 )
+                    return false;
+        return true;
+    }
+
+    public boolean isGameOver( ) {
+        return canNotPlay( ) || ( whoWon( ) > 0 );
+    }
+
+    public void resetGame( ) {
+        for (int row = 0; row < TicTacToe.SIDE; row++)
+            for( int col = 0; col < TicTacToe.SIDE; col++ )
+                game[row][col] = 0;
+        turn = 1;
+    }
+}
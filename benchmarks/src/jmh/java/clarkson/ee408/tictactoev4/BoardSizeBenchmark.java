@@ -0,0 +1,52 @@
+package clarkson.ee408.tictactoev4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sweeps board sizes of the generalized {@link TicTacToe}. Each invocation plays up to 200 random moves
+ * (fewer on small boards) with the win check after every move, so the score per move should stay flat
+ * as the board grows. Run with -prof gc to see that allocation follows the number of moves, not the board area.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BoardSizeBenchmark {
+
+    @Param({"3", "15", "100", "1000"})
+    public int side;
+
+    private TicTacToe game;
+    private int [] rows;
+    private int [] cols;
+
+    @Setup
+    public void setUp() {
+        game = new TicTacToe(1, side, Math.min(side, 5));
+        int count = (int) Math.min((long) side * side, 200);
+        rows = new int[count];
+        cols = new int[count];
+        Random random = new Random(side);
+        for (int i = 0; i < count; i++) {
+            rows[i] = random.nextInt(side);
+            cols[i] = random.nextInt(side);
+        }
+    }
+
+    @Benchmark
+    public long playRandomGame() {
+        game.resetGame();
+        for (int i = 0; i < rows.length && !game.isGameOver(); i++)
+            game.play(rows[i], cols[i]);
+        return game.getMoveCount() + game.whoWon();
+    }
+}
@@ -0,0 +1,75 @@
+package clarkson.ee408.tictactoev4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost of the memory-mapped {@link OutcomeTable} against a warm {@link TicTacToeSolver},
+ * and the cost of generating the table from scratch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OutcomeTableBenchmark {
+
+    private OutcomeTable table;
+    private TicTacToeSolver solver;
+    private int [] player1;
+    private int [] player2;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        File file = File.createTempFile("outcomes", ".bin");
+        file.deleteOnExit();
+        OutcomeTableGenerator generator = new OutcomeTableGenerator();
+        generator.generate();
+        generator.write(file);
+        table = OutcomeTable.map(file);
+        solver = new TicTacToeSolver();
+
+        Random random = new Random(9);
+        player1 = new int[1024];
+        player2 = new int[1024];
+        for (int i = 0; i < player1.length; i++) {
+            TicTacToe game = new TicTacToe(1);
+            int moves = random.nextInt(7);
+            while (game.getMoveCount() < moves && !game.isGameOver())
+                game.play(random.nextInt(TicTacToe.SIDE), random.nextInt(TicTacToe.SIDE));
+            if (game.isGameOver())
+                game.resetGame();
+            player1[i] = game.getMarks(1);
+            player2[i] = game.getMarks(2);
+            solver.bestMove(player1[i], player2[i]);
+        }
+    }
+
+    @Benchmark
+    public int tableLookup() {
+        int i = next++ & (player1.length - 1);
+        return table.bestMove(player1[i], player2[i]);
+    }
+
+    @Benchmark
+    public int warmSolver() {
+        int i = next++ & (player1.length - 1);
+        boolean firstToMove = Integer.bitCount(player1[i]) == Integer.bitCount(player2[i]);
+        return firstToMove ? solver.bestMove(player1[i], player2[i]) : solver.bestMove(player2[i], player1[i]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte [] generate() {
+        return new OutcomeTableGenerator().generate();
+    }
+}
@@ -0,0 +1,57 @@
+package clarkson.ee408.tictactoev4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link TicTacToeSolver} move hints: a cold solve of the empty board, and best-move queries
+ * on random positions against a warm transposition table (the steady state of a bot server).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SolverBenchmark {
+
+    private TicTacToeSolver warm;
+    private int [] mine;
+    private int [] theirs;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        warm = new TicTacToeSolver();
+        Random random = new Random(4);
+        mine = new int[1024];
+        theirs = new int[1024];
+        for (int i = 0; i < mine.length; i++) {
+            TicTacToe game = new TicTacToe(1);
+            int moves = random.nextInt(7);
+            while (game.getMoveCount() < moves && !game.isGameOver())
+                game.play(random.nextInt(TicTacToe.SIDE), random.nextInt(TicTacToe.SIDE));
+            if (game.isGameOver())
+                game.resetGame();
+            mine[i] = game.getMarks(game.getTurn());
+            theirs[i] = game.getMarks(game.getTurn() == 1 ? 2 : 1);
+            warm.bestMove(mine[i], theirs[i]);
+        }
+    }
+
+    @Benchmark
+    public int coldEmptyBoard() {
+        return new TicTacToeSolver().bestMove(0, 0);
+    }
+
+    @Benchmark
+    public int warmBestMove() {
+        int i = next++ & (mine.length - 1);
+        return warm.bestMove(mine[i], theirs[i]);
+    }
+}
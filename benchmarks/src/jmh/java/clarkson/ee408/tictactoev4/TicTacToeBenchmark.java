@@ -0,0 +1,74 @@
+package clarkson.ee408.tictactoev4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bitboard {@link TicTacToe} with the original array version ({@link ArrayTicTacToe}).
+ * Each invocation plays a full game the way MainActivity drives it: play, then isGameOver, then result on the last move.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TicTacToeBenchmark {
+
+    /**
+     * A drawn game, so every move goes through the full win and tie checks.
+     */
+    private static final int [] MOVES = {4, 0, 8, 2, 1, 7, 6, 3, 5};
+
+    private TicTacToe bitboard;
+    private ArrayTicTacToe array;
+
+    @Setup
+    public void setUp() {
+        bitboard = new TicTacToe(1);
+        array = new ArrayTicTacToe();
+    }
+
+    @Benchmark
+    public int bitboardGame() {
+        bitboard.resetGame();
+        int over = 0;
+        for (int move : MOVES) {
+            bitboard.play(move / TicTacToe.SIDE, move % TicTacToe.SIDE);
+            if (bitboard.isGameOver())
+                over += bitboard.whoWon() + 1;
+        }
+        return over;
+    }
+
+    @Benchmark
+    public int arrayGame() {
+        array.resetGame();
+        int over = 0;
+        for (int move : MOVES) {
+            array.play(move / TicTacToe.SIDE, move % TicTacToe.SIDE);
+            if (array.isGameOver())
+                over += array.whoWon() + 1;
+        }
+        return over;
+    }
+
+    @Benchmark
+    public int bitboardWhoWon() {
+        return bitboard.whoWon();
+    }
+
+    @Benchmark
+    public int arrayWhoWon() {
+        return array.whoWon();
+    }
+
+    @Benchmark
+    public String bitboardResult() {
+        return bitboard.result();
+    }
+}
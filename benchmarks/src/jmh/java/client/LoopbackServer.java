@@ -0,0 +1,93 @@
+package client;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import socket.BinaryCodec;
+import socket.GamingResponse;
+import socket.JsonCodecs;
+import socket.Request;
+import socket.Response;
+
+/**
+ * Minimal stub server for benchmarks: one thread per connection, the same writeUTF framing as the real server,
+ * and canned answers (a GamingResponse for REQUEST_MOVE, a plain SUCCESS Response for everything else)
+ * that echo the request's correlation id. It accepts NEGOTIATE_FORMAT for the binary format. Output is flushed once no more pipelined requests are buffered.
+ */
+public class LoopbackServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final Gson gson = JsonCodecs.gson();
+
+    public LoopbackServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "loopback-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread connection = new Thread(() -> serve(socket), "loopback-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        GamingResponse move = new GamingResponse(Response.ResponseStatus.SUCCESS, null, 4, true);
+        Response success = new Response(Response.ResponseStatus.SUCCESS, null);
+        try (Socket s = socket;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            boolean binary = false;
+            while (true) {
+                Request request = binary ? BinaryCodec.decodeRequest(BinaryCodec.readFrame(input))
+                        : gson.fromJson(input.readUTF(), Request.class);
+                Response response;
+                if (request.getType() == Request.RequestType.NEGOTIATE_FORMAT) {
+                    response = new Response(Response.ResponseStatus.SUCCESS, null);
+                } else {
+                    response = request.getType() == Request.RequestType.REQUEST_MOVE ? move : success;
+                }
+                response.setId(request.getId());
+                if (binary) {
+                    BinaryCodec.writeFrame(output, BinaryCodec.encode(response));
+                } else {
+                    output.writeUTF(gson.toJson(response));
+                }
+                if (request.getType() == Request.RequestType.NEGOTIATE_FORMAT)
+                    binary = BinaryCodec.FORMAT.equals(request.getData());
+                if (input.available() == 0)
+                    output.flush();
+            }
+        } catch (EOFException e) {
+            // Client closed the connection
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,66 @@
+package client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import socket.GamingResponse;
+import socket.Request;
+
+/**
+ * Throughput of {@link SocketClient#send(Request, Class)} with a given number of requests in flight on one
+ * connection. Scores are per request, so they should drop as the depth grows instead of staying at one round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(PipelineBenchmark.BATCH)
+public class PipelineBenchmark {
+    static final int BATCH = 64;
+
+    @Param({"1", "8", "64"})
+    public int depth;
+
+    private LoopbackServer server;
+    private SocketClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        client = new SocketClient("127.0.0.1", server.getPort());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public int requestMoves() {
+        CompletableFuture<GamingResponse> [] window = new CompletableFuture[depth];
+        int moves = 0;
+        for (int sent = 0; sent < BATCH; sent++) {
+            int slot = sent % depth;
+            if (window[slot] != null)
+                moves += window[slot].join().getMove();
+            window[slot] = client.send(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class);
+        }
+        for (CompletableFuture<GamingResponse> future : window)
+            if (future != null)
+                moves += future.join().getMove();
+        return moves;
+    }
+}
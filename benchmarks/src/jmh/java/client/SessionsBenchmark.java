@@ -0,0 +1,80 @@
+package client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import socket.GamingResponse;
+import socket.Request;
+
+/**
+ * One REQUEST_MOVE round across many sessions in one JVM, as a bot or load-test process runs them:
+ * a blocking {@link SocketClient} per session (one reader thread each) against {@link NioSocketClient}s sharing
+ * one {@link NioEventLoop} thread. Scores are per round, so divide by the number of sessions for a request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionsBenchmark {
+
+    @Param({"16", "256"})
+    public int sessions;
+
+    @Param({"blocking", "nio"})
+    public String transport;
+
+    private LoopbackServer server;
+    private NioEventLoop loop;
+    private final List<SocketClient> blockingClients = new ArrayList<>();
+    private final List<NioSocketClient> nioClients = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new LoopbackServer();
+        if (transport.equals("nio")) {
+            loop = new NioEventLoop();
+            for (int i = 0; i < sessions; i++)
+                nioClients.add(loop.connect("127.0.0.1", server.getPort()).get(5, TimeUnit.SECONDS));
+        } else {
+            for (int i = 0; i < sessions; i++)
+                blockingClients.add(new SocketClient("127.0.0.1", server.getPort()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (SocketClient client : blockingClients)
+            client.close();
+        for (NioSocketClient client : nioClients)
+            client.close();
+        if (loop != null)
+            loop.close();
+        server.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public int requestMoveRound() {
+        CompletableFuture<GamingResponse> [] round = new CompletableFuture[sessions];
+        for (int i = 0; i < sessions; i++) {
+            Request request = new Request(Request.RequestType.REQUEST_MOVE, null);
+            round[i] = loop != null ? nioClients.get(i).send(request, GamingResponse.class)
+                    : blockingClients.get(i).send(request, GamingResponse.class);
+        }
+        int moves = 0;
+        for (CompletableFuture<GamingResponse> future : round)
+            moves += future.join().getMove();
+        return moves;
+    }
+}
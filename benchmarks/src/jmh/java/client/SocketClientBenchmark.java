@@ -0,0 +1,66 @@
+package client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import socket.GamingResponse;
+import socket.Request;
+import socket.Response;
+
+/**
+ * Round trips of {@link SocketClient#sendRequest(Request, Class)} against a {@link LoopbackServer}:
+ * encoding, framing and decoding in JSON or the negotiated binary format, with loopback TCP instead of a real network,
+ * with metrics off ({@link MetricsRegistry#NOOP}) or recorded by an {@link InMemoryMetrics}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SocketClientBenchmark {
+
+    @Param({"false", "true"})
+    public boolean binary;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private LoopbackServer server;
+    private SocketClient client;
+    private final Request requestMove = new Request(Request.RequestType.REQUEST_MOVE, null);
+    private final Request sendMove = Request.of(Request.RequestType.SEND_MOVE, 4);
+
+    @Setup
+    public void setUp() throws IOException {
+        Metrics.setRegistry(metrics ? new InMemoryMetrics() : null);
+        server = new LoopbackServer();
+        client = new SocketClient("127.0.0.1", server.getPort(), binary);
+        if (client.isBinary() != binary)
+            throw new IllegalStateException("Wire format not negotiated");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        Metrics.setRegistry(null);
+    }
+
+    @Benchmark
+    public GamingResponse requestMoveRoundTrip() {
+        return client.sendRequest(requestMove, GamingResponse.class);
+    }
+
+    @Benchmark
+    public Response sendMoveRoundTrip() {
+        return client.sendRequest(sendMove, Response.class);
+    }
+}
@@ -0,0 +1,117 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import model.Event;
+import model.User;
+import socket.PairingResponse;
+
+/**
+ * {@link PairingIndex} with 100k online players, 10% of them with a pending invitation and ratings spread over
+ * eight quick-match buckets: an UPDATE_PAIRING poll against a full scan of the online players (what the server did
+ * before the index), a delta poll from the previous version, a poll while another thread keeps changing availability,
+ * login / logout, and a quick-match.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PairingIndexBenchmark {
+
+    @Param({"100000"})
+    public int users;
+
+    private PairingIndex index;
+    private Player [] players;
+
+    @Setup
+    public void setUp() {
+        index = new PairingIndex();
+        players = new Player[users];
+        for (int i = 0; i < users; i++) {
+            players[i] = new Player(new User("user" + i, "secret", "User " + i, false));
+            players[i].setRating(800 + i % 800);
+            index.login(players[i]);
+        }
+        for (int i = 0; i < users / 10; i++)
+            index.addInvitation(new Event(i + 1, players[i].getUsername(), players[users - 1 - i].getUsername(),
+                    Event.EventStatus.PENDING, null, -1));
+    }
+
+    private Player randomPlayer() {
+        return players[ThreadLocalRandom.current().nextInt(users)];
+    }
+
+    @Benchmark
+    public void updatePairing(Blackhole blackhole) {
+        Player player = randomPlayer();
+        blackhole.consume(index.listAvailable(player));
+        blackhole.consume(index.getInvitation(player));
+    }
+
+    @Benchmark
+    public PairingResponse updatePairingDelta() {
+        Player player = randomPlayer();
+        PairingResponse previous = new PairingResponse();
+        index.fillAvailable(player, null, previous);
+        index.setAvailable(player, false);
+        index.setAvailable(player, true);
+        PairingResponse delta = new PairingResponse();
+        index.fillAvailable(randomPlayer(), previous.getVersion(), delta);
+        return delta;
+    }
+
+    @Benchmark
+    public List<User> fullScan() {
+        Player player = randomPlayer();
+        List<User> available = new ArrayList<>();
+        for (Player other : players) {
+            if (other != player && index.isAvailable(other))
+                available.add(other.getListing());
+        }
+        return available;
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public void pollDuringChurn(Blackhole blackhole) {
+        updatePairing(blackhole);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void startAndEndGame() {
+        Player player = randomPlayer();
+        index.setAvailable(player, false);
+        index.setAvailable(player, true);
+    }
+
+    @Benchmark
+    public void loginLogout() {
+        Player player = randomPlayer();
+        index.logout(player);
+        index.login(player);
+    }
+
+    @Benchmark
+    public Player quickMatch() {
+        index.quickMatch(randomPlayer());
+        return index.quickMatch(randomPlayer());
+    }
+}
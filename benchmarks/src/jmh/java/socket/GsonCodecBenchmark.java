@@ -0,0 +1,105 @@
+package socket;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import model.Event;
+import model.User;
+
+/**
+ * Gson encoding and decoding of the protocol messages: the {@link JsonCodecs} adapters used by SocketClient and
+ * MainActivity, against Gson's reflective binding they replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GsonCodecBenchmark {
+
+    @Param({"adapters", "reflective"})
+    public String codec;
+
+    private boolean reflective;
+    private Gson gson;
+    private Request request;
+    private Response response;
+    private GamingResponse gamingResponse;
+    private Event event;
+    private String requestJson;
+    private String responseJson;
+    private String gamingResponseJson;
+    private String eventJson;
+
+    @Setup
+    public void setUp() {
+        reflective = codec.equals("reflective");
+        gson = reflective ? new GsonBuilder().serializeNulls().create() : JsonCodecs.gson();
+        User user = new User("player1", "secret", "Player One", true);
+        // The reflective path can only send the payload as a serialized string inside the request.
+        request = reflective ? new Request(Request.RequestType.LOGIN, gson.toJson(user))
+                : Request.of(Request.RequestType.LOGIN, user);
+        response = new Response(Response.ResponseStatus.SUCCESS, "Move sent");
+        gamingResponse = new GamingResponse(Response.ResponseStatus.SUCCESS, null, 4, true);
+        event = new Event(408, "player1", "player2", Event.EventStatus.PLAYING, "player1", 4);
+        requestJson = gson.toJson(request);
+        responseJson = gson.toJson(response);
+        gamingResponseJson = gson.toJson(gamingResponse);
+        eventJson = gson.toJson(event);
+    }
+
+    @Benchmark
+    public String encodeRequest() {
+        return gson.toJson(request);
+    }
+
+    @Benchmark
+    public Request decodeRequest() {
+        return gson.fromJson(requestJson, Request.class);
+    }
+
+    @Benchmark
+    public User decodeLoginPayload() {
+        Request decoded = gson.fromJson(requestJson, Request.class);
+        return reflective ? gson.fromJson(decoded.getData(), User.class) : decoded.getPayload(User.class);
+    }
+
+    @Benchmark
+    public String encodeResponse() {
+        return gson.toJson(response);
+    }
+
+    @Benchmark
+    public Response decodeResponse() {
+        return gson.fromJson(responseJson, Response.class);
+    }
+
+    @Benchmark
+    public String encodeGamingResponse() {
+        return gson.toJson(gamingResponse);
+    }
+
+    @Benchmark
+    public GamingResponse decodeGamingResponse() {
+        return gson.fromJson(gamingResponseJson, GamingResponse.class);
+    }
+
+    @Benchmark
+    public String encodeEvent() {
+        return gson.toJson(event);
+    }
+
+    @Benchmark
+    public Event decodeEvent() {
+        return gson.fromJson(eventJson, Event.class);
+    }
+}
@@ -0,0 +1,93 @@
+package socket;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of JSON (as sent with writeUTF) against {@link BinaryCodec}, for the messages of a move
+ * exchange. Bytes on the wire for each format are printed by the setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireFormatBenchmark {
+
+    private Gson gson;
+    private Request request;
+    private GamingResponse response;
+    private String requestJson;
+    private String responseJson;
+    private byte [] requestBinary;
+    private byte [] responseBinary;
+
+    @Setup
+    public void setUp() {
+        gson = JsonCodecs.gson();
+        request = Request.of(Request.RequestType.SEND_MOVE, 4);
+        request.setId(1234);
+        response = new GamingResponse(Response.ResponseStatus.SUCCESS, null, 4, true);
+        response.setId(1234);
+        requestJson = gson.toJson(request);
+        responseJson = gson.toJson(response);
+        requestBinary = BinaryCodec.encode(request);
+        responseBinary = BinaryCodec.encode(response);
+        System.out.printf("%nBytes on the wire: SEND_MOVE %d JSON / %d binary, GamingResponse %d JSON / %d binary%n",
+                wireSize(requestJson), requestBinary.length + 1, wireSize(responseJson), responseBinary.length + 1);
+    }
+
+    private static int wireSize(String json) {
+        // writeUTF: 2-byte length and modified UTF-8, the same as UTF-8 for these ASCII strings
+        return json.getBytes(StandardCharsets.UTF_8).length + 2;
+    }
+
+    @Benchmark
+    public String jsonEncodeRequest() {
+        return gson.toJson(request);
+    }
+
+    @Benchmark
+    public byte [] binaryEncodeRequest() {
+        return BinaryCodec.encode(request);
+    }
+
+    @Benchmark
+    public Request jsonDecodeRequest() {
+        return gson.fromJson(requestJson, Request.class);
+    }
+
+    @Benchmark
+    public Request binaryDecodeRequest() throws IOException {
+        return BinaryCodec.decodeRequest(requestBinary);
+    }
+
+    @Benchmark
+    public String jsonEncodeResponse() {
+        return gson.toJson(response);
+    }
+
+    @Benchmark
+    public byte [] binaryEncodeResponse() {
+        return BinaryCodec.encode(response);
+    }
+
+    @Benchmark
+    public GamingResponse jsonDecodeResponse() {
+        return gson.fromJson(responseJson, GamingResponse.class);
+    }
+
+    @Benchmark
+    public Response binaryDecodeResponse() throws IOException {
+        return BinaryCodec.decodeResponse(responseBinary);
+    }
+}
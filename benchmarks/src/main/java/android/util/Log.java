@@ -0,0 +1,36 @@
+package android.util;
+
+/**
+ * Console replacement for the Android logger, so client code can run on a plain JVM.
+ */
+public final class Log {
+    private Log() {
+    }
+
+    public static int d(String tag, String msg) {
+        return println("D", tag, msg, null);
+    }
+
+    public static int i(String tag, String msg) {
+        return println("I", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return println("W", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg) {
+        return println("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println("E", tag, msg, tr);
+    }
+
+    private static int println(String level, String tag, String msg, Throwable tr) {
+        System.err.println(level + "/" + tag + ": " + msg);
+        if (tr != null)
+            tr.printStackTrace();
+        return 0;
+    }
+}
@@ -0,0 +1,151 @@
+package loadtest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import client.InMemoryMetrics;
+import client.LatencyHistogram;
+import client.Metrics;
+import client.SocketClient;
+import server.ReferenceServer;
+import socket.Request;
+
+/**
+ * Headless load generator: simulated players (see {@link SimulatedPlayer}) play games against each other in pairs
+ * through a server, each on its own {@link SocketClient} and thread, and the latency of every request is recorded
+ * by type. Without --host an in-process {@link ReferenceServer} on the loopback interface is used, so no outside
+ * network is needed.
+ * <p>
+ * Options: --host NAME, --port N, --players N (concurrent players, rounded up to an even number, default 32),
+ * --games N (games per pair, default 10), --think-ms N (mean think time before each request, default 5),
+ * --timeout-s N (default 300).
+ * Run with {@code gradle loadTest --args="--players 128 --think-ms 2"} from the benchmarks directory.
+ */
+public class LoadGenerator {
+
+    /**
+     * Latencies and outcomes of the requests, per {@link Request.RequestType}.
+     */
+    static class Stats {
+        private final Map<Request.RequestType, LatencyHistogram> latencies = new EnumMap<>(Request.RequestType.class);
+        private final Map<Request.RequestType, AtomicLong> errors = new EnumMap<>(Request.RequestType.class);
+
+        Stats() {
+            for (Request.RequestType type : Request.RequestType.values()) {
+                latencies.put(type, new LatencyHistogram());
+                errors.put(type, new AtomicLong());
+            }
+        }
+
+        /**
+         * Records one request.
+         *
+         * @param type The type of the request.
+         * @param nanos Time from sending the request to receiving the response.
+         * @param success Whether a SUCCESS response was received.
+         */
+        void record(Request.RequestType type, long nanos, boolean success) {
+            latencies.get(type).record(nanos);
+            if (!success)
+                errors.get(type).incrementAndGet();
+        }
+
+        /**
+         * Prints count, errors, throughput and latency percentiles of every request type that was sent.
+         *
+         * @param elapsedNanos Duration of the run.
+         */
+        void print(long elapsedNanos) {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%-22s %9s %7s %10s %9s %9s %9s %9s%n",
+                    "type", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+            long total = 0;
+            long totalErrors = 0;
+            for (Request.RequestType type : Request.RequestType.values()) {
+                LatencyHistogram histogram = latencies.get(type);
+                if (histogram.getCount() == 0)
+                    continue;
+                total += histogram.getCount();
+                totalErrors += errors.get(type).get();
+                System.out.printf("%-22s %9d %7d %10.1f %9.3f %9.3f %9.3f %9.3f%n", type, histogram.getCount(),
+                        errors.get(type).get(), histogram.getCount() / seconds, histogram.getPercentile(50) / 1e6,
+                        histogram.getPercentile(99) / 1e6, histogram.getPercentile(99.9) / 1e6, histogram.getMax() / 1e6);
+            }
+            System.out.printf("%-22s %9d %7d %10.1f%n", "TOTAL", total, totalErrors, total / seconds);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = null;
+        int port = 0;
+        int players = 32;
+        int games = 10;
+        long thinkMillis = 5;
+        long timeoutSeconds = 300;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--host": host = args[i + 1]; break;
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--players": players = Integer.parseInt(args[i + 1]); break;
+                case "--games": games = Integer.parseInt(args[i + 1]); break;
+                case "--think-ms": thinkMillis = Long.parseLong(args[i + 1]); break;
+                case "--timeout-s": timeoutSeconds = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        players += players % 2;
+
+        ReferenceServer server = null;
+        if (host == null) {
+            server = new ReferenceServer();
+            host = "127.0.0.1";
+            port = server.getPort();
+        }
+        System.out.printf("%d players, %d games per pair, %d ms think time, server %s:%d%n",
+                players, games, thinkMillis, host, port);
+
+        Stats stats = new Stats();
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Metrics.setRegistry(metrics);
+        String run = Long.toString(System.currentTimeMillis(), 36); // Fresh usernames against a long-lived server.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        List<SocketClient> clients = new ArrayList<>();
+        List<SimulatedPlayer> simulated = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            SocketClient client = new SocketClient(host, port);
+            clients.add(client);
+            int pair = i / 2;
+            boolean isHost = i % 2 == 0;
+            SimulatedPlayer player = new SimulatedPlayer(stats, client, "load-" + run + "-" + i,
+                    "load-" + run + "-" + (isHost ? i + 1 : i - 1), isHost, games, thinkMillis, deadline);
+            simulated.add(player);
+            threads.add(new Thread(player, "player-" + pair + (isHost ? "-host" : "-guest")));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        long elapsed = System.nanoTime() - start;
+
+        int completed = 0;
+        for (int i = 0; i < simulated.size(); i += 2)
+            completed += Math.min(simulated.get(i).getCompletedGames(), simulated.get(i + 1).getCompletedGames());
+        System.out.printf("%d of %d games completed in %.2f s%n", completed, players / 2 * games, elapsed / 1e9);
+        stats.print(elapsed);
+        Map<String, Long> snapshot = metrics.snapshot();
+        System.out.printf("%d bytes out, %d bytes in, %d connections, %d reconnects%n", snapshot.get("bytes.out"),
+                snapshot.get("bytes.in"), snapshot.get("connections.opened"), snapshot.get("connections.reconnects"));
+
+        for (SocketClient client : clients)
+            client.close();
+        if (server != null)
+            server.close();
+    }
+}
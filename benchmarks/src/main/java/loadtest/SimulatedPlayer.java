@@ -0,0 +1,212 @@
+package loadtest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import clarkson.ee408.tictactoev4.TicTacToe;
+import client.PairingCache;
+import client.SocketClient;
+import model.Event;
+import model.User;
+import socket.GamingResponse;
+import socket.PairingResponse;
+import socket.Request;
+import socket.Response;
+
+/**
+ * One simulated player on its own connection, going through the whole protocol for a number of games against a
+ * fixed partner: REGISTER and LOGIN, then for every game UPDATE_PAIRING, SEND_INVITATION (host) or
+ * ACCEPT_INVITATION (guest), ACKNOWLEDGE_RESPONSE (host), the SEND_MOVE / REQUEST_MOVE loop with random legal moves
+ * (each poll asks for the moves since the ones the player has),
+ * and COMPLETE_GAME from the player who received the last move, batched with the poll of the next game.
+ * Players only coordinate through the server, and wait a random think time before every request. Polls are
+ * delta UPDATE_PAIRING requests applied to a {@link PairingCache}, as a client would.
+ */
+class SimulatedPlayer implements Runnable {
+    private final LoadGenerator.Stats stats;
+    private final SocketClient client;
+    private final String username;
+    private final String partner;
+    private final boolean host; // Sends the invitations and plays first.
+    private final int games;
+    private final long thinkMillis;
+    private final long deadlineNanos;
+    private final PairingCache pairing = new PairingCache();
+    private int lastEventId; // Of the last invitation or answer handled, which the cache may still hold.
+    private int completedGames;
+
+    /**
+     *
+     * @param stats Where request latencies and errors are recorded
+     * @param client The connection of this player
+     * @param username The username of this player
+     * @param partner The username of the other player of the pair
+     * @param host Whether this player invites the partner and plays first
+     * @param games Number of games to play
+     * @param thinkMillis Mean think time before each request
+     * @param deadlineNanos {@link System#nanoTime()} after which the player gives up
+     */
+    SimulatedPlayer(LoadGenerator.Stats stats, SocketClient client, String username, String partner, boolean host,
+                    int games, long thinkMillis, long deadlineNanos) {
+        this.stats = stats;
+        this.client = client;
+        this.username = username;
+        this.partner = partner;
+        this.host = host;
+        this.games = games;
+        this.thinkMillis = thinkMillis;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Getter function for {@link #completedGames} attribute
+     * @return completedGames
+     */
+    int getCompletedGames() {
+        return completedGames;
+    }
+
+    @Override
+    public void run() {
+        try {
+            User user = new User(username, "secret", username, false);
+            send(Request.of(Request.RequestType.REGISTER, user), Response.class);
+            if (!succeeded(send(Request.of(Request.RequestType.LOGIN, user), Response.class)))
+                return;
+            for (int game = 0; game < games && !expired(); game++) {
+                if (host ? invite() : acceptInvitation())
+                    if (play())
+                        completedGames++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Invites the partner until they are available, and acknowledges their answer. The partner is not looked up in
+     * the available users, which servers may truncate.
+     */
+    private boolean invite() throws InterruptedException {
+        boolean invited = false;
+        while (!invited && !expired()) {
+            poll();
+            invited = succeeded(send(Request.of(Request.RequestType.SEND_INVITATION, partner), Response.class));
+        }
+        if (!invited)
+            return false;
+        while (!expired()) {
+            poll();
+            Event answer = pairing.getInvitationResponse();
+            if (answer != null && answer.getEventId() > lastEventId && partner.equals(answer.getOpponent())) {
+                lastEventId = answer.getEventId();
+                send(Request.of(Request.RequestType.ACKNOWLEDGE_RESPONSE, answer.getEventId()), Response.class);
+                return answer.getStatus() == Event.EventStatus.ACCEPTED;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the partner's invitation and accepts it.
+     */
+    private boolean acceptInvitation() throws InterruptedException {
+        while (!expired()) {
+            poll();
+            Event invitation = pairing.getInvitation();
+            if (invitation != null && invitation.getEventId() > lastEventId && partner.equals(invitation.getSender())) {
+                lastEventId = invitation.getEventId();
+                return succeeded(send(Request.of(Request.RequestType.ACCEPT_INVITATION, invitation.getEventId()),
+                        Response.class));
+            }
+        }
+        return false;
+    }
+
+    private void poll() throws InterruptedException {
+        pairing.apply(send(pairing.newRequest(), PairingResponse.class));
+    }
+
+    /**
+     * Plays one game to the end.
+     *
+     * @return true if the game finished normally.
+     */
+    private boolean play() throws InterruptedException {
+        TicTacToe game = new TicTacToe(1);
+        int me = host ? 1 : 2;
+        while (!game.isGameOver()) {
+            if (expired())
+                return false;
+            if (game.getTurn() == me) {
+                int cell = randomFreeCell(game);
+                if (!succeeded(send(Request.of(Request.RequestType.SEND_MOVE, cell), Response.class)))
+                    continue; // e.g. the host's first move before the partner's game started; try again
+                game.play(cell / TicTacToe.SIDE, cell % TicTacToe.SIDE);
+            } else {
+                GamingResponse response = send(Request.of(Request.RequestType.REQUEST_MOVE, (int) game.getMoveCount()),
+                        GamingResponse.class);
+                if (response == null || response.getStatus() != Response.ResponseStatus.SUCCESS)
+                    continue;
+                if (response.getMoves() != null && !response.getMoves().isEmpty()) {
+                    for (int move : response.getMoves())
+                        game.play(move / TicTacToe.SIDE, move % TicTacToe.SIDE);
+                    if (game.isGameOver())
+                        return completeGame();
+                } else if (!response.isActive()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Completes the game and polls for the next one in the same round trip.
+     */
+    private boolean completeGame() throws InterruptedException {
+        SocketClient.Batch batch = client.batch()
+                .add(new Request(Request.RequestType.COMPLETE_GAME, null), Response.class)
+                .add(pairing.newRequest(), PairingResponse.class);
+        if (thinkMillis > 0)
+            Thread.sleep(ThreadLocalRandom.current().nextLong(2 * thinkMillis + 1));
+        long start = System.nanoTime();
+        List<Response> responses = batch.sendRequest();
+        stats.record(Request.RequestType.BATCH, System.nanoTime() - start, responses != null);
+        if (responses == null)
+            return false;
+        pairing.apply((PairingResponse) responses.get(1));
+        return succeeded(responses.get(0));
+    }
+
+    private static int randomFreeCell(TicTacToe game) {
+        int free = TicTacToe.FULL_BOARD & ~(game.getMarks(1) | game.getMarks(2));
+        int pick = ThreadLocalRandom.current().nextInt(Integer.bitCount(free));
+        for (int cell = 0; ; cell++)
+            if ((free & (1 << cell)) != 0 && pick-- == 0)
+                return cell;
+    }
+
+    /**
+     * Thinks, then sends a request and records its latency under its type.
+     *
+     * @return The response, or null if the request failed.
+     */
+    private <T extends Response> T send(Request request, Class<T> responseClass) throws InterruptedException {
+        if (thinkMillis > 0)
+            Thread.sleep(ThreadLocalRandom.current().nextLong(2 * thinkMillis + 1));
+        long start = System.nanoTime();
+        T response = client.sendRequest(request, responseClass);
+        stats.record(request.getType(), System.nanoTime() - start,
+                response != null && response.getStatus() == Response.ResponseStatus.SUCCESS);
+        return response;
+    }
+
+    private static boolean succeeded(Response response) {
+        return response != null && response.getStatus() == Response.ResponseStatus.SUCCESS;
+    }
+
+    private boolean expired() {
+        return System.nanoTime() - deadlineNanos > 0;
+    }
+}
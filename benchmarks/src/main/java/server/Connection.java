@@ -0,0 +1,319 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.gson.Gson;
+
+import socket.BinaryCodec;
+import socket.Frames;
+import socket.JsonCodecs;
+import socket.Request;
+import socket.Response;
+
+/**
+ * One client connection of the {@link ReferenceServer}. The I/O thread parses the frames that arrive into a mailbox;
+ * the connection itself is the small task that a worker runs to handle them, scheduled only while the mailbox is not
+ * empty, so requests of a connection are handled in order and an idle connection costs no thread. The responses of
+ * one run are written together.
+ */
+class Connection implements Runnable {
+    private static final Object DISCONNECTED = new Object(); // Last mail of a closed connection.
+    private static final int MAX_BATCH = 64; // Requests handled per run before giving the worker to others.
+
+    private final ReferenceServer server;
+    private final SocketChannel channel;
+    private final Gson gson = JsonCodecs.gson();
+    private final Queue<Object> mailbox = new ConcurrentLinkedQueue<>(); // JSON strings and binary payloads.
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Object writeLock = new Object(); // Guards the fields below.
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    private boolean writeInterest; // OP_WRITE was requested because the socket was full.
+    private boolean closed;
+
+    private SelectionKey key; // I/O thread only, like the field below.
+    private ByteBuffer inbound; // Start of a frame that has not fully arrived, in write mode.
+    private volatile boolean binary; // Set by the worker before the NEGOTIATE_FORMAT response is written.
+    private Player player; // Worker only; runs of the task are ordered by scheduled.
+    private final Frames.Handler frames = new Frames.Handler() {
+        @Override
+        public boolean isBinary() {
+            return binary;
+        }
+
+        @Override
+        public void onJson(String json) {
+            deliver(json);
+        }
+
+        @Override
+        public void onBinary(byte [] payload) {
+            deliver(payload);
+        }
+    };
+
+    Connection(ReferenceServer server, SocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+    }
+
+    /**
+     * Getter function for {@link #player} attribute, on the worker
+     * @return player
+     */
+    Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Setter function for {@link #player} attribute, on the worker
+     * @param player The player logged in on this connection
+     */
+    void setPlayer(Player player) {
+        this.player = player;
+    }
+
+    /**
+     * Setter function for {@link #key} attribute, on the I/O thread
+     * @param key The key of the channel in the selector of the server
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Sends a frame that is not the answer to a request, e.g. a pushed move. Safe from any thread.
+     *
+     * @param response The response, sent with id {@link Response#PUSH_ID}.
+     */
+    void push(Response response) {
+        response.setId(Response.PUSH_ID);
+        try {
+            write(encode(response));
+        } catch (IOException e) {
+            server.execute(() -> close(e));
+        }
+    }
+
+    /**
+     * Handles the ready operations of the channel, on the I/O thread.
+     *
+     * @param key The selected key of the channel.
+     * @param readBuffer The read buffer of the I/O thread, free to use.
+     */
+    void handle(SelectionKey key, ByteBuffer readBuffer) {
+        try {
+            if (key.isWritable())
+                onWritable();
+            if (key.isValid() && key.isReadable())
+                onReadable(readBuffer);
+        } catch (IOException e) {
+            close(e);
+        } catch (RuntimeException e) {
+            close(new IOException(e));
+        }
+    }
+
+    /**
+     * Closes the channel and logs the player out, on the I/O thread.
+     *
+     * @param e The error that closed the connection, an EOFException if the client closed it.
+     */
+    void close(IOException e) {
+        synchronized (writeLock) {
+            if (closed)
+                return;
+            closed = true;
+            outbound.clear();
+        }
+        inbound = null;
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException closeError) {
+            System.err.println(closeError.getMessage());
+        }
+        if (!(e instanceof EOFException) && !server.isClosed())
+            System.err.println("Connection closed: " + e.getMessage());
+        server.onClosed();
+        deliver(DISCONNECTED);
+    }
+
+    /**
+     * Handles the mailbox, on a worker.
+     */
+    @Override
+    public void run() {
+        ByteArrayOutputStream responses = new ByteArrayOutputStream();
+        Object mail;
+        for (int count = 0; count < MAX_BATCH && (mail = mailbox.poll()) != null; count++) {
+            if (mail == DISCONNECTED) {
+                server.getLobby().disconnect(this);
+                continue;
+            }
+            try {
+                byte [] frame = process(mail);
+                responses.write(frame, 0, frame.length);
+            } catch (IOException e) {
+                server.execute(() -> close(e));
+            }
+        }
+        if (responses.size() > 0)
+            write(responses.toByteArray());
+        scheduled.set(false);
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+            server.getWorkers().execute(this);
+    }
+
+    private void deliver(Object mail) {
+        mailbox.add(mail);
+        if (scheduled.compareAndSet(false, true))
+            server.getWorkers().execute(this);
+    }
+
+    /**
+     * Decodes a request, handles it and encodes the response frame.
+     */
+    private byte [] process(Object mail) throws IOException {
+        Request request;
+        try {
+            request = mail instanceof byte[] ? BinaryCodec.decodeRequest((byte []) mail)
+                    : gson.fromJson((String) mail, Request.class);
+        } catch (RuntimeException e) {
+            request = null;
+        }
+        if (request == null)
+            return encode(new Response(Response.ResponseStatus.FAILURE, "Invalid request"));
+        Response response;
+        boolean switchToBinary = false;
+        if (request.getType() == Request.RequestType.NEGOTIATE_FORMAT) {
+            String format = chooseFormat(request.getData());
+            switchToBinary = BinaryCodec.FORMAT.equals(format);
+            response = format != null ? new Response(Response.ResponseStatus.SUCCESS, format)
+                    : new Response(Response.ResponseStatus.FAILURE, "Unsupported format");
+        } else {
+            try {
+                response = server.getLobby().handle(this, request);
+            } catch (RuntimeException e) {
+                response = new Response(Response.ResponseStatus.FAILURE, "Invalid request: " + e.getMessage());
+            }
+        }
+        response.setId(request.getId());
+        byte [] frame;
+        try {
+            frame = encode(response);
+        } catch (UTFDataFormatException e) {
+            response = new Response(Response.ResponseStatus.FAILURE, "Response too long");
+            response.setId(request.getId());
+            frame = encode(response);
+        }
+        if (switchToBinary)
+            binary = true; // The client sends nothing else until it has the response.
+        return frame;
+    }
+
+    /**
+     * Picks the first format of a NEGOTIATE_FORMAT this connection supports. JSON requests are read with their
+     * payloads inline or as strings alike, so accepting {@link JsonCodecs#INLINE_FORMAT} changes nothing here.
+     *
+     * @return The format, or null if none is supported or the connection is already binary.
+     */
+    private String chooseFormat(String formats) {
+        if (binary || formats == null)
+            return null;
+        for (String format : formats.split(",")) {
+            format = format.trim();
+            if (BinaryCodec.FORMAT.equals(format) || JsonCodecs.INLINE_FORMAT.equals(format))
+                return format;
+        }
+        return null;
+    }
+
+    private byte [] encode(Response response) throws IOException {
+        if (binary)
+            return Frames.encodeBinary(BinaryCodec.encode(response));
+        return Frames.encodeJson(gson.toJson(response));
+    }
+
+    /**
+     * Writes frames now if the socket accepts them, otherwise leaves them to the I/O thread. Safe from any thread.
+     */
+    private void write(byte [] frames) {
+        synchronized (writeLock) {
+            if (closed)
+                return;
+            outbound.add(ByteBuffer.wrap(frames));
+            try {
+                flush();
+            } catch (IOException e) {
+                server.execute(() -> close(e));
+            }
+        }
+    }
+
+    private void onWritable() throws IOException {
+        synchronized (writeLock) {
+            flush();
+            if (outbound.isEmpty()) {
+                writeInterest = false;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void onReadable(ByteBuffer readBuffer) throws IOException {
+        ByteBuffer buffer = inbound;
+        if (buffer == null) {
+            buffer = readBuffer;
+            buffer.clear();
+        }
+        if (channel.read(buffer) < 0)
+            throw new EOFException("Connection closed by the client");
+        buffer.flip();
+        int needed = Frames.parse(buffer, frames);
+        if (!buffer.hasRemaining()) {
+            inbound = null;
+            return;
+        }
+        if (buffer == inbound && inbound.capacity() >= needed) {
+            inbound.compact();
+            return;
+        }
+        // Keep the start of the frame in a heap buffer of its own, so idle connections hold no buffer.
+        ByteBuffer next = ByteBuffer.allocate(Math.max(needed, 256));
+        next.put(buffer);
+        inbound = next;
+    }
+
+    /**
+     * Writes the queued frames until the socket is full. Holds writeLock.
+     */
+    private void flush() throws IOException {
+        while (!outbound.isEmpty()) {
+            ByteBuffer buffer = outbound.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                if (!writeInterest) {
+                    writeInterest = true;
+                    server.execute(() -> {
+                        if (key != null && key.isValid())
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    });
+                }
+                return;
+            }
+            outbound.poll();
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clarkson.ee408.tictactoev4.TicTacToe;
+import model.Event;
+import model.User;
+import socket.BatchResponse;
+import socket.GamingResponse;
+import socket.PairingResponse;
+import socket.Request;
+import socket.Response;
+
+/**
+ * Users, invitations and games of the {@link ReferenceServer}, and the handling of every request type except
+ * NEGOTIATE_FORMAT, which belongs to the {@link Connection}. Who is online, available or invited is kept by a
+ * {@link PairingIndex}. The server replays the moves of each game on a {@link TicTacToe} board, to reject taken cells
+ * and to update the Elo ratings that quick-match uses when a game is completed.
+ * There is no global lock: users and events live in concurrent maps, and each {@link Event} is its own lock for the
+ * transitions of the PENDING, ACCEPTED, PLAYING, COMPLETED / ABORTED lifecycle and for its turn and move. Requests on
+ * the same connection are handled one at a time, so only the players of the same event ever contend.
+ * <p>
+ * A LOGIN opens a session, whose token is the message of the SUCCESS response. When the connection is lost the player
+ * stays online, in its game, for a grace period during which RESUME_SESSION with the token attaches a new connection;
+ * the player is logged out and its game aborted only when the grace period ends.
+ * <p>
+ * The sub-requests of a BATCH are handled in order, each exactly as if it had been sent alone.
+ * <p>
+ * The moves of each game are logged, so that a REQUEST_MOVE with the sequence number the client has gets every move
+ * since in one response, e.g. after missed polls or a reconnect.
+ */
+class Lobby {
+    private static final int ELO_K = 32;
+
+    private final ConcurrentMap<String, Player> players = new ConcurrentHashMap<>();
+    private final PairingIndex index = new PairingIndex();
+    private final ConcurrentMap<Integer, Event> events = new ConcurrentHashMap<>(); // Until they end.
+    private final ConcurrentMap<Integer, TicTacToe> boards = new ConcurrentHashMap<>(); // From the first move.
+    private final ConcurrentMap<Integer, List<Integer>> moveLogs = new ConcurrentHashMap<>(); // Like boards.
+    private final AtomicInteger nextEventId = new AtomicInteger();
+    private final ConcurrentMap<String, Player> sessions = new ConcurrentHashMap<>(); // By session token.
+    private final ScheduledExecutorService timer;
+    private final long resumeGraceMillis;
+
+    /**
+     *
+     * @param timer Runs the end of the grace periods
+     * @param resumeGraceMillis How long a lost session can be resumed, 0 to log out right away
+     */
+    Lobby(ScheduledExecutorService timer, long resumeGraceMillis) {
+        this.timer = timer;
+        this.resumeGraceMillis = resumeGraceMillis;
+    }
+
+    /**
+     * Number of players logged in.
+     *
+     * @return The number of online players of the index.
+     */
+    int getOnlineCount() {
+        return index.getOnlineCount();
+    }
+
+    /**
+     * Looks up a registered player.
+     *
+     * @param username The username of the player.
+     * @return The player, or null if there is none.
+     */
+    Player getPlayer(String username) {
+        return players.get(username);
+    }
+
+    /**
+     * Handles a request.
+     *
+     * @param connection The connection the request came from.
+     * @param request The request.
+     * @return The response, without its correlation id.
+     */
+    Response handle(Connection connection, Request request) {
+        Request.RequestType type = request.getType();
+        if (type == null)
+            return failure("Unknown request type");
+        if (type == Request.RequestType.BATCH)
+            return batch(connection, request.getPayload(Request[].class));
+        if (type == Request.RequestType.REGISTER)
+            return register(request.getPayload(User.class));
+        if (type == Request.RequestType.LOGIN)
+            return login(connection, request.getPayload(User.class));
+        if (type == Request.RequestType.RESUME_SESSION)
+            return resume(connection, request.getPayload(String.class));
+        Player player = connection.getPlayer();
+        if (player == null)
+            return failure("Not logged in");
+        if (player.getConnection() != connection)
+            return failure("Logged in on another connection");
+        switch (type) {
+            case UPDATE_PAIRING:
+                return pairing(player, request.getPayload(Long.class));
+            case SEND_INVITATION:
+                return invite(player, request.getPayload(String.class));
+            case ACCEPT_INVITATION:
+            case DECLINE_INVITATION:
+                return answer(player, request.getPayload(Integer.class), type == Request.RequestType.ACCEPT_INVITATION);
+            case ACKNOWLEDGE_RESPONSE:
+                return acknowledge(player, request.getPayload(Integer.class));
+            case REQUEST_MOVE:
+                return requestMove(player, request.getPayload(Integer.class));
+            case SEND_MOVE:
+                return sendMove(player, request.getPayload(Integer.class));
+            case SUBSCRIBE_MOVES:
+                return subscribe(player);
+            case QUICK_MATCH:
+                return quickMatch(player);
+            case ABORT_GAME:
+                return endGame(player, Event.EventStatus.ABORTED);
+            case COMPLETE_GAME:
+                return endGame(player, Event.EventStatus.COMPLETED);
+            default:
+                return failure("Not supported");
+        }
+    }
+
+    private Response batch(Connection connection, Request [] requests) {
+        if (requests == null || requests.length > Request.MAX_BATCH)
+            return new BatchResponse(Response.ResponseStatus.FAILURE, "Batches hold 0 to " + Request.MAX_BATCH
+                    + " requests", null);
+        List<Response> responses = new ArrayList<>(requests.length);
+        for (Request request : requests) {
+            Request.RequestType type = request == null ? null : request.getType();
+            if (type == Request.RequestType.BATCH || type == Request.RequestType.NEGOTIATE_FORMAT) {
+                responses.add(failure(type + " can not be batched"));
+                continue;
+            }
+            try {
+                responses.add(request == null ? failure("Invalid request") : handle(connection, request));
+            } catch (RuntimeException e) {
+                responses.add(failure("Invalid request: " + e.getMessage()));
+            }
+        }
+        return new BatchResponse(Response.ResponseStatus.SUCCESS, null, responses);
+    }
+
+    /**
+     * Detaches the player of a closed connection. It is logged out, and its game aborted, once the session can no
+     * longer be resumed.
+     *
+     * @param connection The closed connection.
+     */
+    void disconnect(Connection connection) {
+        Player player = connection.getPlayer();
+        if (player == null)
+            return;
+        synchronized (player) {
+            if (player.getConnection() != connection)
+                return; // Logged in again on another connection
+            player.setConnection(null);
+            if (resumeGraceMillis > 0 && player.getSessionToken() != null) {
+                try {
+                    timer.schedule(() -> expire(player, connection), resumeGraceMillis, TimeUnit.MILLISECONDS);
+                    player.setResumable(connection);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // The server is closing
+                }
+            }
+            endSession(player);
+        }
+        logout(player);
+    }
+
+    /**
+     * Ends the grace period of a lost connection, unless the session was resumed or logged in again meanwhile.
+     */
+    private void expire(Player player, Connection connection) {
+        synchronized (player) {
+            if (player.getResumable() != connection)
+                return;
+            endSession(player);
+        }
+        logout(player);
+    }
+
+    /**
+     * Makes the session of a player impossible to resume. Holds the lock of the player.
+     */
+    private void endSession(Player player) {
+        player.setResumable(null);
+        if (player.getSessionToken() != null)
+            sessions.remove(player.getSessionToken());
+        player.setSessionToken(null);
+    }
+
+    /**
+     * Takes an offline player out of the index, and aborts its game.
+     */
+    private void logout(Player player) {
+        index.logout(player);
+        Event game = player.getGame();
+        if (game != null) {
+            synchronized (game) {
+                if (isActive(game))
+                    finish(game, Event.EventStatus.ABORTED);
+            }
+        }
+    }
+
+    private Response register(User user) {
+        if (user == null || user.getUsername() == null || user.getPassword() == null)
+            return failure("Invalid user");
+        Player player = new Player(new User(user.getUsername(), user.getPassword(), user.getDisplayName(), false));
+        if (players.putIfAbsent(user.getUsername(), player) != null)
+            return failure("Username already exists");
+        return success();
+    }
+
+    private Response login(Connection connection, User user) {
+        Player player = user == null || user.getUsername() == null ? null : players.get(user.getUsername());
+        if (player == null || !player.checkPassword(user.getPassword()))
+            return failure("Invalid username or password");
+        if (connection.getPlayer() != null && connection.getPlayer() != player)
+            disconnect(connection);
+        String token = UUID.randomUUID().toString();
+        synchronized (player) {
+            player.setConnection(connection); // A newer login takes over
+            endSession(player);
+            player.setSessionToken(token);
+            sessions.put(token, player);
+        }
+        connection.setPlayer(player);
+        player.setInvitationsSent(-1, -1);
+        index.login(player);
+        return new Response(Response.ResponseStatus.SUCCESS, token);
+    }
+
+    /**
+     * Attaches a connection to the session of an earlier LOGIN, which may still have its old connection if the
+     * server did not notice it broke. The player keeps its game, invitations and subscription.
+     */
+    private Response resume(Connection connection, String token) {
+        Player player = token == null ? null : sessions.get(token);
+        if (player == null)
+            return failure("No such session");
+        if (connection.getPlayer() != null && connection.getPlayer() != player)
+            disconnect(connection);
+        synchronized (player) {
+            if (!token.equals(player.getSessionToken()))
+                return failure("No such session");
+            player.setConnection(connection);
+            player.setResumable(null);
+        }
+        connection.setPlayer(player);
+        player.setInvitationsSent(-1, -1);
+        index.login(player);
+        return new Response(Response.ResponseStatus.SUCCESS, token);
+    }
+
+    /**
+     * Answers UPDATE_PAIRING with what changed since the version the client has: "not modified", or the users added
+     * and removed (see {@link PairingIndex#fillAvailable}) with the current invitations, which are at most two events.
+     */
+    private PairingResponse pairing(Player player, Long since) {
+        Event invitation = snapshot(index.getInvitation(player), Event.EventStatus.PENDING, null);
+        Event invitationResponse = snapshot(player.getInvitationResponse(),
+                Event.EventStatus.ACCEPTED, Event.EventStatus.DECLINED);
+        long invitationStamp = stamp(invitation);
+        long responseStamp = stamp(invitationResponse);
+        PairingResponse response = new PairingResponse(Response.ResponseStatus.SUCCESS, null, null, null, null);
+        boolean usersChanged = index.fillAvailable(player, since, response);
+        if (!usersChanged && player.invitationsSent(invitationStamp, responseStamp)) {
+            response.setNotModified(true);
+            return response;
+        }
+        if (!usersChanged) {
+            response.setAvailableUsers(Collections.<User>emptyList());
+            response.setRemovedUsers(Collections.<String>emptyList());
+        }
+        response.setInvitation(invitation);
+        response.setInvitationResponse(invitationResponse);
+        player.setInvitationsSent(invitationStamp, responseStamp);
+        return response;
+    }
+
+    private Response invite(Player player, String opponentName) {
+        Player opponent = opponentName == null ? null : index.getOnline(opponentName);
+        if (opponent == null || opponent == player || !index.isAvailable(opponent))
+            return failure("Opponent not available");
+        Event event = new Event(nextEventId.incrementAndGet(), player.getUsername(), opponent.getUsername(),
+                Event.EventStatus.PENDING, null, -1);
+        events.put(event.getEventId(), event);
+        index.addInvitation(event);
+        return success();
+    }
+
+    private Response answer(Player player, Integer eventId, boolean accept) {
+        Event event = eventId == null ? null : events.get(eventId);
+        if (event == null)
+            return failure("No such invitation");
+        Player sender = players.get(event.getSender());
+        synchronized (event) {
+            if (!player.getUsername().equals(event.getOpponent()) || event.getStatus() != Event.EventStatus.PENDING)
+                return failure("No such invitation");
+            if (accept) {
+                if (!reserve(sender, player))
+                    return failure("Opponent not available");
+                start(event, sender, player);
+            } else {
+                event.setStatus(Event.EventStatus.DECLINED);
+                sender.setInvitationResponse(event);
+            }
+            index.removeInvitation(event);
+        }
+        return success();
+    }
+
+    private Response acknowledge(Player player, Integer eventId) {
+        Event event = eventId == null ? null : events.get(eventId);
+        if (event == null)
+            return failure("No such invitation");
+        synchronized (event) {
+            if (!player.getUsername().equals(event.getSender()))
+                return failure("No such invitation");
+            if (event.getStatus() == Event.EventStatus.ACCEPTED) {
+                event.setStatus(Event.EventStatus.PLAYING);
+            } else if (event.getStatus() == Event.EventStatus.DECLINED) {
+                event.setStatus(Event.EventStatus.ABORTED);
+                events.remove(event.getEventId());
+            } else {
+                return failure("Invitation not answered");
+            }
+            if (player.getInvitationResponse() == event)
+                player.setInvitationResponse(null);
+        }
+        return success();
+    }
+
+    private GamingResponse requestMove(Player player, Integer since) {
+        Event game = player.getGame();
+        if (game == null)
+            return new GamingResponse(Response.ResponseStatus.FAILURE, "No game", -1, false);
+        synchronized (game) {
+            int move = -1;
+            if (game.getMove() != -1 && !player.getUsername().equals(game.getTurn())) {
+                move = game.getMove();
+                game.setMove(-1); // Delivered
+            }
+            GamingResponse response = new GamingResponse(Response.ResponseStatus.SUCCESS, null, move, isActive(game));
+            if (since != null) {
+                List<Integer> log = moveLogs.get(game.getEventId());
+                int sequence = log == null ? 0 : log.size();
+                response.setSequence(sequence);
+                response.setMoves(log == null ? Collections.<Integer>emptyList()
+                        : new ArrayList<>(log.subList(Math.max(0, Math.min(since, sequence)), sequence)));
+            }
+            return response;
+        }
+    }
+
+    private Response sendMove(Player player, Integer move) {
+        Event game = player.getGame();
+        if (game == null || move == null || move < 0 || move > 8)
+            return failure("Invalid move");
+        Player opponent = players.get(opponentOf(game, player));
+        Connection push = null;
+        int sequence;
+        synchronized (game) {
+            if (game.getStatus() != Event.EventStatus.PLAYING)
+                return failure("No game");
+            if (player.getUsername().equals(game.getTurn()) || game.getMove() != -1)
+                return failure("Not your turn");
+            TicTacToe board = boards.computeIfAbsent(game.getEventId(),
+                    id -> new TicTacToe(player.getUsername().equals(game.getSender()) ? 1 : 2));
+            if (board.play(move / TicTacToe.SIDE, move % TicTacToe.SIDE) == 0)
+                return failure("Cell taken");
+            List<Integer> log = moveLogs.computeIfAbsent(game.getEventId(), id -> new ArrayList<>());
+            log.add(move);
+            sequence = log.size();
+            game.setTurn(player.getUsername());
+            if (opponent.getSubscribedGame() == game && opponent.getConnection() != null) {
+                push = opponent.getConnection(); // Delivered now rather than on REQUEST_MOVE
+            } else {
+                game.setMove(move);
+            }
+        }
+        if (push != null)
+            push.push(pushedMove(move, sequence));
+        return success();
+    }
+
+    private Response subscribe(Player player) {
+        Event game = player.getGame();
+        if (game == null)
+            return failure("No game");
+        int pending = -1;
+        int sequence = 0;
+        synchronized (game) {
+            if (!isActive(game))
+                return failure("No game");
+            player.setSubscribedGame(game);
+            if (game.getMove() != -1 && !player.getUsername().equals(game.getTurn())) {
+                pending = game.getMove();
+                game.setMove(-1);
+                sequence = moveLogs.get(game.getEventId()).size();
+            }
+        }
+        if (pending != -1)
+            player.getConnection().push(pushedMove(pending, sequence));
+        return success();
+    }
+
+    /**
+     * A pushed move, with its sequence number so that the client can tell whether it missed some.
+     */
+    private static GamingResponse pushedMove(int move, int sequence) {
+        GamingResponse response = new GamingResponse(Response.ResponseStatus.SUCCESS, null, move, true);
+        response.setSequence(sequence);
+        response.setMoves(Collections.singletonList(move));
+        return response;
+    }
+
+    private Response quickMatch(Player player) {
+        if (!index.isAvailable(player))
+            return failure("Already playing");
+        while (true) {
+            Player waiting = index.quickMatch(player);
+            if (waiting == null)
+                return new Response(Response.ResponseStatus.SUCCESS, "Waiting");
+            if (!reserve(waiting, player)) {
+                if (player.isPlaying())
+                    return failure("Already playing");
+                continue; // The waiting player started another game meanwhile
+            }
+            // The waiting player plays the sender, which acknowledges the ACCEPTED game it finds in UPDATE_PAIRING.
+            Event event = new Event(nextEventId.incrementAndGet(), waiting.getUsername(), player.getUsername(),
+                    Event.EventStatus.PENDING, null, -1);
+            events.put(event.getEventId(), event);
+            synchronized (event) {
+                start(event, waiting, player);
+            }
+            return new Response(Response.ResponseStatus.SUCCESS, "Matched");
+        }
+    }
+
+    /**
+     * Reserves both players of a new game.
+     *
+     * @return false, with neither reserved, if one of them is already playing.
+     */
+    private boolean reserve(Player sender, Player opponent) {
+        if (!opponent.startPlaying())
+            return false;
+        if (!sender.startPlaying()) {
+            opponent.stopPlaying();
+            return false;
+        }
+        index.setAvailable(sender, false);
+        index.setAvailable(opponent, false);
+        sender.leaveQuickMatch();
+        opponent.leaveQuickMatch();
+        return true;
+    }
+
+    /**
+     * Accepts a game between two reserved players. Holds the lock of the event.
+     */
+    private void start(Event event, Player sender, Player opponent) {
+        event.setStatus(Event.EventStatus.ACCEPTED);
+        sender.setGame(event);
+        opponent.setGame(event);
+        sender.setInvitationResponse(event);
+    }
+
+    private Response endGame(Player player, Event.EventStatus status) {
+        Event game = player.getGame();
+        if (game == null)
+            return failure("No game");
+        synchronized (game) {
+            boolean allowed = status == Event.EventStatus.ABORTED ? isActive(game)
+                    : game.getStatus() == Event.EventStatus.PLAYING;
+            if (!allowed)
+                return failure("No game");
+            finish(game, status);
+        }
+        return success();
+    }
+
+    /**
+     * Ends a game and makes both players available. Holds the lock of the game.
+     */
+    private void finish(Event game, Event.EventStatus status) {
+        game.setStatus(status);
+        events.remove(game.getEventId());
+        TicTacToe board = boards.remove(game.getEventId());
+        moveLogs.remove(game.getEventId());
+        Player sender = players.get(game.getSender());
+        Player opponent = players.get(game.getOpponent());
+        if (status == Event.EventStatus.COMPLETED && board != null && board.isGameOver())
+            rate(sender, opponent, board.whoWon() == 1 ? 1 : board.whoWon() == 2 ? 0 : 0.5);
+        for (Player player : new Player[] {sender, opponent}) {
+            player.stopPlaying();
+            index.setAvailable(player, true);
+            if (player.getSubscribedGame() == game)
+                player.setSubscribedGame(null);
+        }
+    }
+
+    /**
+     * Updates the Elo ratings of the players of a completed game.
+     *
+     * @param score The score of the sender: 1 for a win, 0.5 for a tie, 0 for a loss.
+     */
+    private static void rate(Player sender, Player opponent, double score) {
+        double expected = 1 / (1 + Math.pow(10, (opponent.getRating() - sender.getRating()) / 400.0));
+        int change = (int) Math.round(ELO_K * (score - expected));
+        sender.setRating(sender.getRating() + change);
+        opponent.setRating(opponent.getRating() - change);
+    }
+
+    /**
+     * Copies an event under its lock, for a response that is encoded after the lock is released.
+     *
+     * @return The copy, or null if the event is null or in none of the given statuses.
+     */
+    private static Event snapshot(Event event, Event.EventStatus status, Event.EventStatus otherStatus) {
+        if (event == null)
+            return null;
+        synchronized (event) {
+            if (event.getStatus() != status && event.getStatus() != otherStatus)
+                return null;
+            return new Event(event.getEventId(), event.getSender(), event.getOpponent(), event.getStatus(),
+                    event.getTurn(), event.getMove());
+        }
+    }
+
+    /**
+     * Identifies an event and its status, to tell whether a client already has it.
+     */
+    private static long stamp(Event event) {
+        return event == null ? 0 : ((long) event.getEventId() << 3) | (event.getStatus().ordinal() + 1);
+    }
+
+    private static boolean isActive(Event game) {
+        return game.getStatus() == Event.EventStatus.ACCEPTED || game.getStatus() == Event.EventStatus.PLAYING;
+    }
+
+    private static String opponentOf(Event game, Player player) {
+        return player.getUsername().equals(game.getSender()) ? game.getOpponent() : game.getSender();
+    }
+
+    private static Response success() {
+        return new Response(Response.ResponseStatus.SUCCESS, null);
+    }
+
+    private static Response failure(String message) {
+        return new Response(Response.ResponseStatus.FAILURE, message);
+    }
+}
@@ -0,0 +1,308 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Event;
+import model.User;
+import socket.PairingResponse;
+
+/**
+ * Who can be paired with whom, kept up to date as players come and go instead of being recomputed by every
+ * UPDATE_PAIRING poll. It holds the online players, the players available for a game, the pending invitations of
+ * each username and the quick-match queues. Login, logout, invitations and availability changes are O(1), and so
+ * is a poll: the list of available users is a snapshot of at most {@link #MAX_LISTED} users, rebuilt at most once
+ * per change from the first entries of the availability set. More users would not fit in a writeUTF frame anyway.
+ * Each snapshot has a version, and the last {@link #HISTORY} snapshots are kept, so a client that sends the version
+ * it has gets the users added and removed since instead of the whole list.
+ * <p>
+ * Quick-match queues are bucketed by rating ({@link #BUCKET_WIDTH} points each). A player is matched with the
+ * oldest waiting player of its own bucket, then of the buckets around it up to {@link #MAX_BUCKET_DISTANCE} away,
+ * and waits in its own bucket otherwise.
+ * All methods are safe from any thread.
+ */
+class PairingIndex {
+    static final int MAX_LISTED = 100;
+    static final int BUCKET_WIDTH = 100;
+    static final int MAX_BUCKET_DISTANCE = 3;
+    static final int HISTORY = 32;
+
+    private final ConcurrentMap<String, Player> online = new ConcurrentHashMap<>();
+    private final Set<Player> available = ConcurrentHashMap.newKeySet(); // Online and not playing.
+    private final ConcurrentMap<String, Deque<Event>> invitations = new ConcurrentHashMap<>(); // Newest first.
+    private final ConcurrentMap<Integer, Queue<Player>> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong(); // Incremented by every change of available.
+    private volatile Listing listing = new Listing(-1, Collections.<User>emptyList(), null);
+
+    /**
+     * Snapshot of the available users, for one {@link #version}. There is only one snapshot per version, so that
+     * deltas between two versions are the same for everyone.
+     */
+    private static final class Listing {
+        final long version;
+        final List<User> users; // Up to MAX_LISTED + 1, so that MAX_LISTED remain without the player asking.
+        volatile Listing previous; // Older snapshot, cut after HISTORY of them.
+
+        Listing(long version, List<User> users, Listing previous) {
+            this.version = version;
+            this.users = users;
+            this.previous = previous;
+            Listing last = this;
+            for (int i = 1; i < HISTORY && last != null; i++)
+                last = last.previous;
+            if (last != null)
+                last.previous = null;
+        }
+
+        Listing find(long version) {
+            for (Listing candidate = this; candidate != null; candidate = candidate.previous) {
+                if (candidate.version == version)
+                    return candidate;
+            }
+            return null;
+        }
+
+        /**
+         * The users as the given player sees them: without itself, and at most {@link #MAX_LISTED}.
+         */
+        List<User> view(Player player) {
+            int self = users.indexOf(player.getListing());
+            if (self < 0 && users.size() <= MAX_LISTED)
+                return users;
+            List<User> others = new ArrayList<>(users);
+            others.remove(self >= 0 ? self : MAX_LISTED);
+            return others;
+        }
+    }
+
+    /**
+     * Number of players logged in.
+     *
+     * @return The size of {@link #online}.
+     */
+    int getOnlineCount() {
+        return online.size();
+    }
+
+    /**
+     * Looks up an online player.
+     *
+     * @param username The username of the player.
+     * @return The player, or null if it is offline.
+     */
+    Player getOnline(String username) {
+        return online.get(username);
+    }
+
+    /**
+     * Records a login, and makes the player available unless it is playing.
+     *
+     * @param player The player that logged in.
+     */
+    void login(Player player) {
+        online.put(player.getUsername(), player);
+        if (!player.isPlaying())
+            setAvailable(player, true);
+    }
+
+    /**
+     * Records a logout: the player is no longer listed, invited or matched.
+     *
+     * @param player The player that logged out.
+     */
+    void logout(Player player) {
+        if (online.remove(player.getUsername(), player)) {
+            setAvailable(player, false);
+            invitations.remove(player.getUsername());
+            player.leaveQuickMatch();
+        }
+    }
+
+    /**
+     * Checks whether a player can be invited.
+     *
+     * @param player The player.
+     * @return true if it is online and not playing.
+     */
+    boolean isAvailable(Player player) {
+        return available.contains(player);
+    }
+
+    /**
+     * Adds a player to, or removes it from, the available players, e.g. when a game starts or ends.
+     *
+     * @param player The player.
+     * @param isAvailable Whether it can be invited.
+     */
+    void setAvailable(Player player, boolean isAvailable) {
+        boolean changed = isAvailable && online.get(player.getUsername()) == player ? available.add(player)
+                : available.remove(player);
+        if (changed)
+            version.incrementAndGet();
+    }
+
+    /**
+     * Lists the users a player can invite.
+     *
+     * @param player The player asking.
+     * @return Up to {@link #MAX_LISTED} available users other than the player, without passwords. Shared, not to be modified.
+     */
+    List<User> listAvailable(Player player) {
+        return currentListing().view(player);
+    }
+
+    /**
+     * Sets the available users of a pairing response: the version of the current snapshot, and either the users
+     * added and removed since the version the client has, or the full list if that version is unknown.
+     *
+     * @param player The player asking.
+     * @param since The {@link PairingResponse#getVersion()} the client has, or null.
+     * @param response The response to fill.
+     * @return false if the client's version is current, in which case only the version is set.
+     */
+    boolean fillAvailable(Player player, Long since, PairingResponse response) {
+        Listing current = currentListing();
+        response.setVersion(current.version);
+        if (since != null && since == current.version)
+            return false;
+        List<User> users = current.view(player);
+        Listing old = since == null ? null : current.find(since);
+        if (old == null) {
+            response.setAvailableUsers(users);
+            return true;
+        }
+        List<User> before = old.view(player);
+        Set<String> beforeNames = new HashSet<>();
+        for (User user : before)
+            beforeNames.add(user.getUsername());
+        Set<String> names = new HashSet<>();
+        List<User> added = new ArrayList<>();
+        for (User user : users) {
+            names.add(user.getUsername());
+            if (!beforeNames.contains(user.getUsername()))
+                added.add(user);
+        }
+        List<String> removed = new ArrayList<>();
+        for (String username : beforeNames) {
+            if (!names.contains(username))
+                removed.add(username);
+        }
+        response.setAvailableUsers(added);
+        response.setRemovedUsers(removed);
+        return true;
+    }
+
+    /**
+     * Returns the snapshot of the current version, building it if needed. Builds are serialized, so that a version
+     * never has two different snapshots.
+     */
+    private Listing currentListing() {
+        Listing current = listing;
+        if (current.version == version.get())
+            return current;
+        synchronized (this) {
+            current = listing;
+            long latest = version.get();
+            if (current.version >= latest)
+                return current;
+            List<User> users = new ArrayList<>(MAX_LISTED + 1);
+            for (Iterator<Player> it = available.iterator(); it.hasNext() && users.size() <= MAX_LISTED; ) {
+                Player other = it.next();
+                if (!other.isPlaying())
+                    users.add(other.getListing());
+            }
+            current = new Listing(latest, Collections.unmodifiableList(users), current);
+            listing = current;
+            return current;
+        }
+    }
+
+    /**
+     * Records an invitation.
+     *
+     * @param event The PENDING event.
+     */
+    void addInvitation(Event event) {
+        invitations.computeIfAbsent(event.getOpponent(), username -> new ConcurrentLinkedDeque<>()).addFirst(event);
+    }
+
+    /**
+     * Forgets an invitation once it is answered.
+     *
+     * @param event The event.
+     */
+    void removeInvitation(Event event) {
+        Deque<Event> pending = invitations.get(event.getOpponent());
+        if (pending != null)
+            pending.remove(event);
+    }
+
+    /**
+     * Finds the newest invitation of a player that is still PENDING, dropping the ones that are not.
+     *
+     * @param player The invited player.
+     * @return The event, or null if there is none.
+     */
+    Event getInvitation(Player player) {
+        Deque<Event> pending = invitations.get(player.getUsername());
+        if (pending == null)
+            return null;
+        for (Event event; (event = pending.peekFirst()) != null; ) {
+            synchronized (event) {
+                if (event.getStatus() == Event.EventStatus.PENDING)
+                    return event;
+            }
+            pending.remove(event);
+        }
+        return null;
+    }
+
+    /**
+     * Matches a player with a waiting player of a close rating, or puts it in the queue of its bucket.
+     *
+     * @param player The player asking for a game; must be available and not already waiting.
+     * @return The waiting player it was matched with, taken out of the queues, or null if the player now waits.
+     */
+    Player quickMatch(Player player) {
+        int bucket = player.getRating() / BUCKET_WIDTH;
+        for (int distance = 0; distance <= MAX_BUCKET_DISTANCE; distance++) {
+            Player match = pollWaiting(bucket - distance, player);
+            if (match == null && distance > 0)
+                match = pollWaiting(bucket + distance, player);
+            if (match != null)
+                return match;
+        }
+        if (player.joinQuickMatch())
+            buckets.computeIfAbsent(bucket, b -> new ConcurrentLinkedQueue<>()).add(player);
+        return null;
+    }
+
+    /**
+     * Takes the oldest player of a bucket that is still waiting. Players that left the queue are dropped on the way.
+     */
+    private Player pollWaiting(int bucket, Player player) {
+        Queue<Player> queue = buckets.get(bucket);
+        if (queue == null)
+            return null;
+        for (Player waiting; (waiting = queue.poll()) != null; ) {
+            if (waiting == player) {
+                player.leaveQuickMatch(); // Asked again; it is matched or queued again below
+                continue;
+            }
+            if (waiting.leaveQuickMatch() && isAvailable(waiting))
+                return waiting;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,240 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import model.Event;
+import model.User;
+
+/**
+ * Server-side state of a registered user. The fields that describe the user's games are written under the lock
+ * of the {@link Event} they refer to, and are volatile so that other players can read them without it.
+ */
+class Player {
+    static final int INITIAL_RATING = 1200;
+
+    private final User account;
+    private final User listing; // What other players see in UPDATE_PAIRING, without the password.
+    private final AtomicBoolean playing = new AtomicBoolean(); // In an ACCEPTED or PLAYING game.
+    private final AtomicBoolean waiting = new AtomicBoolean(); // In a quick-match queue of the PairingIndex.
+    private volatile int rating = INITIAL_RATING; // Elo rating, updated when a game is completed.
+    private volatile Connection connection; // Connection logged in as this player, null when offline.
+    private String sessionToken; // Given by the last LOGIN for RESUME_SESSION; guarded by the player's lock.
+    private Connection resumable; // Lost connection whose session can still be resumed; guarded by the player's lock.
+    private volatile Event game; // Last accepted game, kept after it ends so REQUEST_MOVE can report it inactive.
+    private volatile Event subscribedGame; // Game whose moves are pushed to the connection.
+    private volatile Event invitationResponse; // Last invitation sent, until its answer is acknowledged.
+    private volatile long sentInvitation = -1; // Stamps of the invitations in the last UPDATE_PAIRING response.
+    private volatile long sentInvitationResponse = -1;
+
+    /**
+     *
+     * @param account The registered user, with its password
+     */
+    Player(User account) {
+        this.account = account;
+        this.listing = new User(account.getUsername(), null, account.getDisplayName(), true);
+    }
+
+    /**
+     * Getter function for the username of {@link #account}
+     * @return username
+     */
+    String getUsername() {
+        return account.getUsername();
+    }
+
+    /**
+     * Checks a password against the one of {@link #account}.
+     *
+     * @param password The password to check.
+     * @return true if it matches.
+     */
+    boolean checkPassword(String password) {
+        return account.getPassword() != null && account.getPassword().equals(password);
+    }
+
+    /**
+     * Getter function for {@link #listing} attribute
+     * @return listing
+     */
+    User getListing() {
+        return listing;
+    }
+
+    /**
+     * Checks whether the player is in an ACCEPTED or PLAYING game.
+     *
+     * @return true while playing.
+     */
+    boolean isPlaying() {
+        return playing.get();
+    }
+
+    /**
+     * Reserves the player for a new game.
+     *
+     * @return false if the player is already playing.
+     */
+    boolean startPlaying() {
+        return playing.compareAndSet(false, true);
+    }
+
+    /**
+     * Makes the player available again after a game.
+     */
+    void stopPlaying() {
+        playing.set(false);
+    }
+
+    /**
+     * Puts the player in a quick-match queue.
+     *
+     * @return false if it already is in one.
+     */
+    boolean joinQuickMatch() {
+        return waiting.compareAndSet(false, true);
+    }
+
+    /**
+     * Takes the player out of its quick-match queue. The queue itself drops it lazily.
+     *
+     * @return false if it was not waiting, e.g. because another player was matched with it first.
+     */
+    boolean leaveQuickMatch() {
+        return waiting.compareAndSet(true, false);
+    }
+
+    /**
+     * Getter function for {@link #rating} attribute
+     * @return rating
+     */
+    int getRating() {
+        return rating;
+    }
+
+    /**
+     * Setter function for {@link #rating} attribute
+     * @param rating The Elo rating of the player
+     */
+    void setRating(int rating) {
+        this.rating = rating;
+    }
+
+    /**
+     * Getter function for {@link #connection} attribute
+     * @return connection
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Setter function for {@link #connection} attribute
+     * @param connection The connection logged in as this player, or null when offline
+     */
+    void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Getter function for {@link #sessionToken} attribute
+     * @return sessionToken
+     */
+    String getSessionToken() {
+        return sessionToken;
+    }
+
+    /**
+     * Setter function for {@link #sessionToken} attribute
+     * @param sessionToken The token of the current session, or null once it can no longer be resumed
+     */
+    void setSessionToken(String sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+
+    /**
+     * Getter function for {@link #resumable} attribute
+     * @return resumable
+     */
+    Connection getResumable() {
+        return resumable;
+    }
+
+    /**
+     * Setter function for {@link #resumable} attribute
+     * @param resumable The lost connection while the session waits for a RESUME_SESSION, or null
+     */
+    void setResumable(Connection resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * Getter function for {@link #game} attribute
+     * @return game
+     */
+    Event getGame() {
+        return game;
+    }
+
+    /**
+     * Setter function for {@link #game} attribute
+     * @param game The last accepted game of the player
+     */
+    void setGame(Event game) {
+        this.game = game;
+    }
+
+    /**
+     * Getter function for {@link #subscribedGame} attribute
+     * @return subscribedGame
+     */
+    Event getSubscribedGame() {
+        return subscribedGame;
+    }
+
+    /**
+     * Setter function for {@link #subscribedGame} attribute
+     * @param subscribedGame The game whose moves are pushed to the connection, or null
+     */
+    void setSubscribedGame(Event subscribedGame) {
+        this.subscribedGame = subscribedGame;
+    }
+
+    /**
+     * Getter function for {@link #invitationResponse} attribute
+     * @return invitationResponse
+     */
+    Event getInvitationResponse() {
+        return invitationResponse;
+    }
+
+    /**
+     * Setter function for {@link #invitationResponse} attribute
+     * @param invitationResponse The last invitation sent, or null once its answer is acknowledged
+     */
+    void setInvitationResponse(Event invitationResponse) {
+        this.invitationResponse = invitationResponse;
+    }
+
+    /**
+     * Checks whether the invitations of the last UPDATE_PAIRING response were the given ones.
+     *
+     * @param invitation Stamp of the invitation, see {@link Lobby}.
+     * @param invitationResponse Stamp of the invitation response.
+     * @return true if both are the same as in the last response.
+     */
+    boolean invitationsSent(long invitation, long invitationResponse) {
+        return sentInvitation == invitation && sentInvitationResponse == invitationResponse;
+    }
+
+    /**
+     * Records the invitations of an UPDATE_PAIRING response, or forgets them with -1 after a login.
+     *
+     * @param invitation Stamp of the invitation.
+     * @param invitationResponse Stamp of the invitation response.
+     */
+    void setInvitationsSent(long invitation, long invitationResponse) {
+        sentInvitation = invitation;
+        sentInvitationResponse = invitationResponse;
+    }
+}
@@ -0,0 +1,253 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process reference server for the protocol of {@link socket.Request}: the writeUTF JSON framing, the binary
+ * format after NEGOTIATE_FORMAT, correlation ids, pushed moves and every request type, with the
+ * {@link model.Event} lifecycle kept by a {@link Lobby}. It lets the clients be tested and measured end to end.
+ * <p>
+ * Java 8 has no virtual threads, so each connection is a small task instead (see {@link Connection}): one I/O thread
+ * multiplexes all sockets through a {@link Selector}, and a fixed pool of workers, one per core by default, runs the
+ * tasks of the connections that have requests waiting. An idle connection holds a socket and a few objects, so tens
+ * of thousands of connections fit in a default heap, given enough file descriptors (ulimit -n).
+ * <p>
+ * Lost sessions can be resumed for {@link #DEFAULT_RESUME_GRACE_MILLIS} by default (see {@link Lobby}).
+ * <p>
+ * Options of {@link #main(String[])}: --port N (default 8000), --workers N, --resume-grace-ms N.
+ * Run with {@code gradle referenceServer --args="--port 8000"} from the benchmarks directory.
+ */
+public class ReferenceServer implements AutoCloseable {
+    public static final long DEFAULT_RESUME_GRACE_MILLIS = 10_000;
+    private static final int READ_BUFFER_SIZE = 64 * 1024; // Holds any JSON frame except the largest writeUTF allows.
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    private final Lobby lobby;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Starts a server on an ephemeral port of the loopback interface, with one worker per core.
+     *
+     * @throws IOException If the server socket can not be opened.
+     */
+    public ReferenceServer() throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Runtime.getRuntime().availableProcessors(),
+                DEFAULT_RESUME_GRACE_MILLIS);
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param address The address to listen on.
+     * @param workerThreads Number of threads handling requests.
+     * @param resumeGraceMillis How long the session of a lost connection can be resumed, 0 to log out right away.
+     * @throws IOException If the server socket can not be opened.
+     */
+    public ReferenceServer(InetSocketAddress address, int workerThreads, long resumeGraceMillis) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 4096);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerThreads, task -> {
+            Thread worker = new Thread(task, "server-worker-" + workerCount.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread timerThread = new Thread(task, "server-timer");
+            timerThread.setDaemon(true);
+            return timerThread;
+        });
+        lobby = new Lobby(timer, resumeGraceMillis);
+        thread = new Thread(this::run, "server-io");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Number of open connections.
+     *
+     * @return The connections accepted and not closed yet.
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Number of players logged in.
+     *
+     * @return The players with an open connection.
+     */
+    public int getOnlineCount() {
+        return lobby.getOnlineCount();
+    }
+
+    /**
+     * Checks whether the server is shutting down.
+     *
+     * @return true once {@link #close()} was called or the I/O thread stopped.
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Getter function for {@link #lobby} attribute
+     * @return lobby
+     */
+    Lobby getLobby() {
+        return lobby;
+    }
+
+    /**
+     * Getter function for {@link #workers} attribute
+     * @return workers
+     */
+    ExecutorService getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Runs a task on the I/O thread, or on the calling thread once the server is closed.
+     *
+     * @param task The task.
+     */
+    void execute(Runnable task) {
+        if (closed && !thread.isAlive()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Counts a closed connection, on the I/O thread.
+     */
+    void onClosed() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Closes the server socket and every connection, then stops the workers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        timer.shutdownNow();
+    }
+
+    private void run() {
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        try {
+            while (!closed) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).handle(key, readBuffer);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Server loop failed: " + e);
+        }
+        closed = true;
+        runTasks();
+        IOException closedError = new IOException("Server closed");
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection)
+                ((Connection) key.attachment()).close(closedError);
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            Connection connection = new Connection(this, channel);
+            connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+            connections.incrementAndGet();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Task failed: " + e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8000;
+        int workerThreads = Runtime.getRuntime().availableProcessors();
+        long resumeGraceMillis = DEFAULT_RESUME_GRACE_MILLIS;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--workers": workerThreads = Integer.parseInt(args[i + 1]); break;
+                case "--resume-grace-ms": resumeGraceMillis = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        ReferenceServer server = new ReferenceServer(new InetSocketAddress(port), workerThreads,
+                resumeGraceMillis);
+        System.out.printf("Listening on port %d with %d workers%n", server.getPort(), workerThreads);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.printf("%d connections, %d players online%n", server.getConnectionCount(), server.getOnlineCount());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package server;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import model.Event;
+import model.User;
+import socket.PairingResponse;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PairingIndex}.
+ */
+public class PairingIndexTest {
+    private final PairingIndex index = new PairingIndex();
+
+    private Player online(String username, int rating) {
+        Player player = new Player(new User(username, "secret", username, false));
+        player.setRating(rating);
+        index.login(player);
+        return player;
+    }
+
+    @Test
+    public void listsAvailablePlayersButNotTheCaller() {
+        Player alice = online("alice", 1200);
+        Player bob = online("bob", 1200);
+        Player carol = online("carol", 1200);
+        assertEquals(2, index.listAvailable(alice).size());
+        assertFalse(index.listAvailable(alice).contains(alice.getListing()));
+
+        index.setAvailable(bob, false);
+        assertEquals(1, index.listAvailable(alice).size());
+        index.logout(carol);
+        assertTrue(index.listAvailable(alice).isEmpty());
+        index.setAvailable(carol, true); // Offline players are never available
+        assertFalse(index.isAvailable(carol));
+        assertEquals(2, index.getOnlineCount());
+    }
+
+    @Test
+    public void capsTheListing() {
+        Player first = online("user0", 1200);
+        for (int i = 1; i < 3 * PairingIndex.MAX_LISTED; i++)
+            online("user" + i, 1200);
+        List<User> listed = index.listAvailable(first);
+        assertEquals(PairingIndex.MAX_LISTED, listed.size());
+        assertFalse(listed.contains(first.getListing()));
+        assertEquals(PairingIndex.MAX_LISTED, index.listAvailable(new Player(new User("x", "y", null, false))).size());
+    }
+
+    @Test
+    public void sendsDeltasSinceAKnownVersion() {
+        Player alice = online("alice", 1200);
+        Player bob = online("bob", 1200);
+        PairingResponse full = new PairingResponse();
+        assertTrue(index.fillAvailable(alice, null, full));
+        assertNull(full.getRemovedUsers());
+        assertEquals(1, full.getAvailableUsers().size());
+
+        PairingResponse same = new PairingResponse();
+        assertFalse(index.fillAvailable(alice, full.getVersion(), same));
+        assertEquals(full.getVersion(), same.getVersion());
+
+        Player carol = online("carol", 1200);
+        index.logout(bob);
+        PairingResponse delta = new PairingResponse();
+        assertTrue(index.fillAvailable(alice, full.getVersion(), delta));
+        assertEquals(1, delta.getAvailableUsers().size());
+        assertSame(carol.getListing(), delta.getAvailableUsers().get(0));
+        assertEquals(1, delta.getRemovedUsers().size());
+        assertEquals("bob", delta.getRemovedUsers().get(0));
+
+        PairingResponse unknown = new PairingResponse();
+        assertTrue(index.fillAvailable(alice, delta.getVersion() + 1000, unknown));
+        assertNull(unknown.getRemovedUsers());
+        assertEquals(1, unknown.getAvailableUsers().size());
+    }
+
+    @Test
+    public void returnsTheNewestPendingInvitation() {
+        Player bob = online("bob", 1200);
+        Event older = new Event(1, "alice", "bob", Event.EventStatus.PENDING, null, -1);
+        Event newer = new Event(2, "carol", "bob", Event.EventStatus.PENDING, null, -1);
+        index.addInvitation(older);
+        index.addInvitation(newer);
+        assertSame(newer, index.getInvitation(bob));
+        newer.setStatus(Event.EventStatus.ABORTED);
+        assertSame(older, index.getInvitation(bob));
+        index.removeInvitation(older);
+        assertNull(index.getInvitation(bob));
+    }
+
+    @Test
+    public void matchesCloseRatingsFirst() {
+        Player far = online("far", 2000);
+        Player near = online("near", 1300);
+        assertNull(index.quickMatch(far));
+        assertNull(index.quickMatch(near));
+        assertSame(near, index.quickMatch(online("same", 1210)));
+        Player other = online("other", 1250);
+        assertNull(index.quickMatch(other));
+        assertSame(other, index.quickMatch(online("lower", 1150)));
+        index.logout(far);
+        assertNull(index.quickMatch(online("high", 2050)));
+    }
+}
@@ -0,0 +1,352 @@
+package server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+
+import client.NioEventLoop;
+import client.NioSocketClient;
+import client.SocketClient;
+import model.Event;
+import model.User;
+import socket.BatchResponse;
+import socket.BinaryCodec;
+import socket.GamingResponse;
+import socket.JsonCodecs;
+import socket.PairingResponse;
+import socket.Request;
+import socket.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for {@link ReferenceServer}, through the clients of the app.
+ */
+public class ReferenceServerTest {
+    private final List<SocketClient> clients = new ArrayList<>();
+    private ReferenceServer server;
+    private NioEventLoop loop;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ReferenceServer();
+        loop = new NioEventLoop();
+    }
+
+    @After
+    public void tearDown() {
+        for (SocketClient client : clients)
+            client.close();
+        loop.close();
+        server.close();
+    }
+
+    @Test
+    public void playsAGameThroughTheEventLifecycle() throws Exception {
+        SocketClient alice = connect();
+        SocketClient bob = connect();
+        login(alice, "alice");
+        login(bob, "bob");
+
+        PairingResponse pairing = alice.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class);
+        assertEquals(1, pairing.getAvailableUsers().size());
+        assertEquals("bob", pairing.getAvailableUsers().get(0).getUsername());
+        assertNull(pairing.getAvailableUsers().get(0).getPassword());
+
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "bob"), Response.class));
+        Event invitation = bob.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class).getInvitation();
+        assertEquals(Event.EventStatus.PENDING, invitation.getStatus());
+        assertEquals("alice", invitation.getSender());
+
+        assertSuccess(bob.sendRequest(Request.of(Request.RequestType.ACCEPT_INVITATION, invitation.getEventId()), Response.class));
+        Event answer = alice.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class).getInvitationResponse();
+        assertEquals(Event.EventStatus.ACCEPTED, answer.getStatus());
+        assertTrue(bob.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class)
+                .getAvailableUsers().isEmpty());
+
+        assertFailure(alice.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 4), Response.class)); // Not PLAYING yet
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.ACKNOWLEDGE_RESPONSE, answer.getEventId()), Response.class));
+
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 4), Response.class));
+        assertFailure(alice.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 0), Response.class)); // Not her turn
+        GamingResponse move = bob.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class);
+        assertEquals(4, move.getMove());
+        assertTrue(move.isActive());
+        assertEquals(-1, bob.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class).getMove());
+
+        assertSuccess(bob.sendRequest(new Request(Request.RequestType.COMPLETE_GAME, null), Response.class));
+        assertFalse(alice.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class).isActive());
+        assertEquals(1, alice.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class)
+                .getAvailableUsers().size());
+    }
+
+    @Test
+    public void quickMatchesAndRatesPlayers() throws Exception {
+        SocketClient waiting = connect();
+        SocketClient joining = connect();
+        login(waiting, "waiting");
+        login(joining, "joining");
+        assertEquals("Waiting", waiting.sendRequest(new Request(Request.RequestType.QUICK_MATCH, null), Response.class).getMessage());
+        assertEquals("Matched", joining.sendRequest(new Request(Request.RequestType.QUICK_MATCH, null), Response.class).getMessage());
+        Event game = waiting.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class).getInvitationResponse();
+        assertEquals(Event.EventStatus.ACCEPTED, game.getStatus());
+        assertEquals("joining", game.getOpponent());
+        assertSuccess(waiting.sendRequest(Request.of(Request.RequestType.ACKNOWLEDGE_RESPONSE, game.getEventId()), Response.class));
+
+        int [] moves = {0, 3, 1, 4, 2}; // The first player wins on the top row
+        for (int i = 0; i < moves.length; i++) {
+            SocketClient mover = i % 2 == 0 ? waiting : joining;
+            SocketClient other = i % 2 == 0 ? joining : waiting;
+            if (i == 1)
+                assertFailure(mover.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 0), Response.class)); // Taken
+            assertSuccess(mover.sendRequest(Request.of(Request.RequestType.SEND_MOVE, moves[i]), Response.class));
+            assertEquals(moves[i], other.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class).getMove());
+        }
+        assertSuccess(joining.sendRequest(new Request(Request.RequestType.COMPLETE_GAME, null), Response.class));
+        Player winner = server.getLobby().getPlayer("waiting");
+        Player loser = server.getLobby().getPlayer("joining");
+        assertEquals(Player.INITIAL_RATING + 16, winner.getRating());
+        assertEquals(Player.INITIAL_RATING - 16, loser.getRating());
+    }
+
+    @Test
+    public void rejectsInvalidRequests() throws Exception {
+        SocketClient client = connect();
+        assertFailure(client.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), Response.class));
+        User user = new User("carol", "secret", "Carol", false);
+        assertSuccess(client.sendRequest(Request.of(Request.RequestType.REGISTER, user), Response.class));
+        assertFailure(client.sendRequest(Request.of(Request.RequestType.REGISTER, user), Response.class));
+        assertFailure(client.sendRequest(Request.of(Request.RequestType.LOGIN,
+                new User("carol", "wrong", null, false)), Response.class));
+        assertSuccess(client.sendRequest(Request.of(Request.RequestType.LOGIN, user), Response.class));
+        assertFailure(client.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "nobody"), Response.class));
+        assertFailure(client.sendRequest(Request.of(Request.RequestType.ACCEPT_INVITATION, 42), Response.class));
+        assertFailure(client.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class));
+    }
+
+    @Test
+    public void onlyOneOfTwoConcurrentAcceptsStartsAGame() throws Exception {
+        SocketClient host = connect();
+        SocketClient first = connect();
+        SocketClient second = connect();
+        login(host, "host");
+        login(first, "first");
+        login(second, "second");
+        assertSuccess(host.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "first"), Response.class));
+        assertSuccess(host.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "second"), Response.class));
+        int firstId = first.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class)
+                .getInvitation().getEventId();
+        int secondId = second.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class)
+                .getInvitation().getEventId();
+
+        CompletableFuture<Response> a = first.send(Request.of(Request.RequestType.ACCEPT_INVITATION, firstId), Response.class);
+        CompletableFuture<Response> b = second.send(Request.of(Request.RequestType.ACCEPT_INVITATION, secondId), Response.class);
+        int accepted = 0;
+        for (Response response : new Response[] {a.get(5, TimeUnit.SECONDS), b.get(5, TimeUnit.SECONDS)})
+            accepted += response.getStatus() == Response.ResponseStatus.SUCCESS ? 1 : 0;
+        assertEquals(1, accepted);
+    }
+
+    @Test
+    public void pushesMovesOverTheBinaryFormat() throws Exception {
+        NioSocketClient alice = loop.connect("127.0.0.1", server.getPort(), true).get(5, TimeUnit.SECONDS);
+        NioSocketClient bob = loop.connect("127.0.0.1", server.getPort(), true).get(5, TimeUnit.SECONDS);
+        assertTrue(alice.isBinary());
+        login(alice, "alice");
+        login(bob, "bob");
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "bob"), Response.class));
+        PairingResponse pairing = bob.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class);
+        assertEquals("alice", pairing.getInvitation().getSender());
+        int eventId = pairing.getInvitation().getEventId();
+        assertSuccess(bob.sendRequest(Request.of(Request.RequestType.ACCEPT_INVITATION, eventId), Response.class));
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.ACKNOWLEDGE_RESPONSE, eventId), Response.class));
+
+        BlockingQueue<Integer> moves = new ArrayBlockingQueue<>(4);
+        bob.setMoveListener(response -> moves.add(response.getMove()));
+        assertTrue(bob.subscribeMoves().get(5, TimeUnit.SECONDS));
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 2), Response.class));
+        assertEquals(Integer.valueOf(2), moves.poll(5, TimeUnit.SECONDS));
+        assertEquals(-1, bob.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class).getMove());
+
+        alice.close();
+        GamingResponse afterDisconnect;
+        do {
+            afterDisconnect = bob.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class);
+        } while (afterDisconnect.isActive());
+        bob.close();
+    }
+
+    @Test
+    public void handlesABatchLikeSeparateRequests() throws Exception {
+        SocketClient alice = connect();
+        SocketClient bob = connect();
+        User user = new User("alice", "secret", "alice", false);
+        List<Response> login = alice.batch()
+                .add(Request.of(Request.RequestType.REGISTER, user), Response.class)
+                .add(Request.of(Request.RequestType.LOGIN, user), Response.class)
+                .add(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class)
+                .sendRequest();
+        assertSuccess(login.get(0));
+        assertSuccess(login.get(1));
+        assertFailure(login.get(2)); // Not in a game, and still a GamingResponse
+        assertEquals(-1, ((GamingResponse) login.get(2)).getMove());
+
+        login(bob, "bob");
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "bob"), Response.class));
+        Event invitation = bob.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class).getInvitation();
+        List<Response> accept = bob.batch()
+                .add(Request.of(Request.RequestType.ACCEPT_INVITATION, invitation.getEventId()), Response.class)
+                .add(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class)
+                .sendRequest();
+        assertSuccess(accept.get(0));
+        assertTrue(((PairingResponse) accept.get(1)).getAvailableUsers().isEmpty()); // Playing now
+
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.ACKNOWLEDGE_RESPONSE, invitation.getEventId()), Response.class));
+        List<Response> move = alice.batch()
+                .add(Request.of(Request.RequestType.SEND_MOVE, 4), Response.class)
+                .add(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class)
+                .sendRequest();
+        assertSuccess(move.get(0));
+        assertEquals(-1, ((GamingResponse) move.get(1)).getMove()); // Bob has not moved yet
+        assertEquals(4, bob.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class).getMove());
+
+        Request nested = Request.of(Request.RequestType.BATCH, new Request[] {
+                Request.of(Request.RequestType.BATCH, new Request[0])});
+        BatchResponse rejected = alice.sendRequest(nested, BatchResponse.class);
+        assertFailure(rejected.getResponses().get(0));
+    }
+
+    @Test
+    public void requestMove_returnsEveryMoveSinceASequenceNumber() {
+        SocketClient alice = connect();
+        SocketClient bob = connect();
+        login(alice, "alice");
+        login(bob, "bob");
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "bob"), Response.class));
+        Event invitation = bob.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class).getInvitation();
+        assertSuccess(bob.sendRequest(Request.of(Request.RequestType.ACCEPT_INVITATION, invitation.getEventId()), Response.class));
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.ACKNOWLEDGE_RESPONSE, invitation.getEventId()), Response.class));
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 4), Response.class));
+        assertEquals(4, bob.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class).getMove());
+        assertSuccess(bob.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 0), Response.class));
+        GamingResponse reply = alice.sendRequest(Request.of(Request.RequestType.REQUEST_MOVE, 1), GamingResponse.class);
+        assertEquals(Collections.singletonList(0), reply.getMoves());
+        assertEquals(0, reply.getMove());
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_MOVE, 8), Response.class));
+
+        // Bob missed the last move, and alice lost everything: one request each catches up
+        GamingResponse missed = bob.sendRequest(Request.of(Request.RequestType.REQUEST_MOVE, 2), GamingResponse.class);
+        assertEquals(3, missed.getSequence());
+        assertEquals(Collections.singletonList(8), missed.getMoves());
+        GamingResponse all = alice.sendRequest(Request.of(Request.RequestType.REQUEST_MOVE, 0), GamingResponse.class);
+        assertEquals(Arrays.asList(4, 0, 8), all.getMoves());
+        assertNull(alice.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), GamingResponse.class).getMoves());
+    }
+
+    @Test
+    public void resumesASessionOnANewConnection() {
+        SocketClient alice = connect();
+        User user = new User("alice", "secret", "alice", false);
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.REGISTER, user), Response.class));
+        String token = alice.sendRequest(Request.of(Request.RequestType.LOGIN, user), Response.class).getMessage();
+        SocketClient bob = connect();
+        login(bob, "bob");
+        assertSuccess(alice.sendRequest(Request.of(Request.RequestType.SEND_INVITATION, "bob"), Response.class));
+        Event invitation = bob.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class).getInvitation();
+        assertSuccess(bob.sendRequest(Request.of(Request.RequestType.ACCEPT_INVITATION, invitation.getEventId()), Response.class));
+        alice.close();
+
+        SocketClient other = connect();
+        assertFailure(other.sendRequest(Request.of(Request.RequestType.RESUME_SESSION, "bogus"), Response.class));
+        assertSuccess(other.sendRequest(Request.of(Request.RequestType.RESUME_SESSION, token), Response.class));
+        Event answer = other.sendRequest(new Request(Request.RequestType.UPDATE_PAIRING, null), PairingResponse.class).getInvitationResponse();
+        assertEquals(Event.EventStatus.ACCEPTED, answer.getStatus()); // Still in the game
+        assertSuccess(other.sendRequest(Request.of(Request.RequestType.ACKNOWLEDGE_RESPONSE, answer.getEventId()), Response.class));
+    }
+
+    @Test
+    public void holdsManyConnections() throws Exception {
+        int count = 2000;
+        List<CompletableFuture<NioSocketClient>> connecting = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            connecting.add(loop.connect("127.0.0.1", server.getPort()));
+        List<CompletableFuture<Response>> logins = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            NioSocketClient client = connecting.get(i).get(10, TimeUnit.SECONDS);
+            User user = new User("user" + i, "secret", null, false);
+            logins.add(client.send(Request.of(Request.RequestType.REGISTER, user), Response.class)
+                    .thenCompose(r -> client.send(Request.of(Request.RequestType.LOGIN, user), Response.class)));
+        }
+        for (CompletableFuture<Response> login : logins)
+            assertSuccess(login.get(10, TimeUnit.SECONDS));
+        assertEquals(count, server.getConnectionCount());
+        assertEquals(count, server.getOnlineCount());
+    }
+
+    @Test
+    public void acceptsInlinePayloadsWithoutBinary() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            Gson gson = JsonCodecs.inlineGson();
+            output.writeUTF(gson.toJson(new Request(Request.RequestType.NEGOTIATE_FORMAT, "xml, " + JsonCodecs.INLINE_FORMAT)));
+            Response negotiated = gson.fromJson(input.readUTF(), Response.class);
+            assertSuccess(negotiated);
+            assertEquals(JsonCodecs.INLINE_FORMAT, JsonCodecs.negotiatedFormat(negotiated));
+
+            User user = new User("carol", "secret", "Carol", false);
+            String register = gson.toJson(Request.of(Request.RequestType.REGISTER, user));
+            assertTrue(register, register.contains("\"data\":{"));
+            output.writeUTF(register);
+            assertSuccess(gson.fromJson(input.readUTF(), Response.class));
+            output.writeUTF(gson.toJson(Request.of(Request.RequestType.LOGIN, user)));
+            assertSuccess(gson.fromJson(input.readUTF(), Response.class));
+        }
+
+        SocketClient alice = new SocketClient("127.0.0.1", server.getPort(), true);
+        clients.add(alice);
+        assertEquals("binary is preferred", BinaryCodec.FORMAT, alice.getFormat());
+    }
+
+    private SocketClient connect() {
+        SocketClient client = new SocketClient("127.0.0.1", server.getPort());
+        clients.add(client);
+        return client;
+    }
+
+    private static void login(SocketClient client, String username) {
+        User user = new User(username, "secret", username, false);
+        assertSuccess(client.sendRequest(Request.of(Request.RequestType.REGISTER, user), Response.class));
+        assertSuccess(client.sendRequest(Request.of(Request.RequestType.LOGIN, user), Response.class));
+    }
+
+    private static void login(NioSocketClient client, String username) {
+        User user = new User(username, "secret", username, false);
+        assertSuccess(client.sendRequest(Request.of(Request.RequestType.REGISTER, user), Response.class));
+        assertSuccess(client.sendRequest(Request.of(Request.RequestType.LOGIN, user), Response.class));
+    }
+
+    private static void assertSuccess(Response response) {
+        assertNotNull(response);
+        assertEquals(response.getMessage(), Response.ResponseStatus.SUCCESS, response.getStatus());
+    }
+
+    private static void assertFailure(Response response) {
+        assertNotNull(response);
+        assertEquals(Response.ResponseStatus.FAILURE, response.getStatus());
+    }
+}
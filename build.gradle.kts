@@ -25,12 +25,32 @@ android {
             )
         }
     }
+    androidResources {
+        // outcomes.bin is memory-mapped, so it must not be compressed in the APK
+        noCompress += "bin"
+    }
+    testOptions {
+        // Local unit tests run the client code, which logs through android.util.Log
+        unitTests.isReturnDefaultValues = true
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
 }
 
+// The JVM tests of the reference server and the load generator live in the standalone benchmarks build,
+// which also runs the unit tests of src/test/java without Android; `check` runs it too.
+val benchmarkTests by tasks.registering(GradleBuild::class) {
+    description = "Runs the tests of the benchmarks build, the reference server's included."
+    dir = file("benchmarks")
+    tasks = listOf("test")
+}
+
+tasks.named("check") {
+    dependsOn(benchmarkTests)
+}
+
 dependencies {
 
     implementation("androidx.appcompat:appcompat:1.6.1")
@@ -18,4 +18,10 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# Protocol messages are encoded by the TypeAdapters in socket.JsonCodecs and by socket.BinaryCodec,
+# which use getters, setters and the enum constants, never field reflection. Enum constants travel
+# by name in JSON, so they must keep their names.
+-keepclassmembers enum socket.** { *; }
+-keepclassmembers enum model.** { *; }
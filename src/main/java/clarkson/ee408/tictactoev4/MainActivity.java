@@ -4,6 +4,7 @@ import static android.provider.SyncStateContract.Helpers.update;
 
 import android.app.DownloadManager;
 import android.content.DialogInterface;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Color;
 import android.graphics.Point;
 import android.os.Bundle;
@@ -13,17 +14,27 @@ import android.view.View;
 import android.widget.Button;
 import android.widget.GridLayout;
 import android.widget.TextView;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
-import android.os.Handler;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
 import client.AppExecutors;
+import client.GameJournal;
+import client.MoveListener;
+import client.MoveLog;
+import client.PollScheduler;
 import client.SocketClient;
+import model.Event;
 import socket.GamingResponse;
 import socket.Request;
 import socket.Response;
@@ -36,9 +47,11 @@ public class MainActivity extends AppCompatActivity {
     private TicTacToe tttGame;
     private Button [][] buttons;
     private TextView status;
-    private Gson gson;
-    private Handler handler = new Handler();
-    private Boolean shouldRequestMove = false;
+    private PollScheduler movePoller; // Polls for the opponent's move while waiting for it.
+    private volatile boolean movesPushed = false; // The server pushes the opponent's moves, so polling is skipped.
+    private volatile OutcomeTable outcomeTable; // Best moves for every position, mapped from assets on startup, for hints.
+    private final MoveLog moveLog = new MoveLog(); // Moves of the current game, reconciled with the server's log.
+    private GameJournal journal; // The current game on disk, to resume it after the process died. Null if unavailable.
     /**
      * onCreate method for initializing the activity.
      *
@@ -49,42 +62,195 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate( savedInstanceState );
         tttGame = new TicTacToe(2);
         buildGuiByCode();
-        gson = new GsonBuilder().serializeNulls().create();
-        handler.post(runnableCode);
+        movePoller = new PollScheduler(AppExecutors.getInstance().timer(), 250, 4000, this::pollMove);
+        restoreGame(); // Before the first request, which asks for the moves after the restored ones
+        SocketClient.prewarm(AppExecutors.getInstance().backgroundIO());
+        try {
+            AppExecutors.getInstance().diskIO().execute(this::loadOutcomeTable);
+        } catch (RejectedExecutionException e) {
+            Log.e("MainActivity", "Outcome table not loaded, no hints: " + e.getMessage());
+        }
+        subscribeMoves();
         updateTurnStatus();
     }
-    // Define the code block to be executed
-    private Runnable runnableCode = new Runnable() {
+    /**
+     * Opens the {@link GameJournal} and resumes the game it holds, before any request is sent. The moves the server
+     * had confirmed are restored as confirmed, the others as local ones, which the first REQUEST_MOVE reconciles.
+     */
+    private void restoreGame() {
+        try {
+            journal = new GameJournal(new File(getFilesDir(), "game.journal"), GameJournal.DEFAULT_CAPACITY,
+                    AppExecutors.getInstance().diskIO());
+        } catch (IOException e) {
+            Log.e("", "No game journal: " + e.getMessage());
+            return;
+        }
+        GameJournal.Game game = journal.recover();
+        if (game == null || game.getStatus() != Event.EventStatus.PLAYING) {
+            journalNewGame();
+            return;
+        }
+        tttGame.setPlayer(game.getPlayer());
+        moveLog.restore(game.getMoves(), game.getConfirmed());
+        replayMoves();
+    }
+    /**
+     * Records the start of the current game in the {@link #journal}, which replaces the one it held.
+     */
+    private void journalNewGame() {
+        if (journal != null) {
+            journal.startGame(tttGame.getPlayer(), 0);
+            journal.eventStatus(0, Event.EventStatus.PLAYING);
+        }
+    }
+    /**
+     * Memory-maps the precomputed {@link OutcomeTable} asset, which is stored uncompressed in the APK, then shows the
+     * hint of the current turn.
+     */
+    private void loadOutcomeTable() {
+        try {
+            AssetFileDescriptor descriptor = getAssets().openFd("outcomes.bin");
+            // Closing the stream also closes the descriptor; the mapping stays valid
+            try (FileInputStream input = descriptor.createInputStream()) {
+                outcomeTable = new OutcomeTable(input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        descriptor.getStartOffset(), descriptor.getDeclaredLength()));
+            }
+        } catch (IOException e) {
+            Log.e("MainActivity", "Outcome table not loaded", e);
+            return;
+        }
+        AppExecutors.getInstance().mainThread().execute(() -> {
+            if (!tttGame.isGameOver() && tttGame.getPlayer() == tttGame.getTurn()) {
+                status.setText(withHint("Your Turn"));
+            }
+        });
+    }
+    /**
+     * Adds the best move of the current position, from the {@link #outcomeTable}, to a status text.
+     *
+     * @param text The status text.
+     * @return The text with the hint, or the text alone while the table is not mapped.
+     */
+    private String withHint(String text) {
+        OutcomeTable table = outcomeTable;
+        int best = table == null ? -1 : table.bestMove(tttGame);
+        if (best < 0) {
+            return text;
+        }
+        return text + " (hint: row " + (best / TicTacToe.SIDE + 1) + ", col " + (best % TicTacToe.SIDE + 1) + ")";
+    }
+    /**
+     * Poll run by {@link #movePoller}, skipped while the server pushes moves.
+     *
+     * @return A future completed with true if the opponent moved.
+     */
+    private CompletableFuture<Boolean> pollMove() {
+        if (movesPushed) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return requestMove();
+    }
+    // Applies moves pushed by the server, and falls back to polling if the connection breaks
+    private final MoveListener moveListener = new MoveListener() {
         @Override
-        public void run() {
-            if (shouldRequestMove) {
-                requestMove();
+        public void onMove(GamingResponse response) {
+            applyMoves(response);
+            if (moveLog.isBehind()) {
+                requestMove(); // Catches up on the missed moves in one round trip
             }
-            handler.postDelayed(this, 1000);
+        }
+
+        @Override
+        public void onConnectionLost() {
+            movesPushed = false;
         }
     };
     /**
-     * Requests the server for a move to be made in the game.
+     * Registers for the opponent's moves of the current game to be pushed by the server.
+     * The {@link #movePoller} keeps polling until the server accepts.
      */
-    private void requestMove(){
-        Request request = new Request(Request.RequestType.REQUEST_MOVE, null);
-        AppExecutors.getInstance().networkIO().execute(() -> {
-            SocketClient socketClient = SocketClient.getInstance();
-            GamingResponse response = socketClient.sendRequest(request, GamingResponse.class);
-            if(response != null && response.getStatus() == Response.ResponseStatus.SUCCESS){
-                if(response.getMove() != -1){
-                    int row = response.getMove() / 3;
-                    int col = response.getMove() % 3;
-                    AppExecutors.getInstance().mainThread().execute(() ->
-                            update(row, col));
-                    Log.e("", "There was a Move");
+    private void subscribeMoves() {
+        try {
+            AppExecutors.getInstance().networkIO().execute(() -> {
+                SocketClient socketClient = SocketClient.getInstance();
+                socketClient.setMoveListener(moveListener);
+                // Completed by the reader, so the interactive lane is not held for the round trip
+                socketClient.subscribeMoves().thenAccept(pushed -> {
+                    movesPushed = pushed;
+                    Log.e("", pushed ? "Moves pushed" : "Polling moves");
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e("", "Polling moves, not subscribed: " + e.getMessage());
+        }
+    }
+    /**
+     * Applies the moves received from the server on the main thread, or rebuilds the board if it disagrees with them.
+     *
+     * @param response A polled or pushed move response.
+     * @return true if the board changed.
+     */
+    private boolean applyMoves(GamingResponse response) {
+        List<Integer> moves = moveLog.apply(response);
+        if (journal != null) {
+            journal.confirmed(moveLog.getConfirmed());
+        }
+        if (moves == null) {
+            Log.e("", "Board out of step, replaying the moves");
+            AppExecutors.getInstance().mainThread().execute(this::replayMoves);
+            return true;
+        }
+        for (int move : moves) {
+            int row = move / 3;
+            int col = move % 3;
+            AppExecutors.getInstance().mainThread().execute(() ->
+                    update(row, col));
+            Log.e("", "There was a Move");
+        }
+        if (moves.isEmpty()) {
+            Log.e("", "No move");
+        }
+        return !moves.isEmpty();
+    }
+    /**
+     * Clears the board and plays the moves of the {@link #moveLog} again, on the main thread.
+     */
+    private void replayMoves() {
+        tttGame.resetGame();
+        resetButtons();
+        journalNewGame(); // The moves are journaled again as they are played
+        for (int move : moveLog.getMoves()) {
+            update(move / 3, move % 3);
+        }
+        if (journal != null) {
+            journal.confirmed(moveLog.getConfirmed());
+        }
+        if (!tttGame.isGameOver()) {
+            updateTurnStatus();
+        }
+    }
+    /**
+     * Requests the server for the moves made in the game since the last one confirmed.
+     *
+     * @return A future completed with true if the opponent moved.
+     */
+    private CompletableFuture<Boolean> requestMove(){
+        Request request = moveLog.newRequest();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                // Shared with any other REQUEST_MOVE in flight, e.g. a manual refresh
+                GamingResponse response = SocketClient.getInstance().getCoalescer().sendRequest(request, GamingResponse.class);
+                if(response != null && response.getStatus() == Response.ResponseStatus.SUCCESS){
+                    return applyMoves(response);
                 }else {
-                    Log.e("","No move");
+                    Log.e("","Request Error");
+                    return false;
                 }
-            }else {
-                Log.e("","Request Error");
-            }
-        });
+            }, AppExecutors.getInstance().networkIO(request.getType()));
+        } catch (RejectedExecutionException e) {
+            Log.e("", "Request Error: " + e.getMessage()); // The next poll tries again
+            return CompletableFuture.completedFuture(false);
+        }
     }
     /**
      * Sends a move to the server and updates the game UI accordingly.
@@ -94,33 +260,47 @@ public class MainActivity extends AppCompatActivity {
      */
     private void sendMove(int row, int col) {
         int move_num = (row*3) + col;
-        String moveJson = gson.toJson(move_num);
-        Request request = new Request(Request.RequestType.SEND_MOVE, moveJson);
+        Request request = Request.of(Request.RequestType.SEND_MOVE, move_num);
+        moveLog.addLocal(move_num); // Played on the board right away, confirmed by the next REQUEST_MOVE
 
-        AppExecutors.getInstance().networkIO().execute(() -> {
-            SocketClient socketClient = SocketClient.getInstance();
-            Response response = socketClient.sendRequest(request, Response.class);
-            if (response != null && response.getStatus() == Response.ResponseStatus.SUCCESS){
-                Log.e("", "Move sent");
-            }
-            else {
-                Log.e("", "move not sent");
-            }
-        });
+        try {
+            AppExecutors.getInstance().networkIO(request.getType()).execute(() -> {
+                SocketClient socketClient = SocketClient.getInstance();
+                Response response = socketClient.sendRequest(request, Response.class);
+                if (response != null && response.getStatus() == Response.ResponseStatus.SUCCESS){
+                    Log.e("", "Move sent");
+                }
+                else {
+                    Log.e("", "move not sent");
+                    undoLocalMoves();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e("", "move not sent: " + e.getMessage());
+            undoLocalMoves();
+        }
 
     }
+    /**
+     * Takes back the moves of the user that the server did not accept.
+     */
+    private void undoLocalMoves() {
+        if (moveLog.discardLocal()) {
+            AppExecutors.getInstance().mainThread().execute(this::replayMoves);
+        }
+    }
     /**
      * Updates the game's turn status, indicating whose turn it is.
      */
     private void updateTurnStatus() {
 
         if (tttGame.getPlayer() == tttGame.getTurn()) {
-            status.setText("Your Turn");
-            shouldRequestMove = false;
+            status.setText(withHint("Your Turn"));
+            movePoller.stop();
             enableButtons(true);
         } else {
             status.setText("Waiting for Opponent");
-            shouldRequestMove = true;
+            movePoller.start();
             enableButtons(false);
         }
 
@@ -202,11 +382,18 @@ public class MainActivity extends AppCompatActivity {
     public void update( int row, int col ) {
         Log.e("", "Updating the ui " + row + " " + col);
         int play = tttGame.play( row, col );
+        if( play != 0 && journal != null )
+            journal.move( row * 3 + col );
         if( play == 1 )
             buttons[row][col].setText( "X" );
         else if( play == 2 )
             buttons[row][col].setText( "O" );
         if( tttGame.isGameOver( ) ) {
+            if( journal != null ) {
+                journal.eventStatus( 0, Event.EventStatus.COMPLETED );
+                journal.endGame( );
+            }
+            movePoller.stop();
             status.setBackgroundColor( Color.RED );
             enableButtons( false );
             status.setText( tttGame.result( ) );
@@ -266,27 +453,68 @@ public class MainActivity extends AppCompatActivity {
             public void onClick( DialogInterface dialog, int id ) {
                 if( id == -1 ) /* YES button */ {
                     tttGame.resetGame( );
+                    moveLog.clear( );
                     if (tttGame.getPlayer() == 1){
                       tttGame.setPlayer(2);
                     } else {
                       tttGame.setPlayer(1);
                     }
+                    journalNewGame( );
                     enableButtons( true );
                     resetButtons( );
                     status.setBackgroundColor( Color.GREEN );
                     status.setText( tttGame.result( ) );
+                    subscribeMoves();
                     updateTurnStatus();
                 }
                 else if( id == -2 ) // NO button
                     MainActivity.this.finish( );
             }
     }
+    /**
+     * onPause method for suspending polling while the activity is in the background.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        movePoller.pause();
+    }
+    /**
+     * onResume method for resuming polling when the activity is back in the foreground.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        movePoller.resume();
+    }
     /**
      * onDestroy method for cleaning up resources when the activity is destroyed.
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        handler.removeCallbacks(runnableCode);
+        movePoller.stop();
+        try {
+            AppExecutors.getInstance().networkIO().execute(() ->
+                    SocketClient.getInstance().setMoveListener(null));
+        } catch (RejectedExecutionException e) {
+            Log.e("", "Move listener not removed: " + e.getMessage());
+        }
+        GameJournal journal = this.journal;
+        if (journal != null) {
+            try {
+                // After the records queued before it
+                AppExecutors.getInstance().diskIO().execute(() -> {
+                    try {
+                        journal.close();
+                    } catch (IOException e) {
+                        Log.e("", "Game journal not closed: " + e.getMessage());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The records are already in the mapping; it is released with the process
+                Log.e("", "Game journal not closed: " + e.getMessage());
+            }
+        }
     }
 }
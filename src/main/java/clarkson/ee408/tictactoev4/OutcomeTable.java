@@ -0,0 +1,134 @@
+package clarkson.ee408.tictactoev4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of the precomputed outcome of every 3x3 position, written by {@link OutcomeTableGenerator}.
+ * The file is an 8-byte header (magic number, number of reachable positions) followed by one byte per
+ * base-3 board code (3^9 bytes). A byte is 0 for positions that cannot be reached, otherwise it holds
+ * the best move + 1 in bits 0-3 (0 when the game is over) and the value for the player to move + 2 in bits 4-5.
+ * Lookups read the mapped buffer directly and never allocate.
+ */
+public class OutcomeTable {
+    public static final int MAGIC = 0x5454544F; // "TTTO"
+    public static final int HEADER_SIZE = 8;
+    public static final int POSITIONS = 19683; // 3^9 board codes.
+
+    /**
+     * Base-3 weight of each 9-bit mask: the sum of 3^cell over the set cells.
+     */
+    private static final int [] TERNARY = new int[TicTacToe.FULL_BOARD + 1];
+
+    static {
+        for( int mask = 0; mask <= TicTacToe.FULL_BOARD; mask++ ) {
+            int power = 1;
+            for( int cell = 0; cell < TicTacToe.SIDE * TicTacToe.SIDE; cell++, power *= 3 )
+                if( ( mask & ( 1 << cell ) ) != 0 )
+                    TERNARY[mask] += power;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int reachable;
+
+    /**
+     * Wraps a buffer holding a complete table, for example a mapped region of an uncompressed asset.
+     *
+     * @param buffer The table bytes, from the header at its position to the last entry.
+     * @throws IOException If the buffer does not hold an outcome table.
+     */
+    public OutcomeTable(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.slice().order( ByteOrder.BIG_ENDIAN );
+        if( this.buffer.remaining() < HEADER_SIZE + POSITIONS || this.buffer.getInt( 0 ) != MAGIC )
+            throw new IOException( "Not an outcome table" );
+        reachable = this.buffer.getInt( 4 );
+    }
+
+    /**
+     * Memory-maps a table file.
+     *
+     * @param file The file written by {@link OutcomeTableGenerator}.
+     * @return The mapped table.
+     * @throws IOException If the file can not be mapped or is not an outcome table.
+     */
+    public static OutcomeTable map(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile( file, "r" );
+             FileChannel channel = input.getChannel()) {
+            return new OutcomeTable( channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) );
+        }
+    }
+
+    /**
+     * Base-3 code of a position: cell i contributes 3^i for Player 1 and 2 * 3^i for Player 2.
+     *
+     * @param player1 Bitboard of Player 1.
+     * @param player2 Bitboard of Player 2.
+     * @return The board code (0 to 3^9 - 1).
+     */
+    public static int code(int player1, int player2) {
+        return TERNARY[player1] + 2 * TERNARY[player2];
+    }
+
+    /**
+     * Gets the number of positions reachable through {@link TicTacToe#play(int, int)}.
+     *
+     * @return The number of non-empty entries.
+     */
+    public int getReachable() {
+        return reachable;
+    }
+
+    /**
+     * Checks whether a position can happen in a game.
+     *
+     * @param player1 Bitboard of Player 1.
+     * @param player2 Bitboard of Player 2.
+     * @return true if the table has an entry for the position.
+     */
+    public boolean contains(int player1, int player2) {
+        return entry( player1, player2 ) != 0;
+    }
+
+    /**
+     * Gets the best move of a position for the player to move.
+     *
+     * @param player1 Bitboard of Player 1.
+     * @param player2 Bitboard of Player 2.
+     * @return The best cell (0-8), or -1 if the game is over or the position is unreachable.
+     */
+    public int bestMove(int player1, int player2) {
+        return ( entry( player1, player2 ) & 15 ) - 1;
+    }
+
+    /**
+     * Gets the value of a position for the player to move.
+     *
+     * @param player1 Bitboard of Player 1.
+     * @param player2 Bitboard of Player 2.
+     * @return {@link TicTacToeSolver#WIN}, {@link TicTacToeSolver#DRAW} or {@link TicTacToeSolver#LOSS},
+     * or {@link TicTacToeSolver#DRAW} for unreachable positions.
+     */
+    public int value(int player1, int player2) {
+        int entry = entry( player1, player2 );
+        return entry == 0 ? TicTacToeSolver.DRAW : ( ( entry >> 4 ) & 3 ) - 2;
+    }
+
+    /**
+     * Gets the best move of the current position of a game.
+     *
+     * @param game A 3x3 game.
+     * @return The best cell (0-8), or -1 if the game is over.
+     */
+    public int bestMove(TicTacToe game) {
+        return bestMove( game.getMarks( 1 ), game.getMarks( 2 ) );
+    }
+
+    private int entry(int player1, int player2) {
+        return buffer.get( HEADER_SIZE + code( player1, player2 ) ) & 0xFF;
+    }
+}
@@ -0,0 +1,102 @@
+package clarkson.ee408.tictactoev4;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedOutputStream;
+
+/**
+ * Builds the {@link OutcomeTable} file. Every position reachable through {@link TicTacToe#play(int, int)}
+ * is enumerated from the empty board and solved with {@link TicTacToeSolver}.
+ * Run it on the JVM whenever the file format or the solver changes, e.g. with the benchmarks build:
+ * {@code gradle generateOutcomeTable}, which writes src/main/assets/outcomes.bin.
+ */
+public class OutcomeTableGenerator {
+    private final TicTacToeSolver solver = new TicTacToeSolver();
+    private final byte [] entries = new byte[OutcomeTable.POSITIONS];
+    private int reachable;
+
+    /**
+     * Enumerates and solves every reachable position.
+     *
+     * @return The table entries indexed by {@link OutcomeTable#code(int, int)}.
+     */
+    public byte [] generate() {
+        visit( new int[TicTacToe.SIDE * TicTacToe.SIDE], 0 );
+        return entries;
+    }
+
+    /**
+     * Gets the number of reachable positions found by {@link #generate()}.
+     *
+     * @return The number of non-empty entries.
+     */
+    public int getReachable() {
+        return reachable;
+    }
+
+    /**
+     * Replays a move sequence, records the resulting position and recurses into every legal move.
+     */
+    private void visit( int [] moves, int count ) {
+        TicTacToe game = new TicTacToe( 1 );
+        for( int i = 0; i < count; i++ )
+            game.play( moves[i] / TicTacToe.SIDE, moves[i] % TicTacToe.SIDE );
+        int code = OutcomeTable.code( game.getMarks( 1 ), game.getMarks( 2 ) );
+        if( entries[code] != 0 )
+            return;
+        TicTacToeSolver.Solution solution = solver.solve( game );
+        entries[code] = (byte) ( ( ( solution.getValue() + 2 ) << 4 ) | ( solution.getMove() + 1 ) );
+        reachable++;
+        if( game.isGameOver() )
+            return;
+        for( int cell = 0; cell < TicTacToe.SIDE * TicTacToe.SIDE; cell++ ) {
+            if( game.getCell( cell / TicTacToe.SIDE, cell % TicTacToe.SIDE ) != 0 )
+                continue;
+            moves[count] = cell;
+            visit( moves, count + 1 );
+        }
+    }
+
+    /**
+     * Writes the table to a file.
+     *
+     * @param file The destination file.
+     * @throws IOException If the file can not be written.
+     */
+    public void write( File file ) throws IOException {
+        try (DataOutputStream output = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) )) {
+            output.writeInt( OutcomeTable.MAGIC );
+            output.writeInt( reachable );
+            output.write( entries );
+        }
+    }
+
+    /**
+     * Generates the table and reports generation time, file size and lookup throughput.
+     *
+     * @param args The destination file, outcomes.bin by default.
+     * @throws IOException If the file can not be written or mapped.
+     */
+    public static void main( String [] args ) throws IOException {
+        File file = new File( args.length > 0 ? args[0] : "outcomes.bin" );
+        long start = System.nanoTime();
+        OutcomeTableGenerator generator = new OutcomeTableGenerator();
+        generator.generate();
+        generator.write( file );
+        long generated = System.nanoTime();
+        System.out.printf( "Generated %d positions in %.1f ms, %d bytes written to %s%n",
+                generator.getReachable(), ( generated - start ) / 1e6, file.length(), file );
+
+        OutcomeTable table = OutcomeTable.map( file );
+        int lookups = 0;
+        int checksum = 0;
+        long lookupStart = System.nanoTime();
+        for( int round = 0; round < 200; round++ )
+            for( int player1 = 0; player1 <= TicTacToe.FULL_BOARD; player1 += 7, lookups++ )
+                checksum += table.bestMove( player1, ~player1 & ( player1 >> 1 ) );
+        long elapsed = System.nanoTime() - lookupStart;
+        System.out.printf( "%.1f million lookups per second (checksum %d)%n", lookups * 1e3 / elapsed, checksum );
+    }
+}
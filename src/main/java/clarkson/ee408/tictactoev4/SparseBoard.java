@@ -0,0 +1,164 @@
+package clarkson.ee408.tictactoev4;
+
+import java.util.Arrays;
+
+/**
+ * Board storage for the generalized N x N, k-in-a-row game.
+ * Only occupied cells are stored, in an open-addressing hash table keyed by cell index (row * side + col),
+ * so memory grows with the number of moves rather than with side * side.
+ */
+class SparseBoard {
+    private static final long EMPTY = -1L; // Key marking a free slot in the table.
+    private static final int [][] DIRECTIONS = { {0, 1}, {1, 0}, {1, 1}, {1, -1} }; // Row, column, diagonal, anti-diagonal.
+
+    private final int side; // The number of rows and columns of the board.
+    private long [] keys; // Cell indexes of the occupied cells, or EMPTY.
+    private byte [] owners; // The player (1 or 2) owning the cell in the same slot of keys.
+    private int size; // Number of occupied cells.
+
+    /**
+     * Constructs an empty board.
+     *
+     * @param side The number of rows and columns of the board.
+     */
+    SparseBoard(int side) {
+        this.side = side;
+        allocate(16);
+    }
+
+    /**
+     * Gets the owner of a cell.
+     *
+     * @param row The row of the cell (0 to side-1).
+     * @param col The column of the cell (0 to side-1).
+     * @return The player (1 or 2) who marked the cell, or 0 if it is free or outside the board.
+     */
+    int get(int row, int col) {
+        if (row < 0 || col < 0 || row >= side || col >= side)
+            return 0;
+        long key = (long) row * side + col;
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask)
+            if (keys[slot] == key)
+                return owners[slot];
+        return 0;
+    }
+
+    /**
+     * Marks a free cell for a player.
+     *
+     * @param row The row of the cell (0 to side-1).
+     * @param col The column of the cell (0 to side-1).
+     * @param player The player (1 or 2) marking the cell.
+     * @return true if the cell was free and is now marked, false if it was already taken.
+     */
+    boolean set(int row, int col, int player) {
+        if ((size + 1) * 2 > keys.length)
+            rehash(keys.length * 2);
+        long key = (long) row * side + col;
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask)
+            if (keys[slot] == key)
+                return false;
+        keys[slot] = key;
+        owners[slot] = (byte) player;
+        size++;
+        return true;
+    }
+
+    /**
+     * Checks whether the cell just marked completes a run of at least winLength cells of its owner.
+     * Only the 4 lines through the cell are looked at, at most winLength - 1 cells each way.
+     *
+     * @param row The row of the cell just marked.
+     * @param col The column of the cell just marked.
+     * @param player The player who marked it.
+     * @param winLength The number of cells in a row needed to win.
+     * @return true if the move wins the game.
+     */
+    boolean completesLine(int row, int col, int player, int winLength) {
+        for (int [] direction : DIRECTIONS) {
+            int run = 1;
+            for (int i = 1; i < winLength && get(row + i * direction[0], col + i * direction[1]) == player; i++)
+                run++;
+            for (int i = 1; i < winLength && get(row - i * direction[0], col - i * direction[1]) == player; i++)
+                run++;
+            if (run >= winLength)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Scans every occupied cell for a run of at least winLength cells in one direction.
+     *
+     * @param dRow Row step of the direction.
+     * @param dCol Column step of the direction.
+     * @param winLength The number of cells in a row needed to win.
+     * @return The player owning such a run, or 0 if there is none.
+     */
+    int scan(int dRow, int dCol, int winLength) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == EMPTY)
+                continue;
+            int row = (int) (keys[slot] / side);
+            int col = (int) (keys[slot] % side);
+            int player = owners[slot];
+            if (get(row - dRow, col - dCol) == player)
+                continue; // Not the start of a run.
+            int run = 1;
+            while (run < winLength && get(row + run * dRow, col + run * dCol) == player)
+                run++;
+            if (run >= winLength)
+                return player;
+        }
+        return 0;
+    }
+
+    /**
+     * Number of occupied cells.
+     *
+     * @return The number of cells marked so far.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every mark and shrinks the table back to its initial capacity.
+     */
+    void clear() {
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        owners = new byte[capacity];
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long [] oldKeys = keys;
+        byte [] oldOwners = owners;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        owners = new byte[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (keys[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            owners[slot] = oldOwners[i];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
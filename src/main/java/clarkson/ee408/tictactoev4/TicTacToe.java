@@ -3,11 +3,56 @@ package clarkson.ee408.tictactoev4;
  * The TicTacToe class represents a game of Tic-Tac-Toe with a 3x3 grid
  * Players take turns marking cells with their respective symbols (X for Player 1 and O for Player 2).
  * The game can be played until a player wins, it's a tie, or it's still ongoing.
+ * The board is kept as a bitboard: one 9-bit mask per player, where cell (row, col) is bit row * SIDE + col.
+ * Larger boards with a configurable win length (e.g. 15x15 five-in-a-row) are stored in a {@link SparseBoard}.
  */
 public class TicTacToe {
-    public static final int SIDE = 3; // The size of the Tic-Tac-Toe grid.
+    public static final int SIDE = 3; // The size of the classic Tic-Tac-Toe grid.
+    public static final int FULL_BOARD = 0x1FF; // Mask with every cell of the grid set.
+
+    /**
+     * The 8 winning lines as cell masks: 3 rows, 3 columns, then the 2 diagonals.
+     */
+    static final int [] LINES = {
+            0x007, 0x038, 0x1C0,
+            0x049, 0x092, 0x124,
+            0x111, 0x054
+    };
+
+    /**
+     * For every possible 9-bit mask, whether it contains one of the {@link #LINES}.
+     */
+    private static final boolean [] WINNING = new boolean[FULL_BOARD + 1];
+
+    /**
+     * For every cell, the {@link #LINES} that pass through it (2 to 4 lines).
+     */
+    private static final int [][] CELL_LINES = new int[SIDE * SIDE][];
+
+    static {
+        for( int mask = 0; mask <= FULL_BOARD; mask++ )
+            for( int line : LINES )
+                if( ( mask & line ) == line )
+                    WINNING[mask] = true;
+        for( int cell = 0; cell < SIDE * SIDE; cell++ ) {
+            int count = 0;
+            for( int line : LINES )
+                if( ( line & ( 1 << cell ) ) != 0 )
+                    count++;
+            CELL_LINES[cell] = new int[count];
+            for( int line : LINES )
+                if( ( line & ( 1 << cell ) ) != 0 )
+                    CELL_LINES[cell][--count] = line;
+        }
+    }
+
+    private final int side; // The number of rows and columns of this board.
+    private final int winLength; // The number of cells in a row needed to win.
+    private final SparseBoard cells; // Board storage when it is not the classic 3x3 game, otherwise null.
     private int turn; // Tracks the current turn (1 for Player 1, 2 for Player 2).
-    private int [][] game; // Represents the state of the game board.
+    private final int [] marks = new int[3]; // Cell masks of Player 1 and Player 2 on the 3x3 board (index 0 is unused).
+    private long moves; // Number of cells marked so far, maintained by play().
+    private int winner; // The first player to complete a line, maintained by play(), or 0.
 
     private int player; // Represents the current player (1 for Player 1, 2 for Player 2).
     /**
@@ -16,7 +61,21 @@ public class TicTacToe {
      * @param startingPlayer The player (1 or 2) who starts the game.
      */
     public TicTacToe(int startingPlayer) {
-        game = new int[SIDE][SIDE];
+        this(startingPlayer, SIDE, SIDE);
+    }
+    /**
+     * Constructs a new game on a side x side board where winLength marks in a row, column or diagonal win.
+     *
+     * @param startingPlayer The player (1 or 2) who starts the game.
+     * @param side The number of rows and columns of the board.
+     * @param winLength The number of cells in a row needed to win (1 to side).
+     */
+    public TicTacToe(int startingPlayer, int side, int winLength) {
+        if( side < 1 || winLength < 1 || winLength > side )
+            throw new IllegalArgumentException( "Invalid board " + side + "x" + side + " with win length " + winLength );
+        this.side = side;
+        this.winLength = winLength;
+        cells = side == SIDE && winLength == SIDE ? null : new SparseBoard( side );
         player = startingPlayer;
         resetGame();
     }
@@ -44,42 +103,125 @@ public class TicTacToe {
     public int getTurn() {
         return turn;
     }
+    /**
+     * Gets the number of rows and columns of the board.
+     *
+     * @return The board side.
+     */
+    public int getSide() {
+        return side;
+    }
+    /**
+     * Gets the number of cells in a row needed to win.
+     *
+     * @return The win length.
+     */
+    public int getWinLength() {
+        return winLength;
+    }
+    /**
+     * Gets the number of cells marked so far.
+     *
+     * @return The move count (0 to side * side).
+     */
+    public long getMoveCount() {
+        return moves;
+    }
+    /**
+     * Gets the cells marked by a player as a bitboard. Only the classic 3x3 game is kept as a bitboard.
+     *
+     * @param player The player (1 or 2) whose cells are requested.
+     * @return A 9-bit mask where bit row * SIDE + col is set if the player marked that cell.
+     */
+    public int getMarks(int player) {
+        if( cells != null )
+            throw new IllegalStateException( "Only the 3x3 game is kept as a bitboard" );
+        return marks[player];
+    }
+    /**
+     * Gets the owner of a cell.
+     *
+     * @param row The row of the cell (0 to side-1).
+     * @param col The column of the cell (0 to side-1).
+     * @return The player who marked the cell (1 for Player 1, 2 for Player 2), or 0 if it is free.
+     */
+    public int getCell(int row, int col) {
+        if( cells != null )
+            return cells.get( row, col );
+        if( row < 0 || col < 0 || row >= SIDE || col >= SIDE )
+            return 0;
+        int bit = 1 << ( row * SIDE + col );
+        if( ( marks[1] & bit ) != 0 )
+            return 1;
+        if( ( marks[2] & bit ) != 0 )
+            return 2;
+        return 0;
+    }
     /**
      * Allows a player to make a move on the game board by specifying a row and column.
      *
-     * @param row The row of the cell to mark (0 to SIDE-1).
-     * @param col The column of the cell to mark (0 to SIDE-1).
+     * Only the lines through the marked cell are checked for a win.
+     *
+     * @param row The row of the cell to mark (0 to side-1).
+     * @param col The column of the cell to mark (0 to side-1).
      * @return The player who made the move (1 for Player 1, 2 for Player 2), or 0 if the move is invalid.
      */
     public int play( int row, int col ) {
         int currentTurn = turn;
-        if( row >= 0 && col >= 0 && row < SIDE && col < SIDE
-                && game[row][col] == 0 ) {
-            game[row][col] = turn;
-            if( turn == 1 )
-                turn = 2;
-            else
-                turn = 1;
-            return currentTurn;
+        if( row < 0 || col < 0 || row >= side || col >= side )
+            return 0;
+        if( cells != null ) {
+            if( !cells.set( row, col, turn ) )
+                return 0;
+            if( winner == 0 && cells.completesLine( row, col, turn, winLength ) )
+                winner = turn;
         }
+        else {
+            int cell = row * SIDE + col;
+            if( ( ( marks[1] | marks[2] ) & ( 1 << cell ) ) != 0 )
+                return 0;
+            marks[turn] |= 1 << cell;
+            if( winner == 0 )
+                for( int line : CELL_LINES[cell] )
+                    if( ( marks[turn] & line ) == line )
+                        winner = turn;
+        }
+        moves++;
+        if( turn == 1 )
+            turn = 2;
         else
-            return 0;
+            turn = 1;
+        return currentTurn;
     }
     /**
      * Checks and returns the player who has won the game, or 0 if no player has won.
+     * The winner is recorded by {@link #play(int, int)}, so this is a field read.
      *
      * @return The winning player (1 for Player 1, 2 for Player 2), or 0 if there is no winner yet.
      */
     public int whoWon( ) {
-        int rows = checkRows( );
-        if ( rows > 0 )
-            return rows;
-        int columns = checkColumns( );
-        if( columns > 0 )
-            return columns;
-        int diagonals = checkDiagonals( );
-        if( diagonals > 0 )
-            return diagonals;
+        return winner;
+    }
+
+    /**
+     * Recomputes the winner from both players' masks without using the state recorded by {@link #play(int, int)}.
+     *
+     * @return The winning player (1 for Player 1, 2 for Player 2), or 0 if there is no winner yet.
+     */
+    protected int scanWinner( ) {
+        if( cells != null ) {
+            int rows = checkRows( );
+            if( rows > 0 )
+                return rows;
+            int columns = checkColumns( );
+            if( columns > 0 )
+                return columns;
+            return checkDiagonals( );
+        }
+        if( WINNING[marks[1]] )
+            return 1;
+        if( WINNING[marks[2]] )
+            return 2;
         return 0;
     }
 
@@ -88,11 +230,9 @@ public class TicTacToe {
      * @return The winning player (1 for Player 1, 2 for Player 2), or 0 if there is no winner in the rows.
  */
     protected int checkRows( ) {
-        for( int row = 0; row < SIDE; row++ )
-            if ( game[row][0] != 0 && game[row][0] == game[row][1]
-                    && game[row][1] == game[row][2] )
-                return game[row][0];
-        return 0;
+        if( cells != null )
+            return cells.scan( 0, 1, winLength );
+        return checkLines( 0, 3 );
     }
     /**
      * Checks for a winning pattern in the columns and returns the winning player or 0 if no one has won.
@@ -100,11 +240,9 @@ public class TicTacToe {
      * @return The winning player (1 for Player 1, 2 for Player 2), or 0 if there is no winner in the columns.
      */
     protected int checkColumns( ) {
-        for( int col = 0; col < SIDE; col++ )
-            if ( game[0][col] != 0 && game[0][col] == game[1][col]
-                    && game[1][col] == game[2][col] )
-                return game[0][col];
-        return 0;
+        if( cells != null )
+            return cells.scan( 1, 0, winLength );
+        return checkLines( 3, 6 );
     }
     /**
      * Checks for a winning pattern in the diagonals and returns the winning player or 0 if no one has won.
@@ -112,12 +250,26 @@ public class TicTacToe {
      * @return The winning player (1 for Player 1, 2 for Player 2), or 0 if there is no winner in the diagonals.
      */
     protected int checkDiagonals( ) {
-        if ( game[0][0] != 0 && game[0][0] == game[1][1]
-                && game[1][1] == game[2][2] )
-            return game[0][0];
-        if ( game[0][2] != 0 && game[0][2] == game[1][1]
-                && game[1][1] == game[2][0] )
-            return game[2][0];
+        if( cells != null ) {
+            int diagonal = cells.scan( 1, 1, winLength );
+            return diagonal > 0 ? diagonal : cells.scan( 1, -1, winLength );
+        }
+        return checkLines( 6, 8 );
+    }
+    /**
+     * Tests a range of {@link #LINES} against both players' masks.
+     *
+     * @param from Index of the first line to test.
+     * @param to Index past the last line to test.
+     * @return The player owning one of the lines, or 0 if none of them is complete.
+     */
+    private int checkLines( int from, int to ) {
+        for( int i = from; i < to; i++ ) {
+            if( ( marks[1] & LINES[i] ) == LINES[i] )
+                return 1;
+            if( ( marks[2] & LINES[i] ) == LINES[i] )
+                return 2;
+        }
         return 0;
     }
     /**
@@ -126,12 +278,7 @@ public class TicTacToe {
      * @return true if no more moves can be played, false otherwise.
      */
     public boolean canNotPlay( ) {
-        boolean result = true;
-        for (int row = 0; row < SIDE; row++)
-            for( int col = 0; col < SIDE; col++ )
-                if ( game[row][col] == 0 )
-                    result = false;
-        return result;
+        return moves == (long) side * side;
     }
     /**
      * Checks if the game is over, either due to a win or a tie.
@@ -139,15 +286,18 @@ public class TicTacToe {
      * @return true if the game is over, false otherwise.
      */
     public boolean isGameOver( ) {
-        return canNotPlay( ) || ( whoWon( ) > 0 );
+        return winner > 0 || moves == (long) side * side;
     }
     /**
      * Resets the game board to its initial state and sets the turn to Player 1.
      */
     public void resetGame( ) {
-        for (int row = 0; row < SIDE; row++)
-            for( int col = 0; col < SIDE; col++ )
-                game[row][col] = 0;
+        if( cells != null )
+            cells.clear( );
+        marks[1] = 0;
+        marks[2] = 0;
+        moves = 0;
+        winner = 0;
         turn = 1;
     }
     /**
@@ -156,12 +306,11 @@ public class TicTacToe {
      * @return A string indicating the game result, such as "You won," "You lost," "Tie Game," "Your Turn," or "Waiting for Opponent."
      */
     public String result( ) {
-        int winner = whoWon();
         if (winner == player) {
             return "You won";
         } else if (winner != 0) {
             return "You lost";
-        } else if (canNotPlay()) {
+        } else if (moves == (long) side * side) {
             return "Tie Game";
         } else if (player == turn){
             return "Your Turn";
@@ -0,0 +1,238 @@
+package clarkson.ee408.tictactoev4;
+
+/**
+ * Perfect-play solver for the classic 3x3 {@link TicTacToe} game, used for move hints and computer opponents.
+ * It runs a negamax search with alpha-beta pruning over the players' bitboards. Results are kept in a
+ * transposition table indexed by the base-3 code of the board, reduced to the smallest code among its 8 symmetries,
+ * so each of the 765 distinct positions is searched at most once.
+ * A solver can be shared between threads: table entries are single ints and a lost update only repeats work.
+ */
+public class TicTacToeSolver {
+    public static final int WIN = 1; // Value of a position the player to move wins with perfect play.
+    public static final int DRAW = 0; // Value of a position that ends in a tie with perfect play.
+    public static final int LOSS = -1; // Value of a position the player to move loses against perfect play.
+
+    private static final int CELLS = TicTacToe.SIDE * TicTacToe.SIDE;
+    private static final int INFINITY = CELLS + 2; // Larger than any score.
+    private static final int [] MOVE_ORDER = {4, 0, 2, 6, 8, 1, 3, 5, 7}; // Center, corners, then edges.
+
+    private static final int EXACT = 1; // Table flag: the stored score is exact.
+    private static final int LOWER = 2; // Table flag: the stored score is a lower bound.
+    private static final int UPPER = 3; // Table flag: the stored score is an upper bound.
+
+    /**
+     * Cell permutations of the 8 board symmetries: SYMMETRY_CELLS[s][cell] is where the cell goes under symmetry s.
+     */
+    private static final int [][] SYMMETRY_CELLS = new int[8][CELLS];
+
+    /**
+     * Inverse of {@link #SYMMETRY_CELLS}: which cell lands on the given cell under symmetry s.
+     */
+    private static final int [][] INVERSE_CELLS = new int[8][CELLS];
+
+    /**
+     * Base-3 weight of each 9-bit mask under each symmetry: the sum of 3^cell over the transformed cells.
+     */
+    private static final int [][] TERNARY = new int[8][TicTacToe.FULL_BOARD + 1];
+
+    /**
+     * For every 9-bit mask, whether it contains one of the winning lines.
+     */
+    private static final boolean [] WINNING = new boolean[TicTacToe.FULL_BOARD + 1];
+
+    static {
+        int last = TicTacToe.SIDE - 1;
+        for( int row = 0; row < TicTacToe.SIDE; row++ ) {
+            for( int col = 0; col < TicTacToe.SIDE; col++ ) {
+                int [][] images = {
+                        {row, col}, {col, last - row}, {last - row, last - col}, {last - col, row},
+                        {row, last - col}, {last - row, col}, {col, row}, {last - col, last - row}
+                };
+                for( int s = 0; s < 8; s++ ) {
+                    int image = images[s][0] * TicTacToe.SIDE + images[s][1];
+                    SYMMETRY_CELLS[s][row * TicTacToe.SIDE + col] = image;
+                    INVERSE_CELLS[s][image] = row * TicTacToe.SIDE + col;
+                }
+            }
+        }
+        int [] powers = new int[CELLS];
+        powers[0] = 1;
+        for( int cell = 1; cell < CELLS; cell++ )
+            powers[cell] = powers[cell - 1] * 3;
+        for( int mask = 0; mask <= TicTacToe.FULL_BOARD; mask++ ) {
+            for( int s = 0; s < 8; s++ )
+                for( int cell = 0; cell < CELLS; cell++ )
+                    if( ( mask & ( 1 << cell ) ) != 0 )
+                        TERNARY[s][mask] += powers[SYMMETRY_CELLS[s][cell]];
+            for( int line : TicTacToe.LINES )
+                if( ( mask & line ) == line )
+                    WINNING[mask] = true;
+        }
+    }
+
+    /**
+     * Transposition table indexed by canonical board code (3^9 entries), 0 when the position was not searched yet.
+     * An entry packs the flag in bits 0-1, the canonical best move + 1 in bits 2-5 and the score + INFINITY from bit 6.
+     */
+    private final int [] table = new int[TERNARY[0][TicTacToe.FULL_BOARD] * 2 + 1];
+
+    /**
+     * The outcome of a position and the move that achieves it.
+     */
+    public static class Solution {
+        private final int move;
+        private final int value;
+
+        /**
+         *
+         * @param move The best cell to play (0-8), or -1 if the game is over
+         * @param value The value of the position for the player to move: {@link #WIN}, {@link #DRAW} or {@link #LOSS}
+         */
+        public Solution(int move, int value) {
+            this.move = move;
+            this.value = value;
+        }
+
+        /**
+         * Getter function for {@link #move} attribute
+         * @return move
+         */
+        public int getMove() {
+            return move;
+        }
+
+        /**
+         * Getter function for {@link #value} attribute
+         * @return value
+         */
+        public int getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Solves the current position of a 3x3 game for the player whose turn it is.
+     *
+     * @param game The game to solve. It is not modified.
+     * @return The best move and the value of the position for the player to move.
+     */
+    public Solution solve( TicTacToe game ) {
+        int mover = game.getTurn();
+        int me = game.getMarks( mover );
+        int opponent = game.getMarks( mover == 1 ? 2 : 1 );
+        if( game.isGameOver( ) )
+            return new Solution( -1, game.whoWon( ) == 0 ? DRAW : game.whoWon( ) == mover ? WIN : LOSS );
+        int root = searchRoot( me, opponent );
+        return new Solution( root & 15, Integer.signum( ( root >> 4 ) - INFINITY ) );
+    }
+
+    /**
+     * Finds the best cell for the player to move without allocating.
+     *
+     * @param me Bitboard of the player to move.
+     * @param opponent Bitboard of the other player.
+     * @return The best cell to play (0-8), or -1 if the position is over.
+     */
+    public int bestMove( int me, int opponent ) {
+        if( WINNING[opponent] || WINNING[me] || ( me | opponent ) == TicTacToe.FULL_BOARD )
+            return -1;
+        return searchRoot( me, opponent ) & 15;
+    }
+
+    /**
+     * Value of a position for the player to move, without allocating.
+     *
+     * @param me Bitboard of the player to move.
+     * @param opponent Bitboard of the other player.
+     * @return {@link #WIN}, {@link #DRAW} or {@link #LOSS}.
+     */
+    public int value( int me, int opponent ) {
+        return Integer.signum( search( me, opponent, -INFINITY, INFINITY ) );
+    }
+
+    /**
+     * Searches every move of a position that is not over.
+     *
+     * @return The best cell in bits 0-3 and the best score + INFINITY from bit 4.
+     */
+    private int searchRoot( int me, int opponent ) {
+        int occupied = me | opponent;
+        int best = -INFINITY;
+        int bestCell = -1;
+        for( int cell : MOVE_ORDER ) {
+            if( ( occupied & ( 1 << cell ) ) != 0 )
+                continue;
+            int score = -search( opponent, me | ( 1 << cell ), -INFINITY, -best );
+            if( score > best ) {
+                best = score;
+                bestCell = cell;
+            }
+        }
+        return ( ( best + INFINITY ) << 4 ) | bestCell;
+    }
+
+    /**
+     * Negamax with alpha-beta pruning. Scores are positive when the player to move wins,
+     * larger for quicker wins, and 0 for a tie.
+     */
+    private int search( int me, int opponent, int alpha, int beta ) {
+        int occupied = me | opponent;
+        if( WINNING[opponent] )
+            return -( CELLS + 1 - Integer.bitCount( occupied ) );
+        if( occupied == TicTacToe.FULL_BOARD )
+            return 0;
+
+        int symmetry = canonicalSymmetry( me, opponent );
+        int code = TERNARY[symmetry][me] + 2 * TERNARY[symmetry][opponent];
+        int entry = table[code];
+        int hashMove = -1;
+        if( entry != 0 ) {
+            int score = ( entry >> 6 ) - INFINITY;
+            int flag = entry & 3;
+            if( flag == EXACT || ( flag == LOWER && score >= beta ) || ( flag == UPPER && score <= alpha ) )
+                return score;
+            hashMove = INVERSE_CELLS[symmetry][( ( entry >> 2 ) & 15 ) - 1];
+        }
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestCell = -1;
+        for( int i = -1; i < CELLS; i++ ) {
+            int cell = i < 0 ? hashMove : MOVE_ORDER[i];
+            if( cell < 0 || ( i >= 0 && cell == hashMove ) || ( occupied & ( 1 << cell ) ) != 0 )
+                continue;
+            int score = -search( opponent, me | ( 1 << cell ), -beta, -alpha );
+            if( score > best ) {
+                best = score;
+                bestCell = cell;
+            }
+            if( score > alpha )
+                alpha = score;
+            if( alpha >= beta )
+                break;
+        }
+
+        int flag = best <= originalAlpha ? UPPER : best >= beta ? LOWER : EXACT;
+        if( flag == EXACT || ( table[code] & 3 ) != EXACT )
+            table[code] = ( ( best + INFINITY ) << 6 )
+                    | ( ( SYMMETRY_CELLS[symmetry][bestCell] + 1 ) << 2 ) | flag;
+        return best;
+    }
+
+    /**
+     * Finds the symmetry giving the smallest base-3 code of a position.
+     */
+    private static int canonicalSymmetry( int me, int opponent ) {
+        int best = 0;
+        int bestCode = Integer.MAX_VALUE;
+        for( int s = 0; s < 8; s++ ) {
+            int code = TERNARY[s][me] + 2 * TERNARY[s][opponent];
+            if( code < bestCode ) {
+                bestCode = code;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+}
@@ -5,36 +5,58 @@ import android.os.Looper;
 
 import androidx.annotation.NonNull;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import socket.Request;
 
 /**
  * Global executor pools for the whole application.
  * It is normally used instead of explicitly creating threads for each of a set of tasks.
  * Using a singleton class ensures that we have only one instance of our executor object which is just beautiful, when you consider memory resources on android
+ * <p>
+ * Network tasks run on a {@link NetworkScheduler}: moves and other actions of the user have their own lane, so
+ * they never wait behind move polls and pairing refreshes. Each network lane queues at most
+ * {@link #NETWORK_QUEUE_CAPACITY} tasks and the disk pool {@link #DISK_QUEUE_CAPACITY}: when a queue is full,
+ * execute() throws a {@link RejectedExecutionException} instead of queueing without limit, and the rejection is
+ * counted. Threads are named after their pool, and the pools are registered with {@link Metrics}, which reports
+ * their active and queued tasks.
  *
  * @see <a href="https://github.com/android/architecture-components-samples/blob/main/BasicSample/app/src/main/java/com/example/android/persistence/AppExecutors.java">...</a>
  */
 public class AppExecutors {
 
+    private static final int INTERACTIVE_THREADS = 2;
+    private static final int BACKGROUND_THREADS = 2;
+    private static final int NETWORK_QUEUE_CAPACITY = 32;
+    private static final int DISK_QUEUE_CAPACITY = 64;
     private static final Object LOCK = new Object();
-    private static AppExecutors sInstance;
+    private static volatile AppExecutors sInstance; // Volatile, so that no thread sees a partly built instance
     private final Executor diskIO;
     private final Executor mainThread;
-    private final Executor networkIO;
+    private final NetworkScheduler network;
+    private final ScheduledExecutorService timer;
 
     /**
      * A private constructor that instantiate the class and set attributes
      * Can be accessed only the within the class (for singleton design pattern)
      *
      * @param diskIO Executor for disk I/O threads (e.g., save or read files, query local database)
-     * @param networkIO Executor for network I/O threads (e.g., communicate with the internet)
+     * @param network Executors for network I/O threads (e.g., communicate with the internet), one per priority
      * @param mainThread Executor for the main thread (e.g., change text on the user interface)
+     * @param timer Executor for delayed tasks (e.g., wait before the next poll), which should hand real work to another executor
      */
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+    private AppExecutors(Executor diskIO, NetworkScheduler network, Executor mainThread,
+                         ScheduledExecutorService timer) {
         this.diskIO = diskIO;
-        this.networkIO = networkIO;
+        this.network = network;
         this.mainThread = mainThread;
+        this.timer = timer;
     }
 
     /**
@@ -43,14 +65,26 @@ public class AppExecutors {
      * @return The singleton class instance
      */
     public static AppExecutors getInstance() {
-        if (sInstance == null) {
+        AppExecutors instance = sInstance;
+        if (instance == null) {
             synchronized (LOCK) {
-                sInstance = new AppExecutors(Executors.newSingleThreadExecutor(),
-                        Executors.newFixedThreadPool(3),
-                        new MainThreadExecutor());
+                instance = sInstance;
+                if (instance == null) {
+                    ThreadPoolExecutor diskIO = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(DISK_QUEUE_CAPACITY), new NamedThreadFactory("diskIO", false),
+                            new RejectionCounter("diskIO"));
+                    NetworkScheduler network = new NetworkScheduler(INTERACTIVE_THREADS, BACKGROUND_THREADS,
+                            NETWORK_QUEUE_CAPACITY, false);
+                    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                            new NamedThreadFactory("timer", false));
+                    Metrics.registerExecutor("diskIO", diskIO);
+                    Metrics.registerExecutor("timer", timer);
+                    instance = new AppExecutors(diskIO, network, new MainThreadExecutor(), timer);
+                    sInstance = instance;
+                }
             }
         }
-        return sInstance;
+        return instance;
     }
 
     /**
@@ -70,11 +104,45 @@ public class AppExecutors {
     }
 
     /**
-     * Getter for network thread executor
+     * Getter for the interactive network executor, for what the user is waiting for
      * @return network IO thread executor
      */
     public Executor networkIO() {
-        return networkIO;
+        return network.lane(NetworkScheduler.Lane.INTERACTIVE);
+    }
+
+    /**
+     * Getter for the network executor of a request, chosen by {@link NetworkScheduler#laneOf(Request.RequestType)}
+     * @param type The type of the request the task sends
+     * @return network IO thread executor of its lane
+     */
+    public Executor networkIO(Request.RequestType type) {
+        return network.forRequest(type);
+    }
+
+    /**
+     * Getter for the background network executor, for polls and other work that can wait
+     * @return network IO thread executor
+     */
+    public Executor backgroundIO() {
+        return network.lane(NetworkScheduler.Lane.BACKGROUND);
+    }
+
+    /**
+     * Getter for the timer executor
+     * @return scheduled executor for delayed tasks
+     */
+    public ScheduledExecutorService timer() {
+        return timer;
+    }
+
+    /**
+     * Number of tasks the network executors rejected because their queue was full.
+     *
+     * @return The rejections of both lanes since the app started.
+     */
+    public long getNetworkRejectedCount() {
+        return network.getRejectedCount();
     }
 
     /**
@@ -0,0 +1,65 @@
+package client;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of equally sized direct buffers. Direct buffers are expensive to allocate and are only freed
+ * by the garbage collector, so connections borrow them for writes and partial reads and give them back.
+ * Buffers beyond the bound are simply dropped on release.
+ */
+final class DirectBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     *
+     * @param bufferSize Capacity of every buffer, in bytes
+     * @param maxPooled Largest number of idle buffers kept
+     */
+    DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Getter function for {@link #bufferSize} attribute
+     * @return bufferSize
+     */
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Borrows a cleared buffer.
+     *
+     * @return A direct buffer of {@link #bufferSize} bytes.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(bufferSize);
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back. Buffers of another size (e.g. heap buffers for oversized frames) are ignored.
+     *
+     * @param buffer The buffer, which must not be used afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != bufferSize)
+            return;
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        free.offer(buffer);
+    }
+}
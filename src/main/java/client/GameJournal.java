@@ -0,0 +1,374 @@
+package client;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import model.Event;
+
+/**
+ * Append-only journal of the current game in a memory-mapped file, so that a game survives the death of the
+ * process: the game starting, every move played, how many of them the server confirmed, and the status changes of
+ * its {@link Event}. Records have a fixed
+ * size and are written on the given executor, e.g. {@link AppExecutors#diskIO()}, in the order they were recorded;
+ * a write is a store into the mapped pages, which the kernel keeps when the process dies. {@link #recover()} reads
+ * them back with no I/O beyond the mapping, in microseconds, before the connection is opened.
+ * <p>
+ * The file is a {@link #HEADER_SIZE}-byte header (magic number, epoch) followed by {@link #RECORD_SIZE}-byte records:
+ * type, a byte argument, two unused bytes, an int argument, the epoch and a checksum. Records are read up to the first
+ * one that is torn or from another epoch. Completing a game compacts the journal: the epoch is incremented, which
+ * drops every record, and the records of any game started since are written again from the start; the same happens
+ * when the file is full. A crash during compaction leaves a prefix of that game, an earlier position, which
+ * the server's move log brings up to date.
+ * Safe from any thread.
+ */
+public class GameJournal implements Closeable {
+    public static final int MAGIC = 0x5454544A; // "TTTJ"
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+    public static final int DEFAULT_CAPACITY = 256; // Records
+    public static final int MIN_CAPACITY = 16; // A compacted game takes at most 12 records: start, status, 9 moves, confirmed.
+
+    static final byte GAME_STARTED = 1; // Byte: the player of this client, int: the event id or 0.
+    static final byte MOVE = 2; // Byte: the cell, int: the sequence number of the move, the first being 1.
+    static final byte EVENT_STATUS = 3; // Byte: the status ordinal, int: the event id.
+    static final byte GAME_ENDED = 4;
+    static final byte CONFIRMED = 5; // Int: the number of moves the server confirmed.
+
+    private static final Event.EventStatus [] STATUSES = Event.EventStatus.values();
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final Executor executor;
+    private int epoch; // Guarded by this, like the fields below.
+    private int next; // Index of the next record.
+    private Game game; // The game with every record applied, or null.
+    private Game written; // The game the records in the file describe, or null; behind game while some are queued.
+
+    /**
+     * The state of a game rebuilt from the journal.
+     */
+    public static final class Game {
+        private final int player;
+        private int eventId;
+        private Event.EventStatus status;
+        private final List<Integer> moves = new ArrayList<>();
+        private int confirmed;
+
+        Game(int player, int eventId) {
+            this.player = player;
+            this.eventId = eventId;
+        }
+
+        /**
+         * Getter function for {@link #player} attribute
+         * @return player, 1 or 2
+         */
+        public int getPlayer() {
+            return player;
+        }
+
+        /**
+         * Getter function for {@link #eventId} attribute
+         * @return eventId, or 0 if unknown
+         */
+        public int getEventId() {
+            return eventId;
+        }
+
+        /**
+         * Getter function for {@link #status} attribute
+         * @return status, or null if none was recorded
+         */
+        public Event.EventStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * Getter function for {@link #moves} attribute
+         * @return moves, the cells from 0-8 in the order they were played
+         */
+        public List<Integer> getMoves() {
+            return Collections.unmodifiableList(moves);
+        }
+
+        /**
+         * Getter function for {@link #confirmed} attribute
+         * @return confirmed, the number of {@link #getMoves()} the server confirmed, the first ones
+         */
+        public int getConfirmed() {
+            return Math.min(confirmed, moves.size()); // Confirmed moves may be recorded before they are played
+        }
+
+        Game copy() {
+            Game copy = new Game(player, eventId);
+            copy.status = status;
+            copy.confirmed = confirmed;
+            copy.moves.addAll(moves);
+            return copy;
+        }
+    }
+
+    /**
+     * Opens or creates a journal and reads the records back.
+     *
+     * @param file The journal file, e.g. in {@code Context.getFilesDir()}.
+     * @param capacity Number of records the file holds before it is compacted, at least {@link #MIN_CAPACITY}.
+     * @param executor Executor the records are written on, single-threaded so that they stay in order.
+     * @throws IOException If the file can not be mapped.
+     */
+    public GameJournal(File file, int capacity, Executor executor) throws IOException {
+        if (capacity < MIN_CAPACITY)
+            throw new IllegalArgumentException("Capacity must be at least " + MIN_CAPACITY + ": " + capacity);
+        this.file = new RandomAccessFile(file, "rw");
+        this.capacity = capacity;
+        this.executor = executor;
+        try {
+            buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(4, 1); // Not 0, the epoch of the zeroed records of a new file
+            buffer.putInt(0, MAGIC);
+        }
+        epoch = buffer.getInt(4);
+        replay();
+        game = written == null ? null : written.copy();
+    }
+
+    /**
+     * Gets the game the journal holds, as rebuilt when it was opened and updated by the records since.
+     *
+     * @return A copy of the game, or null if no game is in progress.
+     */
+    public synchronized Game recover() {
+        return game == null ? null : game.copy();
+    }
+
+    /**
+     * Records the start of a game, which replaces any game in progress.
+     *
+     * @param player The player of this client, 1 or 2.
+     * @param eventId The id of the {@link Event} of the game, or 0 if unknown.
+     */
+    public void startGame(int player, int eventId) {
+        append(GAME_STARTED, player, eventId);
+    }
+
+    /**
+     * Records a move, of either player, in the order of the game.
+     *
+     * @param cell The cell from 0-8.
+     */
+    public void move(int cell) {
+        append(MOVE, cell, 0);
+    }
+
+    /**
+     * Records a change of the status of the game's {@link Event}.
+     *
+     * @param event The event, with its new status.
+     */
+    public void eventStatus(Event event) {
+        eventStatus(event.getEventId(), event.getStatus());
+    }
+
+    /**
+     * Records a change of the status of the game's {@link Event}.
+     *
+     * @param eventId The id of the event, or 0 if unknown.
+     * @param status The new status.
+     */
+    public void eventStatus(int eventId, Event.EventStatus status) {
+        append(EVENT_STATUS, status.ordinal(), eventId);
+    }
+
+    /**
+     * Records how many moves the server confirmed, e.g. {@link MoveLog#getConfirmed()}, so that they are not taken
+     * back with the local ones after a restart. Nothing is written if the count did not change.
+     *
+     * @param count The number of moves of the game, the first ones, that the server confirmed.
+     */
+    public void confirmed(int count) {
+        append(CONFIRMED, 0, count);
+    }
+
+    /**
+     * Records the end of the game, and compacts the journal.
+     */
+    public void endGame() {
+        append(GAME_ENDED, 0, 0);
+    }
+
+    /**
+     * Number of records in the file, for tests.
+     *
+     * @return The records written since the last compaction.
+     */
+    synchronized int getRecordCount() {
+        return next;
+    }
+
+    /**
+     * Closes the file; Java has no way to unmap it. Records written after are dropped, so close it on the executor
+     * to write the queued ones first.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Applies a record to {@link #game} right away, so that {@link #recover()} is current, and writes it on the
+     * executor, or on the calling thread if the executor is full. Invalid records, e.g. a move with no game, are
+     * ignored.
+     */
+    private void append(byte type, int small, int value) {
+        synchronized (this) {
+            if (!isValid(game, type, small, value) || (type == CONFIRMED && game.confirmed == value))
+                return;
+            game = apply(game, type, small, value);
+            if (type == MOVE)
+                value = game.moves.size();
+        }
+        int argument = value;
+        Runnable write = () -> write(type, small, argument);
+        try {
+            executor.execute(write);
+        } catch (RejectedExecutionException e) {
+            write.run(); // A store into mapped memory; cheap enough for any thread
+        }
+    }
+
+    private synchronized void write(byte type, int small, int value) {
+        if (!file.getChannel().isOpen())
+            return;
+        written = apply(written, type, small, value);
+        if (type == GAME_ENDED || next == capacity) {
+            compact();
+        } else {
+            put(type, small, value);
+        }
+    }
+
+    private void put(byte type, int small, int value) {
+        int offset = HEADER_SIZE + next * RECORD_SIZE;
+        buffer.putInt(offset + 4, value);
+        buffer.putInt(offset + 8, epoch);
+        buffer.putInt(offset + 12, checksum(type, small, value, epoch));
+        buffer.put(offset + 1, (byte) small);
+        buffer.put(offset + 2, (byte) 0);
+        buffer.put(offset + 3, (byte) 0);
+        buffer.put(offset, type);
+        next++;
+    }
+
+    /**
+     * Starts a new epoch, which drops every record, then writes the records of {@link #written} again from the
+     * start: at most {@link #MIN_CAPACITY} - 1 of them, so there is room for the next.
+     */
+    private void compact() {
+        epoch++;
+        buffer.putInt(4, epoch);
+        next = 0;
+        if (written == null)
+            return;
+        put(GAME_STARTED, written.player, written.eventId);
+        if (written.status != null)
+            put(EVENT_STATUS, written.status.ordinal(), written.eventId);
+        for (int i = 0; i < written.moves.size(); i++)
+            put(MOVE, written.moves.get(i), i + 1);
+        if (written.confirmed > 0)
+            put(CONFIRMED, 0, written.confirmed);
+    }
+
+    /**
+     * Rebuilds {@link #written} from the records of the current epoch.
+     */
+    private void replay() {
+        for (next = 0; next < capacity; next++) {
+            int offset = HEADER_SIZE + next * RECORD_SIZE;
+            byte type = buffer.get(offset);
+            int small = buffer.get(offset + 1);
+            int value = buffer.getInt(offset + 4);
+            if (buffer.getInt(offset + 8) != epoch || buffer.getInt(offset + 12) != checksum(type, small, value, epoch))
+                break;
+            if (!isValid(written, type, small, value))
+                break;
+            if (type == MOVE && value != written.moves.size() + 1)
+                break; // Out of order, so not a record of this game
+            written = apply(written, type, small, value);
+        }
+        if (next < capacity && buffer.getInt(HEADER_SIZE + next * RECORD_SIZE + 8) == epoch)
+            compact(); // Records after a torn one would be read back once it is overwritten
+    }
+
+    /**
+     * Checks whether a record can follow a game.
+     *
+     * @param game The game so far, or null.
+     */
+    private static boolean isValid(Game game, byte type, int small, int value) {
+        switch (type) {
+            case GAME_STARTED:
+                return small == 1 || small == 2;
+            case MOVE:
+                return game != null && small >= 0 && small < 9 && game.moves.size() < 9;
+            case EVENT_STATUS:
+                return game != null && small >= 0 && small < STATUSES.length;
+            case GAME_ENDED:
+                return true;
+            case CONFIRMED:
+                return game != null && value >= 0 && value <= 9;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Applies a valid record to a game.
+     *
+     * @param game The game so far, or null.
+     * @return The game after the record, or null if it ended.
+     */
+    private static Game apply(Game game, byte type, int small, int value) {
+        switch (type) {
+            case GAME_STARTED:
+                return new Game(small, value);
+            case MOVE:
+                game.moves.add(small);
+                return game;
+            case EVENT_STATUS:
+                game.status = STATUSES[small];
+                game.eventId = value;
+                return game;
+            case CONFIRMED:
+                game.confirmed = value;
+                return game;
+            default:
+                return null;
+        }
+    }
+
+    private static int checksum(byte type, int small, int value, int epoch) {
+        int hash = epoch * 0x9E3779B1;
+        hash = (hash ^ type) * 0x85EBCA6B;
+        hash = (hash ^ small) * 0xC2B2AE35;
+        hash = (hash ^ value) * 0x9E3779B1;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,156 @@
+package client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import socket.Request;
+
+/**
+ * {@link MetricsRegistry} that keeps everything in memory, for tests, benchmarks and debug dumps: a
+ * {@link LatencyHistogram} per request type and one of connection lifetimes, and counters. Recording never locks.
+ * {@link #snapshot()} reads it all as flat named values, e.g. "latency.REQUEST_MOVE.p99_us" or
+ * "executor.networkIO.queued".
+ */
+public class InMemoryMetrics implements MetricsRegistry {
+    private final Map<Request.RequestType, LatencyHistogram> latencies = new EnumMap<>(Request.RequestType.class);
+    private final Map<Request.RequestType, AtomicLong> failures = new EnumMap<>(Request.RequestType.class);
+    private final LatencyHistogram connectionLifetimes = new LatencyHistogram();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final Map<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
+    public InMemoryMetrics() {
+        // Filled up front, so that recording only reads the maps
+        for (Request.RequestType type : Request.RequestType.values()) {
+            latencies.put(type, new LatencyHistogram());
+            failures.put(type, new AtomicLong());
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordLatency(Request.RequestType type, long nanos) {
+        if (type != null)
+            latencies.get(type).record(nanos);
+    }
+
+    @Override
+    public void recordFailure(Request.RequestType type) {
+        if (type != null)
+            failures.get(type).incrementAndGet();
+    }
+
+    @Override
+    public void recordBytesOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    @Override
+    public void recordBytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    @Override
+    public void connectionOpened() {
+        connectionsOpened.incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed(long lifetimeNanos) {
+        connectionLifetimes.record(lifetimeNanos);
+    }
+
+    @Override
+    public void reconnected() {
+        reconnects.incrementAndGet();
+    }
+
+    @Override
+    public void registerExecutor(String name, ThreadPoolExecutor executor) {
+        executors.put(name, executor);
+    }
+
+    /**
+     * Gets the latency histogram of a request type.
+     *
+     * @param type The request type.
+     * @return The live histogram.
+     */
+    public LatencyHistogram getLatency(Request.RequestType type) {
+        return latencies.get(type);
+    }
+
+    /**
+     * Reads every metric. Latencies are in microseconds, and only request types that were sent are included.
+     *
+     * @return The values by name, sorted by name.
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Request.RequestType type : Request.RequestType.values()) {
+            LatencyHistogram histogram = latencies.get(type);
+            long failed = failures.get(type).get();
+            if (histogram.getCount() == 0 && failed == 0)
+                continue;
+            String prefix = "latency." + type + ".";
+            values.put(prefix + "count", histogram.getCount());
+            values.put(prefix + "failures", failed);
+            values.put(prefix + "p50_us", TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(50)));
+            values.put(prefix + "p99_us", TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(99)));
+            values.put(prefix + "max_us", TimeUnit.NANOSECONDS.toMicros(histogram.getMax()));
+        }
+        values.put("bytes.out", bytesOut.get());
+        values.put("bytes.in", bytesIn.get());
+        values.put("connections.opened", connectionsOpened.get());
+        values.put("connections.closed", connectionLifetimes.getCount());
+        values.put("connections.reconnects", reconnects.get());
+        values.put("connections.lifetime_p50_ms", TimeUnit.NANOSECONDS.toMillis(connectionLifetimes.getPercentile(50)));
+        values.put("connections.lifetime_max_ms", TimeUnit.NANOSECONDS.toMillis(connectionLifetimes.getMax()));
+        for (Map.Entry<String, ThreadPoolExecutor> executor : executors.entrySet()) {
+            String prefix = "executor." + executor.getKey() + ".";
+            values.put(prefix + "active", (long) executor.getValue().getActiveCount());
+            values.put(prefix + "queued", (long) executor.getValue().getQueue().size());
+            values.put(prefix + "completed", executor.getValue().getCompletedTaskCount());
+        }
+        return values;
+    }
+
+    /**
+     * Formats {@link #snapshot()} as one "name=value" line per metric, e.g. for a log.
+     *
+     * @return The dump.
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (Map.Entry<String, Long> value : snapshot().entrySet())
+            dump.append(value.getKey()).append('=').append(value.getValue()).append('\n');
+        return dump.toString();
+    }
+
+    /**
+     * Clears the latencies and counters; executors stay registered.
+     */
+    public void reset() {
+        for (Request.RequestType type : Request.RequestType.values()) {
+            latencies.get(type).reset();
+            failures.get(type).set(0);
+        }
+        connectionLifetimes.reset();
+        bytesOut.set(0);
+        bytesIn.set(0);
+        connectionsOpened.set(0);
+        reconnects.set(0);
+    }
+}
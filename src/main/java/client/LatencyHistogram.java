@@ -0,0 +1,141 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, for percentiles such as p50, p99 and p99.9.
+ * Values are counted in log-linear buckets: every power of two is split into 32 buckets, so a percentile
+ * is within about 3% of the recorded value. Recording never allocates and can be done from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; // Buckets per power of two.
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos The duration in nanoseconds; negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long previous;
+        while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {
+            // Retry until the maximum is at least value.
+        }
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     *
+     * @param startNanos The reading taken when the operation started.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return The maximum in nanoseconds, 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return The mean in nanoseconds, 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Gets a percentile of the recorded values.
+     *
+     * @param percentile The percentile, from 0 to 100 (e.g. 99.9).
+     * @return The upper bound of the bucket holding the percentile, capped at the maximum, in nanoseconds;
+     * 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long [] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Formats count, mean, p50, p99, p99.9 and max in a unit, e.g. for a report line.
+     *
+     * @param unit The unit of the durations.
+     * @return The summary.
+     */
+    public String summary(TimeUnit unit) {
+        double scale = unit.toNanos(1);
+        return String.format("count=%d mean=%.3f p50=%.3f p99=%.3f p999=%.3f max=%.3f", getCount(),
+                getMean() / scale, getPercentile(50) / scale, getPercentile(99) / scale,
+                getPercentile(99.9) / scale, getMax() / scale);
+    }
+
+    /**
+     * Clears every recorded value. Values recorded concurrently may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // At least SUB_BITS.
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)); // From SUB_BUCKETS to 2 * SUB_BUCKETS - 1.
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return mantissa * width + width - 1;
+    }
+}
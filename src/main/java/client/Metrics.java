@@ -0,0 +1,46 @@
+package client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Holder of the {@link MetricsRegistry} the client reports to, {@link MetricsRegistry#NOOP} until one is set.
+ * Executors are registered here once; a registry set later receives them all.
+ */
+public final class Metrics {
+    private static volatile MetricsRegistry registry = MetricsRegistry.NOOP;
+    private static final Map<String, ThreadPoolExecutor> EXECUTORS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Getter function for {@link #registry} attribute
+     * @return registry
+     */
+    public static MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Setter function for {@link #registry} attribute
+     * @param registry The registry to report to, or null to stop recording
+     */
+    public static synchronized void setRegistry(MetricsRegistry registry) {
+        Metrics.registry = registry == null ? MetricsRegistry.NOOP : registry;
+        for (Map.Entry<String, ThreadPoolExecutor> executor : EXECUTORS.entrySet())
+            Metrics.registry.registerExecutor(executor.getKey(), executor.getValue());
+    }
+
+    /**
+     * Registers an executor with the current registry and the ones set later.
+     *
+     * @param name The name of the executor.
+     * @param executor The executor.
+     */
+    public static synchronized void registerExecutor(String name, ThreadPoolExecutor executor) {
+        EXECUTORS.put(name, executor);
+        registry.registerExecutor(name, executor);
+    }
+}
@@ -0,0 +1,116 @@
+package client;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import socket.Request;
+
+/**
+ * Receiver of the client metrics: request latencies per type, bytes on the wire, connection lifetimes and the load
+ * of the executors. Implementations are called from the network threads and must be fast and thread-safe.
+ * {@link #NOOP}, the default of {@link Metrics}, ignores everything, and callers skip the clock reads it would need
+ * when {@link #isEnabled()} is false.
+ */
+public interface MetricsRegistry {
+    /**
+     * Registry that records nothing.
+     */
+    MetricsRegistry NOOP = new MetricsRegistry() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordLatency(Request.RequestType type, long nanos) {
+        }
+
+        @Override
+        public void recordFailure(Request.RequestType type) {
+        }
+
+        @Override
+        public void recordBytesOut(long bytes) {
+        }
+
+        @Override
+        public void recordBytesIn(long bytes) {
+        }
+
+        @Override
+        public void connectionOpened() {
+        }
+
+        @Override
+        public void connectionClosed(long lifetimeNanos) {
+        }
+
+        @Override
+        public void reconnected() {
+        }
+
+        @Override
+        public void registerExecutor(String name, ThreadPoolExecutor executor) {
+        }
+    };
+
+    /**
+     * Checks whether anything is recorded.
+     *
+     * @return false if every call is ignored, so that callers can skip measuring.
+     */
+    boolean isEnabled();
+
+    /**
+     * Records the time from sending a request to receiving its response.
+     *
+     * @param type The type of the request, or null.
+     * @param nanos The latency in nanoseconds.
+     */
+    void recordLatency(Request.RequestType type, long nanos);
+
+    /**
+     * Records a request that got no response: a timeout, a broken connection or a cancellation.
+     *
+     * @param type The type of the request, or null.
+     */
+    void recordFailure(Request.RequestType type);
+
+    /**
+     * Records bytes written to a socket.
+     *
+     * @param bytes The number of bytes, frame headers included.
+     */
+    void recordBytesOut(long bytes);
+
+    /**
+     * Records bytes read from a socket.
+     *
+     * @param bytes The number of bytes, frame headers included.
+     */
+    void recordBytesIn(long bytes);
+
+    /**
+     * Records a connection that was opened, including the format negotiation and session restore.
+     */
+    void connectionOpened();
+
+    /**
+     * Records a connection that was closed or broke.
+     *
+     * @param lifetimeNanos How long it was open.
+     */
+    void connectionClosed(long lifetimeNanos);
+
+    /**
+     * Records a connection opened again after breaking, in addition to {@link #connectionOpened()}.
+     */
+    void reconnected();
+
+    /**
+     * Adds an executor whose active and queued tasks are read when the metrics are read.
+     *
+     * @param name The name of the executor, e.g. "networkIO".
+     * @param executor The executor.
+     */
+    void registerExecutor(String name, ThreadPoolExecutor executor);
+}
@@ -0,0 +1,23 @@
+package client;
+
+import socket.GamingResponse;
+
+/**
+ * Receives the opponent's moves that the server pushes after {@link SocketClient#subscribeMoves()}.
+ * Methods are called on the socket reader thread, so implementations should hand the work to another executor.
+ */
+public interface MoveListener {
+
+    /**
+     * Called when the server pushes a move.
+     *
+     * @param response The pushed response, with the move from 0-8
+     */
+    void onMove(GamingResponse response);
+
+    /**
+     * Called when the connection breaks, after which no more moves will be pushed.
+     */
+    default void onConnectionLost() {
+    }
+}
@@ -0,0 +1,144 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import socket.GamingResponse;
+import socket.Request;
+import socket.Response;
+
+/**
+ * The moves of the current game as the client knows them, kept in step with the move log of the server: each
+ * {@link Request.RequestType#REQUEST_MOVE} carries the number of moves the server confirmed, and the answer holds
+ * every move since, so missed polls and reconnects are caught up in one round trip. The moves of the user are added
+ * as soon as they are played on the board, then confirmed when the log of the server has them at the same place;
+ * a log that disagrees, e.g. because a move was rejected, wins, and the board is rebuilt from it.
+ * Servers without move logs answer with the last move only, which is appended as before.
+ * Safe from any thread.
+ */
+public class MoveLog {
+    private final List<Integer> moves = new ArrayList<>(); // Confirmed ones first, then the local ones sent since.
+    private int confirmed; // Moves confirmed by the server.
+    private boolean behind; // A pushed move showed that earlier moves were missed.
+
+    /**
+     * Creates the next poll.
+     *
+     * @return A REQUEST_MOVE request for the moves after the confirmed ones.
+     */
+    public synchronized Request newRequest() {
+        return Request.of(Request.RequestType.REQUEST_MOVE, confirmed);
+    }
+
+    /**
+     * Records a move of the user, played on the board before the server confirmed it.
+     *
+     * @param move The cell, from 0-8.
+     */
+    public synchronized void addLocal(int move) {
+        moves.add(move);
+    }
+
+    /**
+     * Forgets the moves of the user that the server did not confirm, e.g. because sending one failed.
+     *
+     * @return true if some were dropped, in which case the board must be rebuilt from {@link #getMoves()}.
+     */
+    public synchronized boolean discardLocal() {
+        if (moves.size() == confirmed)
+            return false;
+        moves.subList(confirmed, moves.size()).clear();
+        return true;
+    }
+
+    /**
+     * Applies a polled or pushed move response.
+     *
+     * @param response The response, ignored if null or not a SUCCESS.
+     * @return The moves to play on the board, oldest first, or null if the board no longer matches the log and must
+     * be rebuilt from {@link #getMoves()}.
+     */
+    public synchronized List<Integer> apply(GamingResponse response) {
+        if (response == null || response.getStatus() != Response.ResponseStatus.SUCCESS)
+            return Collections.emptyList();
+        List<Integer> log = response.getMoves();
+        if (log == null) {
+            if (response.getMove() < 0)
+                return Collections.emptyList();
+            moves.add(response.getMove()); // The opponent's, so ours before it were accepted
+            confirmed = moves.size();
+            return Collections.singletonList(response.getMove());
+        }
+        int first = response.getSequence() - log.size(); // Moves before the first of the log.
+        if (first > confirmed) {
+            behind = true; // Applied once the missed moves are polled
+            return Collections.emptyList();
+        }
+        behind = false;
+        List<Integer> added = new ArrayList<>();
+        boolean diverged = false;
+        for (int i = confirmed - first; i < log.size(); i++) {
+            int index = first + i;
+            int move = log.get(i);
+            if (index < moves.size()) {
+                if (moves.get(index) == move)
+                    continue; // A local move, now confirmed
+                moves.subList(index, moves.size()).clear();
+                diverged = true;
+            }
+            moves.add(move);
+            added.add(move);
+        }
+        confirmed = Math.max(confirmed, response.getSequence());
+        return diverged ? null : added;
+    }
+
+    /**
+     * Replaces the moves with those of a game resumed after a restart, e.g. from the {@link GameJournal}.
+     *
+     * @param moves Every move of the game, oldest first.
+     * @param confirmed The number of moves, the first ones, that the server had confirmed; the others are local.
+     */
+    public synchronized void restore(List<Integer> moves, int confirmed) {
+        this.moves.clear();
+        this.moves.addAll(moves);
+        this.confirmed = Math.min(confirmed, moves.size());
+        behind = false;
+    }
+
+    /**
+     * Forgets every move, for a new game.
+     */
+    public synchronized void clear() {
+        moves.clear();
+        confirmed = 0;
+        behind = false;
+    }
+
+    /**
+     * Checks whether moves were missed, so that a poll should be sent even if the server pushes moves.
+     *
+     * @return true if a pushed move came after moves that were not received.
+     */
+    public synchronized boolean isBehind() {
+        return behind;
+    }
+
+    /**
+     * Getter function for {@link #confirmed} attribute
+     * @return confirmed
+     */
+    public synchronized int getConfirmed() {
+        return confirmed;
+    }
+
+    /**
+     * Every move of the game, confirmed or not.
+     *
+     * @return A copy of the moves, oldest first.
+     */
+    public synchronized List<Integer> getMoves() {
+        return new ArrayList<>(moves);
+    }
+}
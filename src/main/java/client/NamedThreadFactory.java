@@ -0,0 +1,30 @@
+package client;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates threads named after their pool, e.g. "network-interactive-2", so that they can be told apart in traces.
+ */
+class NamedThreadFactory implements ThreadFactory {
+    private final String name;
+    private final boolean daemon;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     *
+     * @param name Prefix of the thread names
+     * @param daemon Whether the threads let the JVM exit, for headless tools
+     */
+    NamedThreadFactory(String name, boolean daemon) {
+        this.name = name;
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+        thread.setDaemon(daemon);
+        return thread;
+    }
+}
@@ -0,0 +1,104 @@
+package client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import socket.Request;
+
+/**
+ * Network executor with two lanes, so that what the user is waiting for is not queued behind background refreshes:
+ * the {@link Lane#INTERACTIVE} lane runs moves, answers to invitations and everything the user started, and the
+ * {@link Lane#BACKGROUND} lane runs the polls. Each lane has its own named threads and bounded queue, so a pile of
+ * polls can only delay other polls; a full lane rejects new tasks with a counted
+ * {@link java.util.concurrent.RejectedExecutionException}. Both pools are registered with {@link Metrics}.
+ */
+public class NetworkScheduler {
+    /**
+     * Priority class of a network task
+     */
+    public enum Lane {
+        /**
+         * Tasks the user is waiting for
+         */
+        INTERACTIVE,
+
+        /**
+         * Refreshes that are repeated anyway, such as polls
+         */
+        BACKGROUND
+    }
+
+    private final ThreadPoolExecutor interactive;
+    private final ThreadPoolExecutor background;
+    private final RejectionCounter interactiveRejections = new RejectionCounter("network-interactive");
+    private final RejectionCounter backgroundRejections = new RejectionCounter("network-background");
+
+    /**
+     *
+     * @param interactiveThreads Threads of the interactive lane
+     * @param backgroundThreads Threads of the background lane
+     * @param queueCapacity Tasks each lane queues before rejecting
+     * @param daemon Whether the threads let the JVM exit, for headless tools and tests
+     */
+    public NetworkScheduler(int interactiveThreads, int backgroundThreads, int queueCapacity, boolean daemon) {
+        interactive = new ThreadPoolExecutor(interactiveThreads, interactiveThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("network-interactive", daemon),
+                interactiveRejections);
+        background = new ThreadPoolExecutor(backgroundThreads, backgroundThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("network-background", daemon),
+                backgroundRejections);
+        Metrics.registerExecutor("networkInteractive", interactive);
+        Metrics.registerExecutor("networkBackground", background);
+    }
+
+    /**
+     * Chooses the lane of a request: polls are background work, everything else is interactive.
+     *
+     * @param type The type of the request the task sends.
+     * @return The lane.
+     */
+    public static Lane laneOf(Request.RequestType type) {
+        if (type == Request.RequestType.REQUEST_MOVE || type == Request.RequestType.UPDATE_PAIRING)
+            return Lane.BACKGROUND;
+        return Lane.INTERACTIVE;
+    }
+
+    /**
+     * Gets the executor of a lane.
+     *
+     * @param lane The lane.
+     * @return The executor.
+     */
+    public Executor lane(Lane lane) {
+        return lane == Lane.BACKGROUND ? background : interactive;
+    }
+
+    /**
+     * Gets the executor for the task that sends a request.
+     *
+     * @param type The type of the request.
+     * @return The executor of its lane.
+     */
+    public Executor forRequest(Request.RequestType type) {
+        return lane(laneOf(type));
+    }
+
+    /**
+     * Number of tasks rejected because their lane was full.
+     *
+     * @return The rejections of both lanes.
+     */
+    public long getRejectedCount() {
+        return interactiveRejections.getCount() + backgroundRejections.getCount();
+    }
+
+    /**
+     * Stops both lanes after the queued tasks, e.g. at the end of a test.
+     */
+    public void shutdown() {
+        interactive.shutdown();
+        background.shutdown();
+    }
+}
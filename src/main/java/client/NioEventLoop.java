@@ -0,0 +1,163 @@
+package client;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One I/O thread serving many {@link NioSocketClient} connections through a {@link Selector}, for headless bots
+ * and load tests that run hundreds of sessions in one JVM. The app itself keeps the blocking {@link SocketClient}.
+ * Connections share a pool of direct buffers for their writes and partial reads, and one read buffer owned by
+ * the I/O thread.
+ */
+public class NioEventLoop implements Closeable {
+    static final int BUFFER_SIZE = 64 * 1024; // Holds any JSON frame except the largest writeUTF allows.
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final DirectBufferPool pool;
+    private final ByteBuffer readBuffer; // I/O thread only.
+    private volatile boolean closed;
+
+    /**
+     * Starts an event loop that keeps up to 256 idle buffers.
+     *
+     * @throws IOException If the selector can not be opened.
+     */
+    public NioEventLoop() throws IOException {
+        this(256);
+    }
+
+    /**
+     * Starts an event loop.
+     *
+     * @param maxPooledBuffers Largest number of idle {@link #BUFFER_SIZE} direct buffers kept for reuse
+     * @throws IOException If the selector can not be opened.
+     */
+    public NioEventLoop(int maxPooledBuffers) throws IOException {
+        selector = Selector.open();
+        pool = new DirectBufferPool(BUFFER_SIZE, maxPooledBuffers);
+        readBuffer = pool.acquire();
+        thread = new Thread(this::run, "NioEventLoop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Opens a JSON connection.
+     *
+     * @param host The server address.
+     * @param port The server port.
+     * @return A future completed with the connected client, or exceptionally if the connection fails.
+     */
+    public CompletableFuture<NioSocketClient> connect(String host, int port) {
+        return connect(host, port, false);
+    }
+
+    /**
+     * Opens a connection, optionally negotiating the binary wire format.
+     *
+     * @param host The server address.
+     * @param port The server port.
+     * @param preferBinary Whether to ask the server for the {@link socket.BinaryCodec} format, or else JSON with inline
+     *                     payloads; JSON with payloads as strings is kept if it refuses both.
+     * @return A future completed with the connected client once the format is settled, or exceptionally if the
+     * connection fails.
+     */
+    public CompletableFuture<NioSocketClient> connect(String host, int port, boolean preferBinary) {
+        CompletableFuture<NioSocketClient> connected = new CompletableFuture<>();
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            NioSocketClient client = new NioSocketClient(this, channel, preferBinary, connected);
+            boolean immediate = channel.connect(new InetSocketAddress(host, port));
+            execute(() -> client.register(selector, immediate));
+        } catch (IOException e) {
+            connected.completeExceptionally(e);
+        }
+        return connected;
+    }
+
+    /**
+     * Getter function for {@link #pool} attribute
+     * @return pool
+     */
+    DirectBufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Runs a task on the I/O thread, or on the calling thread once the loop is closed.
+     *
+     * @param task The task.
+     */
+    void execute(Runnable task) {
+        if (closed && !thread.isAlive()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the I/O thread and fails every connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    ((NioSocketClient) key.attachment()).handle(key, readBuffer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e("NioEventLoop", "Event loop failed", e);
+        }
+        closed = true;
+        runTasks();
+        IOException closedError = new IOException("Event loop closed");
+        for (SelectionKey key : selector.keys())
+            ((NioSocketClient) key.attachment()).fail(closedError);
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e("NioEventLoop", "Task failed", e);
+            }
+        }
+    }
+}
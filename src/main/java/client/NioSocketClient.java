@@ -0,0 +1,393 @@
+package client;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.google.gson.Gson;
+
+import socket.BinaryCodec;
+import socket.Frames;
+import socket.JsonCodecs;
+import socket.Request;
+import socket.Response;
+
+/**
+ * Non-blocking counterpart of {@link SocketClient}: the same frames (writeUTF JSON, or {@link BinaryCodec} after
+ * negotiation), correlation ids and pushed moves, over a {@link SocketChannel} driven by a {@link NioEventLoop}.
+ * Waiting for a response does not hold a thread. Requests are encoded by the calling thread straight into pooled
+ * direct buffers and written immediately when the socket accepts them; what does not fit is written by the I/O
+ * thread. Responses are parsed incrementally from whatever bytes have arrived, so a frame split across reads
+ * only costs a copy of its first part.
+ * Instances are created with {@link NioEventLoop#connect(String, int, boolean)}.
+ */
+public class NioSocketClient implements Closeable {
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final DirectBufferPool pool;
+    private final boolean preferBinary;
+    private final CompletableFuture<NioSocketClient> connected;
+    private final Gson gson = JsonCodecs.gson();
+    private final ResponseRouter router = new ResponseRouter();
+
+    private final Object writeLock = new Object(); // Guards the fields below and the registration order in router.
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>(); // Flipped buffers waiting for the channel.
+    private ByteBuffer tail; // Buffer being filled, in write mode.
+    private boolean writeInterest; // OP_WRITE was requested because the socket was full.
+    private boolean closed;
+
+    private SelectionKey key; // I/O thread only, like the fields below.
+    private ByteBuffer inbound; // Start of a frame that has not fully arrived, in write mode.
+    private boolean negotiating; // The NEGOTIATE_FORMAT response is the next frame.
+    private volatile boolean binary; // Frames use BinaryCodec; changed before the connection is handed out.
+    private volatile Gson requestGson = gson; // Writes the JSON requests; changed like binary.
+    private final Frames.Handler frames = new Frames.Handler() {
+        @Override
+        public boolean isBinary() {
+            return binary;
+        }
+
+        @Override
+        public void onJson(String json) {
+            if (negotiating) {
+                onNegotiated(json);
+            } else {
+                router.dispatchJson(json);
+            }
+        }
+
+        @Override
+        public void onBinary(byte [] payload) throws IOException {
+            router.dispatchBinary(payload);
+        }
+    };
+
+    NioSocketClient(NioEventLoop loop, SocketChannel channel, boolean preferBinary,
+                    CompletableFuture<NioSocketClient> connected) {
+        this.loop = loop;
+        this.channel = channel;
+        this.pool = loop.getPool();
+        this.preferBinary = preferBinary;
+        this.connected = connected;
+    }
+
+    /**
+     * Checks whether the connection uses the binary format.
+     *
+     * @return true after a successful {@link Request.RequestType#NEGOTIATE_FORMAT} exchange.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Sends a request without waiting for the response.
+     * The request is given a new correlation id, so the same object must not be sent again before its future completes.
+     *
+     * @param request       The request object to send to the server.
+     * @param responseClass The class representing the expected response.
+     * @param <T>           The type of the expected response.
+     * @return A future completed with the response, or completed exceptionally with the IOException that broke the connection.
+     */
+    public <T> CompletableFuture<T> send(Request request, Class<T> responseClass) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        int id = router.nextId();
+        request.setId(id);
+        byte [] binaryRequest = binary ? BinaryCodec.encode(request) : null;
+        String jsonRequest = binary ? null : requestGson.toJson(request);
+        int jsonLength = binary ? 0 : Frames.utfLength(jsonRequest);
+        if (jsonLength > Frames.MAX_JSON) {
+            future.completeExceptionally(new UTFDataFormatException("Request too long: " + jsonLength + " bytes"));
+            return future;
+        }
+        synchronized (writeLock) {
+            if (closed) {
+                future.completeExceptionally(new IOException("Not connected"));
+                return future;
+            }
+            router.register(id, future, responseClass);
+            if (binary) {
+                appendBinary(binaryRequest);
+            } else {
+                appendJson(jsonRequest, jsonLength);
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                loop.execute(() -> fail(e));
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Sends a request and waits for the response, for callers that have a thread to spare.
+     *
+     * @param request       The request object to send to the server.
+     * @param responseClass The class representing the expected response.
+     * @param <T>           The type of the expected response.
+     * @return The response object received from the server, or null in case of errors.
+     */
+    public <T> T sendRequest(Request request, Class<T> responseClass) {
+        try {
+            return send(request, responseClass).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets the listener for moves pushed by the server. It is called on the I/O thread and must not block.
+     *
+     * @param moveListener The listener, or null to ignore pushed moves.
+     */
+    public void setMoveListener(MoveListener moveListener) {
+        router.setMoveListener(moveListener);
+    }
+
+    /**
+     * Asks the server to push the opponent's moves of the current game to the {@link MoveListener}.
+     *
+     * @return A future completed with true if the server will push moves, false if the client must keep polling.
+     */
+    public CompletableFuture<Boolean> subscribeMoves() {
+        return send(new Request(Request.RequestType.SUBSCRIBE_MOVES, null), Response.class)
+                .handle((response, error) -> response != null && response.getStatus() == Response.ResponseStatus.SUCCESS);
+    }
+
+    /**
+     * Closes the connection and fails every outstanding request.
+     */
+    @Override
+    public void close() {
+        loop.execute(() -> fail(new ClosedChannelException()));
+    }
+
+    /**
+     * Registers the channel with the selector of the I/O thread.
+     *
+     * @param selector The selector of the event loop.
+     * @param isConnected Whether the connection was established immediately.
+     */
+    void register(Selector selector, boolean isConnected) {
+        try {
+            key = channel.register(selector, isConnected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            if (isConnected)
+                onConnected();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Handles the ready operations of the channel, on the I/O thread.
+     *
+     * @param key The selected key of the channel.
+     * @param readBuffer The read buffer of the I/O thread, free to use.
+     */
+    void handle(SelectionKey key, ByteBuffer readBuffer) {
+        try {
+            if (key.isConnectable() && channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                onConnected();
+            }
+            if (key.isValid() && key.isWritable())
+                onWritable();
+            if (key.isValid() && key.isReadable())
+                onReadable(readBuffer);
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Closes the channel and fails every outstanding request, on the I/O thread.
+     *
+     * @param e The error that broke the connection.
+     */
+    void fail(IOException e) {
+        synchronized (writeLock) {
+            if (closed)
+                return;
+            closed = true;
+            for (ByteBuffer buffer : outbound)
+                pool.release(buffer);
+            outbound.clear();
+            if (tail != null)
+                pool.release(tail);
+            tail = null;
+        }
+        if (inbound != null)
+            pool.release(inbound);
+        inbound = null;
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException closeError) {
+            System.err.println(closeError.getMessage());
+        }
+        connected.completeExceptionally(e);
+        router.failAll(e);
+    }
+
+    private void onConnected() throws IOException {
+        if (!preferBinary) {
+            connected.complete(this);
+            return;
+        }
+        negotiating = true;
+        Request request = new Request(Request.RequestType.NEGOTIATE_FORMAT, JsonCodecs.OFFERED_FORMATS);
+        request.setId(router.nextId());
+        String json = gson.toJson(request);
+        synchronized (writeLock) {
+            appendJson(json, Frames.utfLength(json));
+            flush();
+        }
+    }
+
+    private void onNegotiated(String json) {
+        negotiating = false;
+        Response response = gson.fromJson(json, Response.class);
+        String format = JsonCodecs.negotiatedFormat(response);
+        binary = BinaryCodec.FORMAT.equals(format);
+        requestGson = JsonCodecs.gson(format);
+        connected.complete(this);
+    }
+
+    private void onWritable() throws IOException {
+        synchronized (writeLock) {
+            flush();
+            if (outbound.isEmpty()) {
+                writeInterest = false;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void onReadable(ByteBuffer readBuffer) throws IOException {
+        ByteBuffer buffer = inbound;
+        if (buffer == null) {
+            buffer = readBuffer;
+            buffer.clear();
+        }
+        if (channel.read(buffer) < 0)
+            throw new EOFException("Connection closed by the server");
+        buffer.flip();
+        int needed = Frames.parse(buffer, frames);
+        if (!buffer.hasRemaining()) {
+            if (inbound != null)
+                pool.release(inbound);
+            inbound = null;
+            return;
+        }
+        if (buffer == inbound && inbound.capacity() >= needed) {
+            inbound.compact();
+            return;
+        }
+        // Keep the start of the frame in a buffer of its own, large enough for the whole frame.
+        ByteBuffer next = needed <= pool.getBufferSize() ? pool.acquire() : ByteBuffer.allocate(needed);
+        next.put(buffer);
+        if (inbound != null)
+            pool.release(inbound);
+        inbound = next;
+    }
+
+    /**
+     * Writes the queued frames until the socket is full, then leaves the rest to the I/O thread. Holds writeLock.
+     */
+    private void flush() throws IOException {
+        if (tail != null && tail.position() > 0) {
+            tail.flip();
+            outbound.add(tail);
+            tail = null;
+        }
+        while (!outbound.isEmpty()) {
+            ByteBuffer buffer = outbound.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                if (!writeInterest) {
+                    writeInterest = true;
+                    loop.execute(() -> {
+                        if (key != null && key.isValid())
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    });
+                }
+                return;
+            }
+            pool.release(outbound.poll());
+        }
+    }
+
+    /**
+     * Appends one byte to the outbound buffers. Holds writeLock.
+     */
+    private void put(int b) {
+        if (tail == null || !tail.hasRemaining())
+            nextTail();
+        tail.put((byte) b);
+    }
+
+    private void nextTail() {
+        if (tail != null) {
+            tail.flip();
+            outbound.add(tail);
+        }
+        tail = pool.acquire();
+    }
+
+    /**
+     * Appends a writeUTF frame: the 2-byte length, then the string in modified UTF-8. Holds writeLock.
+     */
+    private void appendJson(String json, int length) {
+        put(length >>> 8);
+        put(length);
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                put(c);
+            } else if (c > 0x07FF) {
+                put(0xE0 | ((c >> 12) & 0x0F));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            } else {
+                put(0xC0 | ((c >> 6) & 0x1F));
+                put(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Appends a {@link BinaryCodec} frame: the varint length, then the payload. Holds writeLock.
+     */
+    private void appendBinary(byte [] payload) {
+        int length = payload.length;
+        while ((length & ~0x7F) != 0) {
+            put((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        put(length);
+        for (int offset = 0; offset < payload.length; ) {
+            if (tail == null || !tail.hasRemaining())
+                nextTail();
+            int count = Math.min(tail.remaining(), payload.length - offset);
+            tail.put(payload, offset, count);
+            offset += count;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Event;
+import model.User;
+import socket.PairingResponse;
+import socket.Request;
+import socket.Response;
+
+/**
+ * Local copy of the pairing state, kept up to date with delta {@link Request.RequestType#UPDATE_PAIRING} polls:
+ * each request carries the version of the copy, and the server answers with the users added and removed since,
+ * or with "not modified". Servers without versions keep sending full lists, which replace the copy.
+ * Safe from any thread.
+ */
+public class PairingCache {
+    private final Map<String, User> users = new LinkedHashMap<>();
+    private Event invitation;
+    private Event invitationResponse;
+    private long version;
+    private boolean valid; // Holds a full list plus the deltas since.
+
+    /**
+     * Creates the next poll.
+     *
+     * @return An UPDATE_PAIRING request with the version of the cache, or without one while the cache is empty.
+     */
+    public synchronized Request newRequest() {
+        return valid ? Request.of(Request.RequestType.UPDATE_PAIRING, version)
+                : new Request(Request.RequestType.UPDATE_PAIRING, null);
+    }
+
+    /**
+     * Applies the answer to a request of {@link #newRequest()}.
+     *
+     * @param response The response, ignored if null or not a SUCCESS.
+     * @return true if the users or invitations may have changed.
+     */
+    public synchronized boolean apply(PairingResponse response) {
+        if (response == null || response.getStatus() != Response.ResponseStatus.SUCCESS)
+            return false;
+        if (response.isNotModified())
+            return false;
+        if (response.getRemovedUsers() == null) {
+            users.clear();
+        } else {
+            for (String username : response.getRemovedUsers())
+                users.remove(username);
+        }
+        if (response.getAvailableUsers() != null) {
+            for (User user : response.getAvailableUsers()) {
+                if (user != null)
+                    users.put(user.getUsername(), user);
+            }
+        }
+        invitation = response.getInvitation();
+        invitationResponse = response.getInvitationResponse();
+        version = response.getVersion();
+        valid = true;
+        return true;
+    }
+
+    /**
+     * Forgets everything, e.g. after logging in again, so that the next poll gets full lists.
+     */
+    public synchronized void clear() {
+        users.clear();
+        invitation = null;
+        invitationResponse = null;
+        version = 0;
+        valid = false;
+    }
+
+    /**
+     * Users that are online and not playing, other than the user who asked.
+     *
+     * @return A copy of the cached users, in the order the server first listed them.
+     */
+    public synchronized List<User> getAvailableUsers() {
+        return new ArrayList<>(users.values());
+    }
+
+    /**
+     * Getter function for {@link #invitation} attribute
+     * @return invitation
+     */
+    public synchronized Event getInvitation() {
+        return invitation;
+    }
+
+    /**
+     * Getter function for {@link #invitationResponse} attribute
+     * @return invitationResponse
+     */
+    public synchronized Event getInvitationResponse() {
+        return invitationResponse;
+    }
+
+    /**
+     * Getter function for {@link #version} attribute
+     * @return version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,145 @@
+package client;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a poll repeatedly with an adaptive delay, for servers that can not push updates.
+ * Polling starts fast when {@link #start()} is called (e.g. right after sending our own move), then the delay doubles
+ * after every poll that brought nothing new, up to a maximum, with random jitter so clients do not synchronize.
+ * At most one poll is in flight: the next one is only scheduled once the previous one completes.
+ * {@link #pause()} and {@link #resume()} follow the activity lifecycle without losing the started state.
+ */
+public class PollScheduler {
+
+    /**
+     * A single asynchronous poll.
+     */
+    public interface Poll {
+        /**
+         * Starts a poll.
+         *
+         * @return A future completed with true if the poll brought something new, which resets the delay
+         */
+        CompletableFuture<Boolean> poll();
+    }
+
+    private static final double JITTER = 0.2; // Delays are randomized by up to 20% either way.
+
+    private final ScheduledExecutorService timer;
+    private final Poll poll;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random = new Random();
+
+    private boolean started; // Polling was requested with start().
+    private boolean paused; // The owner is in the background.
+    private boolean inFlight; // A poll is running.
+    private boolean restarted; // start() or resume() was called while the poll in flight was running.
+    private long delayMillis; // Delay before the next poll, without jitter.
+    private ScheduledFuture<?> next; // The scheduled poll, or null.
+
+    /**
+     *
+     * @param timer Executor used to wait between polls; the poll itself decides where its work runs
+     * @param minDelayMillis Delay before the first poll after {@link #start()}
+     * @param maxDelayMillis Largest delay reached by the backoff
+     * @param poll The poll to run
+     */
+    public PollScheduler(ScheduledExecutorService timer, long minDelayMillis, long maxDelayMillis, Poll poll) {
+        this.timer = timer;
+        this.poll = poll;
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.delayMillis = minDelayMillis;
+    }
+
+    /**
+     * Starts polling, or restarts it at the minimum delay if it was already running.
+     */
+    public synchronized void start() {
+        started = true;
+        delayMillis = minDelayMillis;
+        restarted = true;
+        reschedule();
+    }
+
+    /**
+     * Stops polling until the next {@link #start()}. A poll in flight completes but is not followed by another.
+     */
+    public synchronized void stop() {
+        started = false;
+        cancel();
+    }
+
+    /**
+     * Suspends polling while the owner is in the background.
+     */
+    public synchronized void pause() {
+        paused = true;
+        cancel();
+    }
+
+    /**
+     * Resumes polling after {@link #pause()}, at the minimum delay so the screen is refreshed quickly.
+     */
+    public synchronized void resume() {
+        paused = false;
+        delayMillis = minDelayMillis;
+        restarted = true;
+        reschedule();
+    }
+
+    /**
+     * Gets the current delay between polls, without jitter.
+     *
+     * @return The delay in milliseconds.
+     */
+    public synchronized long getDelayMillis() {
+        return delayMillis;
+    }
+
+    private void reschedule() {
+        cancel();
+        if (started && !paused && !inFlight)
+            next = timer.schedule(this::runPoll, jittered(delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void cancel() {
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+    }
+
+    private long jittered(long delay) {
+        return Math.round(delay * (1 - JITTER + 2 * JITTER * random.nextDouble()));
+    }
+
+    private void runPoll() {
+        synchronized (this) {
+            next = null;
+            if (!started || paused || inFlight)
+                return;
+            inFlight = true;
+            restarted = false;
+        }
+        CompletableFuture<Boolean> result;
+        try {
+            result = poll.poll();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((changed, error) -> onPollComplete(error == null && Boolean.TRUE.equals(changed)));
+    }
+
+    private synchronized void onPollComplete(boolean changed) {
+        inFlight = false;
+        delayMillis = changed || restarted ? minDelayMillis : Math.min(delayMillis * 2, maxDelayMillis);
+        reschedule();
+    }
+}
@@ -0,0 +1,37 @@
+package client;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rejection policy of the bounded pools: counts the task and throws, so that the caller decides what to drop.
+ * Dropping a task silently would leave its future, if any, never completed.
+ */
+class RejectionCounter implements RejectedExecutionHandler {
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     *
+     * @param name Name of the pool, for the exception message
+     */
+    RejectionCounter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Getter function for {@link #count} attribute
+     * @return count
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        count.incrementAndGet();
+        throw new RejectedExecutionException(name + " queue full (" + executor.getQueue().size() + " tasks)");
+    }
+}
@@ -0,0 +1,192 @@
+package client;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import socket.Request;
+
+/**
+ * Shares requests for the same data between concurrent callers: while a {@link #isCoalesced coalesced} request is
+ * in flight, identical requests (same type, payload and response class) wait for it instead of making their own
+ * round trip, and all of them get the same decoded response, which must therefore not be modified. With a TTL,
+ * the response is also given to identical requests sent up to that long after it arrived.
+ * <p>
+ * Only polls are coalesced: {@link Request.RequestType#REQUEST_MOVE} and
+ * {@link Request.RequestType#UPDATE_PAIRING}. Every other request goes straight to the network, since it has side
+ * effects, and drops the responses kept for the TTL, since they may no longer be true after it. Failed requests are
+ * never reused. Safe from any thread.
+ */
+public class RequestCoalescer {
+
+    /**
+     * Sends requests, e.g. {@code socketClient::send}.
+     */
+    public interface Sender {
+        /**
+         * Sends a request without waiting for the response.
+         *
+         * @param request The request.
+         * @param responseClass The class of the expected response.
+         * @param <T> The type of the expected response.
+         * @return A future completed with the response.
+         */
+        <T> CompletableFuture<T> send(Request request, Class<T> responseClass);
+    }
+
+    private static final Set<Request.RequestType> COALESCED =
+            EnumSet.of(Request.RequestType.REQUEST_MOVE, Request.RequestType.UPDATE_PAIRING);
+
+    private final Sender sender;
+    private final long ttlNanos;
+    private final ConcurrentMap<Key, Call> calls = new ConcurrentHashMap<>();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     *
+     * @param sender Where the requests go
+     * @param ttlMillis How long a response is reused after it arrived, 0 to share in-flight requests only
+     */
+    public RequestCoalescer(Sender sender, long ttlMillis) {
+        this.sender = sender;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Checks whether requests of a type can be shared.
+     *
+     * @param type The type of the request.
+     * @return true if the request only reads data.
+     */
+    public static boolean isCoalesced(Request.RequestType type) {
+        return COALESCED.contains(type);
+    }
+
+    /**
+     * Sends a request, or joins an identical one in flight or answered less than the TTL ago.
+     *
+     * @param request The request; only sent if no identical one is shared.
+     * @param responseClass The class of the expected response.
+     * @param <T> The type of the expected response.
+     * @return A future of this caller, completed with the shared response. Cancelling it does not affect the others.
+     */
+    public <T> CompletableFuture<T> send(Request request, Class<T> responseClass) {
+        if (!isCoalesced(request.getType())) {
+            dropCompleted();
+            return sender.send(request, responseClass);
+        }
+        // The payloads of polls are numbers, compared without serializing them
+        Key key = new Key(request.getType(), request.getPayload(), responseClass);
+        while (true) {
+            Call call = calls.get(key);
+            if (call != null && call.isFresh(System.nanoTime())) {
+                sharedCount.incrementAndGet();
+                return call.future.thenApply(responseClass::cast);
+            }
+            Call started = new Call();
+            if (call == null ? calls.putIfAbsent(key, started) == null : calls.replace(key, call, started)) {
+                sender.send(request, responseClass).whenComplete((response, error) -> {
+                    started.completedAt = System.nanoTime();
+                    if (error != null || ttlNanos <= 0)
+                        calls.remove(key, started);
+                    if (error != null) {
+                        started.future.completeExceptionally(error);
+                    } else {
+                        started.future.complete(response);
+                    }
+                });
+                return started.future.thenApply(responseClass::cast);
+            }
+        }
+    }
+
+    /**
+     * Sends a request like {@link #send}, and waits for the response.
+     *
+     * @param request The request.
+     * @param responseClass The class of the expected response.
+     * @param <T> The type of the expected response.
+     * @return The response, or null in case of errors.
+     */
+    public <T> T sendRequest(Request request, Class<T> responseClass) {
+        CompletableFuture<T> future = send(request, responseClass);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Number of requests that were answered with the response of another one.
+     *
+     * @return The requests saved since this coalescer was created.
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /**
+     * Drops the responses kept for the TTL, e.g. after logging in again. Requests in flight are still shared.
+     */
+    public void dropCompleted() {
+        if (ttlNanos <= 0)
+            return;
+        for (Iterator<Call> it = calls.values().iterator(); it.hasNext(); ) {
+            if (it.next().future.isDone())
+                it.remove();
+        }
+    }
+
+    /**
+     * One round trip and the callers sharing it.
+     */
+    private final class Call {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        volatile long completedAt; // System.nanoTime() when the response arrived, set before future completes.
+
+        boolean isFresh(long now) {
+            return !future.isDone() || (!future.isCompletedExceptionally() && now - completedAt < ttlNanos);
+        }
+    }
+
+    /**
+     * What makes two requests identical.
+     */
+    private static final class Key {
+        final Request.RequestType type;
+        final Object payload;
+        final Class<?> responseClass;
+
+        Key(Request.RequestType type, Object payload, Class<?> responseClass) {
+            this.type = type;
+            this.payload = payload;
+            this.responseClass = responseClass;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return type == key.type && Objects.equals(payload, key.payload) && responseClass == key.responseClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, payload, responseClass);
+        }
+    }
+}
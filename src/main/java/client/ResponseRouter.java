@@ -0,0 +1,258 @@
+package client;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.Gson;
+
+import socket.BatchResponse;
+import socket.BinaryCodec;
+import socket.GamingResponse;
+import socket.JsonCodecs;
+import socket.PairingResponse;
+import socket.Response;
+
+/**
+ * Matches the responses read from one connection to the requests waiting for them, whatever the transport.
+ * Responses are matched by correlation id; responses without an id go to the oldest outstanding request.
+ * Frames with id {@link Response#PUSH_ID} go to the {@link MoveListener}.
+ */
+final class ResponseRouter {
+    private final Gson gson = JsonCodecs.gson();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Integer, PendingRequest<?>> pending = new ConcurrentHashMap<>();
+    private final Queue<Integer> sendOrder = new ConcurrentLinkedQueue<>(); // Ids in the order they were written.
+    private volatile MoveListener moveListener;
+
+    /**
+     * Gets a new correlation id.
+     *
+     * @return A positive id.
+     */
+    int nextId() {
+        int id = nextId.incrementAndGet() & Integer.MAX_VALUE;
+        return id == 0 ? nextId.incrementAndGet() : id;
+    }
+
+    /**
+     * Registers a request about to be written. Callers register and write under the same lock, so that
+     * {@link #sendOrder} follows the order of the frames on the wire.
+     *
+     * @param id The correlation id of the request.
+     * @param future The future to complete with the response.
+     * @param responseClass The class representing the expected response.
+     * @param <T> The type of the expected response.
+     */
+    <T> void register(int id, CompletableFuture<T> future, Class<T> responseClass) {
+        pending.put(id, new PendingRequest<>(future, responseClass));
+        sendOrder.add(id);
+    }
+
+    /**
+     * Checks whether requests are waiting for a response, including those whose future already completed because
+     * of a deadline or a cancellation.
+     *
+     * @return true if some responses are still expected.
+     */
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Gets the number of ids kept in {@link #sendOrder}, which only includes requests still waiting for a response.
+     *
+     * @return The size of the queue.
+     */
+    int getSendOrderSize() {
+        return sendOrder.size();
+    }
+
+    /**
+     * Sets the listener for moves pushed by the server.
+     *
+     * @param moveListener The listener, or null to ignore pushed moves.
+     */
+    void setMoveListener(MoveListener moveListener) {
+        this.moveListener = moveListener;
+    }
+
+    /**
+     * Routes a JSON response frame.
+     *
+     * @param json The frame.
+     */
+    void dispatchJson(String json) {
+        // GamingResponse has every Response field, so one streaming decode finds the id and usually the result.
+        GamingResponse response = gson.fromJson(json, GamingResponse.class);
+        if (response.getId() == Response.PUSH_ID) {
+            notifyMove(response);
+            return;
+        }
+        PendingRequest<?> request = response.getId() == 0 ? pollOldest() : remove(response.getId());
+        if (request != null)
+            request.complete(gson, json, response);
+    }
+
+    /**
+     * Routes a {@link BinaryCodec} response payload.
+     *
+     * @param payload The payload of the frame.
+     * @throws IOException If the payload is malformed.
+     */
+    void dispatchBinary(byte [] payload) throws IOException {
+        int id = BinaryCodec.peekId(payload);
+        if (id == Response.PUSH_ID) {
+            Response response = BinaryCodec.decodeResponse(payload);
+            if (response instanceof GamingResponse)
+                notifyMove((GamingResponse) response);
+            return;
+        }
+        PendingRequest<?> request = id == 0 ? pollOldest() : remove(id);
+        if (request != null)
+            request.complete(payload);
+    }
+
+    /**
+     * Fails every outstanding request and tells the {@link MoveListener} the connection is gone.
+     *
+     * @param e The error that broke the connection.
+     */
+    void failAll(IOException e) {
+        takeAll(e).run();
+    }
+
+    /**
+     * Removes every outstanding request, e.g. under the lock of the connection that broke, without completing them.
+     * The dependent stages of their futures and the {@link MoveListener} run in the returned task, which must be run
+     * without holding that lock, since they may send requests or block.
+     *
+     * @param e The error that broke the connection.
+     * @return The task that fails the removed requests and tells the {@link MoveListener} the connection is gone.
+     */
+    Runnable takeAll(IOException e) {
+        List<PendingRequest<?>> requests = new ArrayList<>(pending.size());
+        for (Iterator<PendingRequest<?>> it = pending.values().iterator(); it.hasNext(); ) {
+            requests.add(it.next());
+            it.remove();
+        }
+        sendOrder.clear();
+        return () -> {
+            for (PendingRequest<?> request : requests)
+                request.future.completeExceptionally(e);
+            MoveListener listener = moveListener;
+            if (listener != null)
+                listener.onConnectionLost();
+        };
+    }
+
+    /**
+     * Hands a pushed move to the {@link MoveListener}, if any.
+     *
+     * @param response The pushed response.
+     */
+    private void notifyMove(GamingResponse response) {
+        MoveListener listener = moveListener;
+        if (listener != null) {
+            try {
+                listener.onMove(response);
+            } catch (RuntimeException e) {
+                Log.e("ResponseRouter", "Move listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Removes the request answered by a response with its id. Its id also leaves {@link #sendOrder}, which would
+     * otherwise grow with every request on servers that echo ids.
+     *
+     * @param id The correlation id of the response.
+     * @return The request, or null if it is no longer outstanding.
+     */
+    private PendingRequest<?> remove(int id) {
+        sendOrder.remove(id); // Usually the head, as responses mostly come in order
+        return pending.remove(id);
+    }
+
+    /**
+     * Removes the oldest request still waiting for a response.
+     *
+     * @return The request, or null if none is outstanding.
+     */
+    private PendingRequest<?> pollOldest() {
+        Integer id;
+        while ((id = sendOrder.poll()) != null) {
+            PendingRequest<?> request = pending.remove(id);
+            if (request != null)
+                return request;
+        }
+        return null;
+    }
+
+    /**
+     * A request waiting for its response.
+     *
+     * @param <T> The type of the expected response.
+     */
+    private static class PendingRequest<T> {
+        private final CompletableFuture<T> future;
+        private final Class<T> responseClass;
+
+        PendingRequest(CompletableFuture<T> future, Class<T> responseClass) {
+            this.future = future;
+            this.responseClass = responseClass;
+        }
+
+        void complete(Gson gson, String json, GamingResponse decoded) {
+            try {
+                if (responseClass == GamingResponse.class || responseClass == Response.class) {
+                    future.complete(responseClass.cast(decoded));
+                } else {
+                    future.complete(gson.fromJson(json, responseClass));
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        void complete(byte [] payload) {
+            try {
+                Response response = BinaryCodec.decodeResponse(payload);
+                if (responseClass == GamingResponse.class && !(response instanceof GamingResponse)) {
+                    // e.g. a FAILURE answer to REQUEST_MOVE
+                    GamingResponse gamingResponse = new GamingResponse(response.getStatus(), response.getMessage(), -1, false);
+                    gamingResponse.setId(response.getId());
+                    response = gamingResponse;
+                } else if (responseClass == PairingResponse.class && !(response instanceof PairingResponse)) {
+                    // e.g. a FAILURE answer to UPDATE_PAIRING
+                    PairingResponse pairingResponse = new PairingResponse();
+                    pairingResponse.setStatus(response.getStatus());
+                    pairingResponse.setMessage(response.getMessage());
+                    pairingResponse.setId(response.getId());
+                    response = pairingResponse;
+                } else if (responseClass == BatchResponse.class && !(response instanceof BatchResponse)) {
+                    // e.g. a FAILURE answer to BATCH from a server without batches
+                    BatchResponse batchResponse = new BatchResponse(response.getStatus(), response.getMessage(), null);
+                    batchResponse.setId(response.getId());
+                    response = batchResponse;
+                }
+                if (responseClass.isInstance(response)) {
+                    future.complete(responseClass.cast(response));
+                } else {
+                    future.completeExceptionally(new IOException(responseClass.getName() + " has no binary encoding"));
+                }
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
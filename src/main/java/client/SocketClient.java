@@ -2,34 +2,142 @@ package client;
 
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
+import model.User;
+import socket.BatchResponse;
+import socket.BinaryCodec;
+import socket.GamingResponse;
+import socket.JsonCodecs;
+import socket.PairingResponse;
 import socket.Request;
+import socket.Response;
 /**
  * The SocketClient class represents a client for connecting to a remote server via sockets and sending/receiving JSON requests.
+ * Several requests can be outstanding on the one connection: every frame carries a correlation id
+ * ({@link Request#getId()}), and a single reader thread completes the matching future when the response arrives.
+ * Responses without an id (servers that do not echo it) are matched to the oldest outstanding request,
+ * which is correct for servers that answer in order. Frames with id {@link Response#PUSH_ID} are moves pushed
+ * by the server and go to the {@link MoveListener}.
+ * The connection starts with JSON frames written by writeUTF; a client created with preferBinary offers
+ * {@link JsonCodecs#OFFERED_FORMATS} and switches to the {@link BinaryCodec} format, or writes request payloads
+ * inline in JSON, depending on what the server accepts.
+ * <p>
+ * A broken connection is opened again in the background as soon as it breaks, or by the next request if that gave up:
+ * attempts run on a connect thread and back off exponentially from {@link #MIN_BACKOFF_MILLIS} to
+ * {@link #MAX_BACKOFF_MILLIS} on the deadline timer, and after {@link #MAX_ATTEMPTS} failures requests fail right away
+ * until the maximum backoff has passed. Requests outstanding when the connection broke fail; requests sent meanwhile
+ * wait for the next attempt, without holding a lock, and fail with it or at their deadline. Once reconnected, the client
+ * sends {@link Request.RequestType#RESUME_SESSION} with the token of the last LOGIN, so the user is still logged in
+ * and in its game after one round trip, and replays the LOGIN only if the server no longer has the session.
+ * <p>
+ * Every request has a deadline that depends on its type (see {@link #setDeadline}): past it, its future fails with a
+ * {@link TimeoutException} and the waiting thread is free again. A late response is then dropped. Reads time out
+ * after {@link #READ_TIMEOUT_MILLIS} of silence; silence with requests outstanding means the server stalled, so the
+ * connection is closed and opened again.
+ * <p>
+ * Latencies per request type, bytes, connections and reconnects are reported to the {@link Metrics} registry.
+ * <p>
+ * Requests that follow each other, e.g. SEND_MOVE then REQUEST_MOVE, can be sent in one round trip with
+ * {@link #batch()}.
  */
 public class SocketClient {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final int MAX_ATTEMPTS = 6;
+    private static final int READ_TIMEOUT_MILLIS = 15_000;
+    private static final long DEFAULT_DEADLINE_MILLIS = 5000;
+    private static final ScheduledExecutorService DEADLINES = newDeadlineTimer(); // Also waits out the backoff.
+    // Blocking connects, at most one at a time per client.
+    private static final ExecutorService CONNECTS =
+            Executors.newCachedThreadPool(new NamedThreadFactory("SocketClient-connect", true));
+    private static final CompletableFuture<Void> CONNECTED = CompletableFuture.completedFuture(null);
+
     private static volatile SocketClient instance;
-    private Socket socket;
+    private final String host;
+    private final int port;
+    private final boolean preferBinary;
+    private volatile Socket socket; // Null while disconnected; the fields below are replaced with it.
     private DataInputStream inputStream;
     private DataOutputStream outputStream;
     private Gson gson;
+    private final Object writeLock = new Object(); // Guards the connection, reconnects and the registration order in router.
+    private final ResponseRouter router = new ResponseRouter();
+    private CompletableFuture<Void> connecting; // The current or next reconnect attempt, or null, guarded by writeLock.
+    private volatile String format; // Negotiated with the server, null for plain JSON; only changed while connecting.
+    private volatile boolean closed; // close() was called, so the connection is not opened again.
+    private volatile User credentials; // Of the last successful LOGIN, replayed when the session can not be resumed.
+    private volatile String sessionToken; // For RESUME_SESSION, from the last LOGIN response.
+    private long retryAtNanos; // No reconnect before this after MAX_ATTEMPTS failures, guarded by writeLock.
+    private volatile int reconnectCount; // Written by the one reconnect in progress.
+    private long connectedAtNanos; // When the connection was opened, guarded by writeLock.
+    private final Map<Request.RequestType, Long> deadlines = new ConcurrentHashMap<>(); // Overrides of the defaults.
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final RequestCoalescer coalescer = new RequestCoalescer(this::send, 0);
     /**
      * Constructs a new SocketClient instance and establishes a socket connection with the server.
      */
      private SocketClient() {
-            gson = new GsonBuilder().serializeNulls().create();
+            this(SocketConfig.SERVER_IP, SocketConfig.SERVER_PORT, SocketConfig.BINARY_PROTOCOL);
+        }
+    /**
+     * Constructs a client connected to a specific server, e.g. a local server for benchmarks and headless tools.
+     * The app itself uses the singleton returned by {@link #getInstance()}.
+     *
+     * @param host The server address.
+     * @param port The server port.
+     */
+     public SocketClient(String host, int port) {
+            this(host, port, false);
+        }
+    /**
+     * Constructs a client connected to a specific server, optionally negotiating the binary wire format.
+     *
+     * @param host The server address.
+     * @param port The server port.
+     * @param preferBinary Whether to ask the server for the {@link BinaryCodec} format, or else JSON with inline
+     *                     payloads; JSON with payloads as strings is kept if it refuses both.
+     */
+     public SocketClient(String host, int port, boolean preferBinary) {
+            this.host = host;
+            this.port = port;
+            this.preferBinary = preferBinary;
+            gson = JsonCodecs.gson();
             try {
-                socket = new Socket(SocketConfig.SERVER_IP, SocketConfig.SERVER_PORT);
-                inputStream = new DataInputStream(socket.getInputStream());
-                outputStream = new DataOutputStream(socket.getOutputStream());
+                connect();
             } catch (IOException e) {
-                // Handle exceptions, e.g., connection errors
+                // Handle exceptions, e.g., connection errors; the first request tries again
                 Log.e("SocketClient", e.getMessage(), e);
             }
         }
@@ -39,6 +147,7 @@ public class SocketClient {
     public class SocketConfig {
         public static final String SERVER_IP = "128.153.177.140";
         public static final int SERVER_PORT = 8000; // Replace with your server's port number
+        public static final boolean BINARY_PROTOCOL = false; // Enable once the server understands NEGOTIATE_FORMAT
     }
     /**
      * Retrieves the singleton instance of the SocketClient class.
@@ -51,19 +160,356 @@ public class SocketClient {
         }
         return instance;
     }
+    private static ScheduledExecutorService newDeadlineTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "SocketClient-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true); // Most requests are answered long before their deadline
+        return timer;
+    }
     /**
-     * Closes the socket connection and associated input/output streams.
+     * Creates the singleton, and so opens its connection, on a background thread at app start, so that the first
+     * request does not wait for the TCP handshake.
+     *
+     * @param executor The executor to connect on, e.g. {@link AppExecutors#networkIO()}.
+     * @return A future completed with the instance.
      */
-    public void close() {
+    public static CompletableFuture<SocketClient> prewarm(Executor executor) {
+        return CompletableFuture.supplyAsync(SocketClient::getInstance, executor);
+    }
+    /**
+     * Opens the connection: TCP_NODELAY, since every frame is a small request waiting for its answer, and keepalive,
+     * so that a connection the network silently dropped is eventually noticed. Then negotiates the format, restores
+     * the session, if any, and starts the reader of the new connection. Runs without writeLock, so that requests are
+     * not held up by the handshakes, on one thread at a time: the constructor, then the reconnect in progress.
+     *
+     * @throws IOException If the connection or the exchanges fail, or the client was closed meanwhile.
+     */
+    private void connect() throws IOException {
+        Socket newSocket = new Socket();
         try {
-            if (inputStream != null) {
-                inputStream.close();
+            newSocket.setTcpNoDelay(true);
+            newSocket.setKeepAlive(true);
+            newSocket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new CountingInputStream(newSocket.getInputStream())));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new CountingOutputStream(newSocket.getOutputStream())));
+            String useFormat = preferBinary ? negotiateFormat(input, output) : null;
+            restoreSession(input, output, useFormat);
+            synchronized (writeLock) {
+                if (closed) {
+                    throw new IOException("Socket closed");
+                }
+                inputStream = input;
+                outputStream = output;
+                format = useFormat;
+                socket = newSocket;
+                connectedAtNanos = System.nanoTime();
+                boolean useBinary = BinaryCodec.FORMAT.equals(useFormat);
+                Thread reader = new Thread(() -> readResponses(newSocket, input, useBinary), "SocketClient-reader");
+                reader.setDaemon(true);
+                reader.start();
             }
-            if (outputStream != null) {
-                outputStream.close();
+            Metrics.getRegistry().connectionOpened();
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+    }
+    /**
+     * Offers the server the binary format, then JSON with inline payloads, before any other request is sent.
+     *
+     * @param input The stream of the new connection.
+     * @param output The stream of the new connection.
+     * @return The format the server accepted, or null if the connection stays on JSON with payloads as strings.
+     * @throws IOException If the exchange fails.
+     */
+    private String negotiateFormat(DataInputStream input, DataOutputStream output) throws IOException {
+        return JsonCodecs.negotiatedFormat(exchange(
+                new Request(Request.RequestType.NEGOTIATE_FORMAT, JsonCodecs.OFFERED_FORMATS), input, output, null));
+    }
+    /**
+     * Logs a new connection in again: resumes the session of the last LOGIN, or replays the LOGIN if the server
+     * no longer knows the session. Does nothing before the first LOGIN.
+     *
+     * @param input The stream of the new connection.
+     * @param output The stream of the new connection.
+     * @param useFormat The format negotiated for the new connection, or null.
+     * @throws IOException If an exchange fails.
+     */
+    private void restoreSession(DataInputStream input, DataOutputStream output, String useFormat) throws IOException {
+        String token = sessionToken;
+        if (token != null) {
+            Response response = exchange(Request.of(Request.RequestType.RESUME_SESSION, token), input, output, useFormat);
+            if (response != null && response.getStatus() == Response.ResponseStatus.SUCCESS) {
+                return;
+            }
+            sessionToken = null;
+        }
+        User user = credentials;
+        if (user != null) {
+            onLogin(user, exchange(Request.of(Request.RequestType.LOGIN, user), input, output, useFormat));
+        }
+    }
+    /**
+     * Sends a request and reads its response on a connection that has no reader yet, i.e. while connecting.
+     * Moves pushed meanwhile go to the {@link MoveListener}.
+     *
+     * @param request The request.
+     * @param input The stream of the new connection.
+     * @param output The stream of the new connection.
+     * @param useFormat The format negotiated for the connection, or null.
+     * @return The response.
+     * @throws IOException If the exchange fails.
+     */
+    private Response exchange(Request request, DataInputStream input, DataOutputStream output, String useFormat)
+            throws IOException {
+        request.setId(router.nextId());
+        if (BinaryCodec.FORMAT.equals(useFormat)) {
+            BinaryCodec.writeFrame(output, BinaryCodec.encode(request));
+            output.flush();
+            while (true) {
+                byte [] payload = BinaryCodec.readFrame(input);
+                if (BinaryCodec.peekId(payload) != Response.PUSH_ID) {
+                    return BinaryCodec.decodeResponse(payload);
+                }
+                router.dispatchBinary(payload);
+            }
+        }
+        output.writeUTF(JsonCodecs.gson(useFormat).toJson(request));
+        output.flush();
+        while (true) {
+            String json = input.readUTF();
+            Response response = gson.fromJson(json, Response.class);
+            if (response == null || response.getId() != Response.PUSH_ID) {
+                return response;
+            }
+            router.dispatchJson(json);
+        }
+    }
+    /**
+     * Remembers a successful LOGIN, to resume its session or replay it after a reconnect.
+     *
+     * @param user The user who logged in.
+     * @param response The LOGIN response; its message is the session token on servers with sessions.
+     */
+    private void onLogin(User user, Object response) {
+        if (response instanceof Response && ((Response) response).getStatus() == Response.ResponseStatus.SUCCESS) {
+            credentials = user;
+            sessionToken = ((Response) response).getMessage();
+        } else if (response != null) {
+            credentials = null;
+            sessionToken = null;
+        }
+    }
+    /**
+     * Gets the connection, or starts opening it again if it is broken.
+     *
+     * @return A future completed once the client is connected, or exceptionally if it is closed or the current
+     * reconnect attempt failed. Callbacks run on the connect thread; none is blocked while waiting.
+     */
+    private CompletableFuture<Void> connection() {
+        synchronized (writeLock) {
+            if (closed) {
+                return failed(new IOException("Socket closed"));
             }
             if (socket != null) {
-                socket.close();
+                return CONNECTED;
+            }
+            if (connecting == null) {
+                if (System.nanoTime() - retryAtNanos < 0) {
+                    return failed(new IOException("Not connected"));
+                }
+                CompletableFuture<Void> attempt = new CompletableFuture<>();
+                connecting = attempt;
+                CONNECTS.execute(() -> reconnect(attempt, 1, MIN_BACKOFF_MILLIS));
+            }
+            return connecting;
+        }
+    }
+    /**
+     * One reconnect attempt, on the connect thread. A failed attempt fails the requests waiting for it, and
+     * schedules the next one on the deadline timer after the backoff, so no thread sleeps and no lock is held
+     * meanwhile; requests sent during the backoff wait for the next attempt.
+     *
+     * @param attempt The future of this attempt, completed when it succeeds or fails.
+     * @param number The number of this attempt, from 1.
+     * @param backoff The backoff before the next attempt, before jitter, in milliseconds.
+     */
+    private void reconnect(CompletableFuture<Void> attempt, int number, long backoff) {
+        if (attempt.isDone()) {
+            return; // Closed meanwhile
+        }
+        IOException error;
+        try {
+            connect();
+            reconnectCount++;
+            Metrics.getRegistry().reconnected();
+            finishAttempt(attempt, null, null);
+            return;
+        } catch (IOException e) {
+            Log.w("SocketClient", "Reconnect attempt " + number + " failed: " + e.getMessage());
+            error = e;
+        }
+        CompletableFuture<Void> next = number < MAX_ATTEMPTS && !closed ? new CompletableFuture<>() : null;
+        finishAttempt(attempt, next, new IOException("Not connected: " + error.getMessage(), error));
+        if (next != null) {
+            // Full jitter, so that clients dropped together do not come back together
+            long delay = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+            long nextBackoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            DEADLINES.schedule(() -> CONNECTS.execute(() -> reconnect(next, number + 1, nextBackoff)),
+                    delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    /**
+     * Ends a reconnect attempt and completes the requests waiting for it, outside writeLock since they write under it.
+     *
+     * @param attempt The future of the attempt.
+     * @param next The future of the next attempt, or null if the reconnect ends.
+     * @param error Why the attempt failed, or null if the client is connected.
+     */
+    private void finishAttempt(CompletableFuture<Void> attempt, CompletableFuture<Void> next, IOException error) {
+        synchronized (writeLock) {
+            if (connecting == attempt) {
+                connecting = next;
+            }
+            if (error != null && next == null) {
+                retryAtNanos = System.nanoTime() + MAX_BACKOFF_MILLIS * 1_000_000;
+            }
+        }
+        if (error == null) {
+            attempt.complete(null);
+        } else {
+            attempt.completeExceptionally(error);
+        }
+    }
+    private static CompletableFuture<Void> failed(IOException e) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+    /**
+     * Default deadline of a request type: long enough for a login to hash a password, short for the polls, which
+     * are simply sent again.
+     *
+     * @param type The request type.
+     * @return The deadline in milliseconds.
+     */
+    private static long defaultDeadlineMillis(Request.RequestType type) {
+        if (type == null)
+            return DEFAULT_DEADLINE_MILLIS;
+        switch (type) {
+            case LOGIN:
+            case REGISTER:
+            case RESUME_SESSION:
+            case NEGOTIATE_FORMAT:
+            case BATCH: // May hold a login
+                return 10_000;
+            case UPDATE_PAIRING:
+            case REQUEST_MOVE:
+                return 3000;
+            default:
+                return DEFAULT_DEADLINE_MILLIS;
+        }
+    }
+    /**
+     * Gets the deadline of a request type.
+     *
+     * @param type The request type.
+     * @return The time a request of this type waits for its response, in milliseconds, or 0 for no deadline.
+     */
+    public long getDeadline(Request.RequestType type) {
+        Long deadline = type == null ? null : deadlines.get(type);
+        return deadline != null ? deadline : defaultDeadlineMillis(type);
+    }
+    /**
+     * Sets the deadline of a request type, for the requests sent afterwards.
+     *
+     * @param type The request type.
+     * @param deadlineMillis The time a request of this type waits for its response, in milliseconds, or 0 for no deadline.
+     */
+    public void setDeadline(Request.RequestType type, long deadlineMillis) {
+        deadlines.put(type, deadlineMillis);
+    }
+    /**
+     * Number of requests that failed because their deadline passed.
+     *
+     * @return The timeouts since the client was created.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+    /**
+     * Checks whether the client has an open connection.
+     *
+     * @return false while disconnected, e.g. between a failure and the reconnect.
+     */
+    public boolean isConnected() {
+        return socket != null;
+    }
+    /**
+     * Number of times the connection was opened again after breaking.
+     *
+     * @return The successful reconnects.
+     */
+    public int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    /**
+     * Checks whether the connection uses the binary format.
+     *
+     * @return true after a successful {@link Request.RequestType#NEGOTIATE_FORMAT} exchange.
+     */
+    public boolean isBinary() {
+        return BinaryCodec.FORMAT.equals(format);
+    }
+
+    /**
+     * Gets the wire format negotiated with the server.
+     *
+     * @return {@link BinaryCodec#FORMAT}, {@link JsonCodecs#INLINE_FORMAT}, or null for JSON with payloads as strings.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Closes the socket connection for good; outstanding and later requests fail.
+     */
+    public void close() {
+        CompletableFuture<Void> attempt;
+        synchronized (writeLock) {
+            closed = true;
+            attempt = connecting;
+            connecting = null;
+        }
+        if (attempt != null) {
+            attempt.completeExceptionally(new IOException("Socket closed")); // Also stops the attempts
+        }
+        Socket current = socket;
+        try {
+            if (current != null) {
+                current.close();
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+    /**
+     * Forgets the connection and closes it. Holds writeLock.
+     */
+    private void disconnect() {
+        Socket current = socket;
+        socket = null;
+        inputStream = null;
+        outputStream = null;
+        try {
+            if (current != null) {
+                Metrics.getRegistry().connectionClosed(System.nanoTime() - connectedAtNanos);
+                current.close();
             }
         } catch (IOException e) {
             System.err.println(e.getMessage());
@@ -71,6 +517,7 @@ public class SocketClient {
     }
     /**
      * Sends a request to the server and receives a response.
+     * Blocks the calling thread until the response of this request arrives; other threads can send meanwhile.
      *
      * @param request       The request object to send to the server.
      * @param responseClass The class representing the expected response.
@@ -78,20 +525,409 @@ public class SocketClient {
      * @return The response object received from the server, or null in case of errors.
      */
     public <T> T sendRequest(Request request, Class<T> responseClass) {
+        CompletableFuture<T> future = send(request, responseClass);
         try {
-            String jsonRequest = gson.toJson(request);
+            return future.get();
+        } catch (InterruptedException e) {
+            // e.g. the task was cancelled with Future.cancel(true); the response is dropped when it arrives
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause().getMessage());
+            return null;
+        }
+    }
 
-            outputStream.writeUTF(jsonRequest);
-            outputStream.flush();
+    /**
+     * Sends a request without waiting for the response.
+     * The request is given a new correlation id, so the same object must not be sent again before its future completes.
+     * Cancelling the future, or its deadline passing, drops the response when it arrives.
+     *
+     * @param request       The request object to send to the server.
+     * @param responseClass The class representing the expected response.
+     * @param <T>           The type of the expected response.
+     * @return A future completed with the response, or completed exceptionally with the IOException that broke the
+     * connection or a TimeoutException.
+     */
+    public <T> CompletableFuture<T> send(Request request, Class<T> responseClass) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (request.getType() == Request.RequestType.LOGIN) {
+            User user = request.getPayload(User.class);
+            future.whenComplete((response, error) -> onLogin(user, response));
+        }
+        MetricsRegistry metrics = Metrics.getRegistry();
+        if (metrics.isEnabled()) {
+            Request.RequestType type = request.getType();
+            long start = System.nanoTime();
+            future.whenComplete((response, error) -> {
+                if (error == null) {
+                    metrics.recordLatency(type, System.nanoTime() - start);
+                } else {
+                    metrics.recordFailure(type);
+                }
+            });
+        }
+        request.setId(router.nextId());
+        startDeadline(future, request.getType()); // Also bounds the wait for a reconnect
+        writeWhenConnected(request, future, responseClass);
+        return future;
+    }
 
-            String jsonResponse = inputStream.readUTF();
+    /**
+     * Writes a request once the client is connected, right away if it is.
+     *
+     * @param request The request, with its correlation id.
+     * @param future The future of the request, failed if the client can not connect.
+     * @param responseClass The class representing the expected response.
+     * @param <T> The type of the expected response.
+     */
+    private <T> void writeWhenConnected(Request request, CompletableFuture<T> future, Class<T> responseClass) {
+        connection().whenComplete((connected, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                write(request, future, responseClass);
+            }
+        });
+    }
 
-            T responseObject = gson.fromJson(jsonResponse, responseClass);
-            return responseObject;
-        } catch (IOException e) {
+    /**
+     * Registers and writes a request, unless its deadline passed or it was cancelled while connecting.
+     */
+    private <T> void write(Request request, CompletableFuture<T> future, Class<T> responseClass) {
+        if (future.isDone()) {
+            return;
+        }
+        String encodedFormat = format;
+        boolean encodedBinary = BinaryCodec.FORMAT.equals(encodedFormat);
+        byte [] binaryRequest = encodedBinary ? BinaryCodec.encode(request) : null;
+        String jsonRequest = encodedBinary ? null : JsonCodecs.gson(encodedFormat).toJson(request);
+        Socket broken;
+        IOException error;
+        synchronized (writeLock) {
+            if (socket == null) {
+                broken = null;
+                error = null;
+            } else {
+                boolean binary = BinaryCodec.FORMAT.equals(format);
+                if (!Objects.equals(encodedFormat, format)) { // Reconnected to a server that chose another format
+                    binaryRequest = binary ? BinaryCodec.encode(request) : null;
+                    jsonRequest = binary ? null : JsonCodecs.gson(format).toJson(request);
+                }
+                router.register(request.getId(), future, responseClass);
+                try {
+                    if (binary) {
+                        BinaryCodec.writeFrame(outputStream, binaryRequest);
+                    } else {
+                        outputStream.writeUTF(jsonRequest);
+                    }
+                    outputStream.flush();
+                    return;
+                } catch (IOException e) {
+                    broken = socket;
+                    error = e;
+                }
+            }
+        }
+        if (broken != null) {
+            fail(broken, error); // After releasing writeLock, which fail() must not be called with
+            return;
+        }
+        writeWhenConnected(request, future, responseClass); // Broke again before the request was written
+    }
+
+    /**
+     * Fails a request with a TimeoutException when its deadline passes. The request stays registered, so that its
+     * late response, if any, is matched and dropped rather than given to another request.
+     */
+    private void startDeadline(CompletableFuture<?> future, Request.RequestType type) {
+        long deadline = getDeadline(type);
+        if (deadline <= 0)
+            return;
+        ScheduledFuture<?> timeout = DEADLINES.schedule(() -> {
+            if (future.completeExceptionally(new TimeoutException(type + " timed out after " + deadline + " ms")))
+                timeoutCount.incrementAndGet();
+        }, deadline, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, error) -> timeout.cancel(false));
+    }
+
+    /**
+     * Gets the coalescer of this client, which shares polls in flight between the callers asking at the same time.
+     * Responses are not reused once they arrived; create a {@link RequestCoalescer} with a TTL for that.
+     *
+     * @return The coalescer sending through this client.
+     */
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Sets the listener for moves pushed by the server.
+     *
+     * @param moveListener The listener, or null to ignore pushed moves.
+     */
+    public void setMoveListener(MoveListener moveListener) {
+        router.setMoveListener(moveListener);
+    }
+
+    /**
+     * Asks the server to push the opponent's moves of the current game to the {@link MoveListener}.
+     *
+     * @return A future completed with true if the server will push moves, false if the client must keep polling.
+     */
+    public CompletableFuture<Boolean> subscribeMoves() {
+        return send(new Request(Request.RequestType.SUBSCRIBE_MOVES, null), Response.class)
+                .handle((response, error) -> response != null && response.getStatus() == Response.ResponseStatus.SUCCESS);
+    }
+
+    /**
+     * Starts a batch of requests to send in one round trip.
+     *
+     * @return An empty batch for this client.
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Builder of a {@link Request.RequestType#BATCH}: requests are added in the order the server handles them, then
+     * sent together. The responses are the same as if the requests had been sent one by one, which is what the
+     * batch does with servers that answer BATCH with a FAILURE. Not thread-safe; a batch is sent once.
+     */
+    public class Batch {
+        private final List<Request> requests = new ArrayList<>();
+        private final List<Class<? extends Response>> responseClasses = new ArrayList<>();
+
+        private Batch() {
+        }
+
+        /**
+         * Adds a request.
+         *
+         * @param request       The request, which must not be BATCH or NEGOTIATE_FORMAT.
+         * @param responseClass The class representing the expected response, e.g. {@link GamingResponse} for REQUEST_MOVE.
+         * @return This batch.
+         * @throws IllegalArgumentException If the request can not be batched.
+         * @throws IllegalStateException If the batch already holds {@link Request#MAX_BATCH} requests.
+         */
+        public Batch add(Request request, Class<? extends Response> responseClass) {
+            if (request.getType() == Request.RequestType.BATCH || request.getType() == Request.RequestType.NEGOTIATE_FORMAT)
+                throw new IllegalArgumentException(request.getType() + " can not be batched");
+            if (requests.size() == Request.MAX_BATCH)
+                throw new IllegalStateException("Batches hold at most " + Request.MAX_BATCH + " requests");
+            requests.add(request);
+            responseClasses.add(responseClass);
+            return this;
+        }
+
+        /**
+         * Number of requests added.
+         *
+         * @return The size of the batch.
+         */
+        public int size() {
+            return requests.size();
+        }
+
+        /**
+         * Sends the batch without waiting for the responses.
+         *
+         * @return A future completed with the response of each request, in order, each an instance of the class
+         * given to {@link #add}, or completed exceptionally like {@link SocketClient#send}.
+         */
+        public CompletableFuture<List<Response>> send() {
+            Request batch = Request.of(Request.RequestType.BATCH, requests.toArray(new Request[0]));
+            return SocketClient.this.send(batch, BatchResponse.class).thenCompose(response -> {
+                List<Response> responses = response.getResponses();
+                if (responses == null || responses.size() != requests.size())
+                    return sendOneByOne(); // A server without batches
+                List<Response> results = new ArrayList<>(responses.size());
+                for (int i = 0; i < responses.size(); i++) {
+                    Response result = convert(responses.get(i), responseClasses.get(i));
+                    if (requests.get(i).getType() == Request.RequestType.LOGIN)
+                        onLogin(requests.get(i).getPayload(User.class), result);
+                    results.add(result);
+                }
+                return CompletableFuture.completedFuture(results);
+            });
+        }
+
+        /**
+         * Sends the batch and waits for the responses, like {@link SocketClient#sendRequest}.
+         *
+         * @return The response of each request, in order, or null in case of errors.
+         */
+        public List<Response> sendRequest() {
+            CompletableFuture<List<Response>> future = send();
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(false);
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                System.err.println(e.getCause().getMessage());
+                return null;
+            }
+        }
+
+        private CompletableFuture<List<Response>> sendOneByOne() {
+            CompletableFuture<List<Response>> results = CompletableFuture.completedFuture(new ArrayList<>());
+            for (int i = 0; i < requests.size(); i++) {
+                Request request = requests.get(i);
+                Class<? extends Response> responseClass = responseClasses.get(i);
+                results = results.thenCompose(list -> SocketClient.this.send(request, responseClass)
+                        .thenApply(result -> {
+                            list.add(result);
+                            return list;
+                        }));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Gives a response of a batch the class the caller expects, e.g. a FAILURE answer to REQUEST_MOVE, which is a
+     * plain Response, becomes a GamingResponse without a move.
+     */
+    private static Response convert(Response response, Class<? extends Response> responseClass) {
+        if (response == null)
+            response = new Response(Response.ResponseStatus.FAILURE, "No response");
+        if (responseClass.isInstance(response))
+            return response;
+        Response converted;
+        if (responseClass == GamingResponse.class) {
+            converted = new GamingResponse(response.getStatus(), response.getMessage(), -1, false);
+        } else if (responseClass == PairingResponse.class) {
+            converted = new PairingResponse();
+            converted.setStatus(response.getStatus());
+            converted.setMessage(response.getMessage());
+        } else {
+            return response;
+        }
+        converted.setId(response.getId());
+        return converted;
+    }
+
+    /**
+     * Reader thread of one connection: decodes every incoming frame and completes the future of the request it
+     * answers, until the connection breaks.
+     *
+     * @param current The connection.
+     * @param input Its input stream.
+     * @param useBinary Whether it uses the binary format.
+     */
+    private void readResponses(Socket current, DataInputStream input, boolean useBinary) {
+        try {
+            if (useBinary) {
+                readBinaryResponses(input);
+            } else {
+                readJsonResponses(input);
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(current, e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    private void readJsonResponses(DataInputStream input) throws IOException {
+        while (true) {
+            try {
+                router.dispatchJson(input.readUTF());
+            } catch (SocketTimeoutException e) {
+                checkStalled(e);
+            }
+        }
+    }
+
+    private void readBinaryResponses(DataInputStream input) throws IOException {
+        while (true) {
+            try {
+                router.dispatchBinary(BinaryCodec.readFrame(input));
+            } catch (SocketTimeoutException e) {
+                checkStalled(e);
+            }
+        }
+    }
+
+    /**
+     * Decides what a read timeout means: an idle connection if nothing is outstanding, else a stalled server.
+     *
+     * @param e The timeout.
+     * @throws SocketTimeoutException If requests are outstanding, to close the connection.
+     */
+    private void checkStalled(SocketTimeoutException e) throws SocketTimeoutException {
+        if (router.hasPending())
+            throw e;
+    }
+
+    /**
+     * Closes a broken connection and fails every outstanding request, unless it was already replaced, then starts
+     * opening it again. The requests are failed after releasing writeLock, since the stages that depend on them
+     * may block or send again; callers must not hold writeLock either.
+     *
+     * @param failed The connection that broke.
+     * @param e The error that broke the connection.
+     */
+    private void fail(Socket failed, IOException e) {
+        Runnable failure;
+        synchronized (writeLock) {
+            if (socket != failed) {
+                return;
+            }
             System.err.println(e.getMessage());
-            close();
-            return null;
+            disconnect();
+            failure = router.takeAll(e);
+        }
+        failure.run();
+        connection();
+    }
+
+    /**
+     * Reports the bytes read from the socket to {@link Metrics}, below the buffering so that it is once per read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                Metrics.getRegistry().recordBytesIn(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte [] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                Metrics.getRegistry().recordBytesIn(count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Reports the bytes written to the socket to {@link Metrics}, below the buffering so that it is once per flush.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            Metrics.getRegistry().recordBytesOut(1);
+        }
+
+        @Override
+        public void write(byte [] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            Metrics.getRegistry().recordBytesOut(length);
         }
     }
 }
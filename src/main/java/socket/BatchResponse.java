@@ -0,0 +1,50 @@
+package socket;
+
+import java.util.List;
+
+/**
+ *  Subclass of {@link Response}
+ *	This response class is used in response to clients request with type {@link Request.RequestType#BATCH}
+ */
+public class BatchResponse extends Response {
+
+    /**
+     * The response of each sub-request, in the order of the request: a {@link Response}, {@link GamingResponse} or
+     * {@link PairingResponse}, as if the sub-request had been sent alone. Null if the batch itself failed
+     */
+    private List<Response> responses;
+
+    /**
+     * Default constructor, calls parent's class constructor
+     */
+    public BatchResponse() {
+        super();
+    }
+
+    /**
+     *
+     * @param status Status to indicate success or failure of the request
+     * @param message Explanation of the success or failure of the request
+     * @param responses The response of each sub-request, in the order of the request
+     */
+    public BatchResponse(ResponseStatus status, String message, List<Response> responses) {
+        super(status, message);
+        this.responses = responses;
+    }
+
+    /**
+     * Getter function for {@link #responses} attribute
+     * @return responses
+     */
+    public List<Response> getResponses() {
+        return responses;
+    }
+
+    /**
+     * Setter function for {@link #responses} attribute
+     * @param responses The response of each sub-request, in the order of the request
+     */
+    public void setResponses(List<Response> responses) {
+        this.responses = responses;
+    }
+}
@@ -0,0 +1,551 @@
+package socket;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.Event;
+import model.User;
+
+/**
+ * Compact binary encoding of {@link Request}, {@link Response}, {@link GamingResponse}, {@link PairingResponse} and
+ * {@link BatchResponse}, used instead of JSON-over-writeUTF once both sides agreed on it with
+ * {@link Request.RequestType#NEGOTIATE_FORMAT}.
+ * A frame is a varint length followed by the payload. The payload starts with a type byte, then:
+ * <ul>
+ *     <li>Request: zigzag varint id, request type (ordinal + 1, 0 for null), then a payload kind byte and the
+ *     payload: the data string for {@link #DATA_STRING}, a signed byte for an Integer that fits one, e.g. the cell of
+ *     a SEND_MOVE, a zigzag varint for a larger Integer, e.g. a REQUEST_MOVE sequence, a zigzag varlong for a
+ *     Long, e.g. an UPDATE_PAIRING version, a string for a String, e.g. a SEND_INVITATION username, a user for the
+ *     User of a LOGIN or REGISTER, or, for the Request[] of a BATCH, a varint of the number of requests + 1 followed
+ *     by each request as a string of its payload bytes (empty for null), like the responses of a BatchResponse.
+ *     The requests of a batch are not batches themselves, so one nested in a batch is sent as its data string</li>
+ *     <li>Response: zigzag varint id, status (ordinal + 1, 0 for null), message string</li>
+ *     <li>GamingResponse: the Response fields, then the move as one signed byte and active as one byte, then the
+ *     sequence as a varint and a varint of the number of moves + 1 (0 for null) followed by one byte per move.
+ *     The last two are optional when decoding, for peers that do not send them</li>
+ *     <li>BatchResponse: the Response fields, then a varint of the number of responses + 1 (0 for null), then each
+ *     response as a string of its payload bytes (empty for null)</li>
+ *     <li>PairingResponse: the Response fields, then notModified as one byte, the version as a varint, the available
+ *     users and the removed usernames as lists, then the invitation and the invitation response as events</li>
+ * </ul>
+ * Strings are a varint of the UTF-8 length + 1 (0 for null) followed by the bytes. Lists are a varint of the size + 1
+ * (0 for null) followed by the items. A user is its username, password and display name strings, then online as one
+ * byte; an event is one byte, 0 for null, then its zigzag varint id, sender and opponent strings, status (ordinal + 1,
+ * 0 for null), turn string and zigzag varint move.
+ * Enums are sent by ordinal, so new values must only be added at the end.
+ */
+public final class BinaryCodec {
+    /**
+     * Value of {@link Request#getData()} when negotiating this format
+     */
+    public static final String FORMAT = "binary-v1";
+
+    /**
+     * Largest accepted payload, to reject corrupt lengths before allocating
+     */
+    public static final int MAX_FRAME = 1 << 24;
+
+    static final byte REQUEST = 1;
+    static final byte RESPONSE = 2;
+    static final byte GAMING_RESPONSE = 3;
+    static final byte BATCH_RESPONSE = 4;
+    static final byte PAIRING_RESPONSE = 5;
+
+    static final byte DATA_STRING = 0;
+    static final byte PAYLOAD_BYTE = 1;
+    static final byte PAYLOAD_INT = 2;
+    static final byte PAYLOAD_LONG = 3;
+    static final byte PAYLOAD_STRING = 4;
+    static final byte PAYLOAD_USER = 5;
+    static final byte PAYLOAD_REQUESTS = 6;
+
+    private static final Request.RequestType [] REQUEST_TYPES = Request.RequestType.values();
+    private static final Response.ResponseStatus [] STATUSES = Response.ResponseStatus.values();
+    private static final Event.EventStatus [] EVENT_STATUSES = Event.EventStatus.values();
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encodes a request payload.
+     *
+     * @param request The request to encode
+     * @return The payload, without the frame length
+     */
+    public static byte [] encode(Request request) {
+        return encode(request, false);
+    }
+
+    private static byte [] encode(Request request, boolean nested) {
+        Object payload = request.peekPayload();
+        String data = payload == null ? request.getData() : null;
+        Writer writer = new Writer(16 + (data == null ? 0 : data.length() * 3));
+        writer.writeByte(REQUEST);
+        writer.writeVarint(zigzag(request.getId()));
+        writer.writeByte(request.getType() == null ? 0 : request.getType().ordinal() + 1);
+        if (payload instanceof Long) {
+            writer.writeByte(PAYLOAD_LONG);
+            writer.writeVarlong(zigzag((Long) payload));
+        } else if (payload instanceof Integer) {
+            int value = (Integer) payload;
+            if (value == (byte) value) {
+                writer.writeByte(PAYLOAD_BYTE);
+                writer.writeByte(value);
+            } else {
+                writer.writeByte(PAYLOAD_INT);
+                writer.writeVarint(zigzag(value));
+            }
+        } else if (payload instanceof String) {
+            writer.writeByte(PAYLOAD_STRING);
+            writer.writeString((String) payload);
+        } else if (payload instanceof User) {
+            writer.writeByte(PAYLOAD_USER);
+            writeUser(writer, (User) payload);
+        } else if (payload instanceof Request [] && !nested) {
+            Request [] requests = (Request []) payload;
+            writer.writeByte(PAYLOAD_REQUESTS);
+            writer.writeVarint(requests.length + 1);
+            for (Request item : requests)
+                writer.writeBytes(item == null ? new byte[0] : encode(item, true));
+        } else {
+            writer.writeByte(DATA_STRING);
+            writer.writeString(payload == null ? data : request.getData());
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes a response payload, with the fields of its subclass if it is a {@link GamingResponse},
+     * {@link PairingResponse} or {@link BatchResponse}.
+     *
+     * @param response The response to encode
+     * @return The payload, without the frame length
+     */
+    public static byte [] encode(Response response) {
+        Writer writer = new Writer(16 + (response.getMessage() == null ? 0 : response.getMessage().length() * 3));
+        boolean gaming = response instanceof GamingResponse;
+        boolean batch = response instanceof BatchResponse;
+        boolean pairing = response instanceof PairingResponse;
+        writer.writeByte(gaming ? GAMING_RESPONSE : batch ? BATCH_RESPONSE : pairing ? PAIRING_RESPONSE : RESPONSE);
+        writer.writeVarint(zigzag(response.getId()));
+        writer.writeByte(response.getStatus() == null ? 0 : response.getStatus().ordinal() + 1);
+        writer.writeString(response.getMessage());
+        if (gaming) {
+            GamingResponse gamingResponse = (GamingResponse) response;
+            writer.writeByte(gamingResponse.getMove());
+            writer.writeByte(gamingResponse.isActive() ? 1 : 0);
+            writer.writeVarint(gamingResponse.getSequence());
+            List<Integer> moves = gamingResponse.getMoves();
+            writer.writeVarint(moves == null ? 0 : moves.size() + 1);
+            if (moves != null) {
+                for (Integer move : moves)
+                    writer.writeByte(move);
+            }
+        }
+        if (batch) {
+            List<Response> responses = ((BatchResponse) response).getResponses();
+            writer.writeVarint(responses == null ? 0 : responses.size() + 1);
+            if (responses != null) {
+                for (Response item : responses)
+                    writer.writeBytes(item == null ? new byte[0] : encode(item));
+            }
+        }
+        if (pairing) {
+            PairingResponse pairingResponse = (PairingResponse) response;
+            writer.writeByte(pairingResponse.isNotModified() ? 1 : 0);
+            writer.writeVarlong(pairingResponse.getVersion());
+            List<User> users = pairingResponse.getAvailableUsers();
+            writer.writeVarint(users == null ? 0 : users.size() + 1);
+            if (users != null) {
+                for (User user : users)
+                    writeUser(writer, user);
+            }
+            List<String> removed = pairingResponse.getRemovedUsers();
+            writer.writeVarint(removed == null ? 0 : removed.size() + 1);
+            if (removed != null) {
+                for (String username : removed)
+                    writer.writeString(username);
+            }
+            writeEvent(writer, pairingResponse.getInvitation());
+            writeEvent(writer, pairingResponse.getInvitationResponse());
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes a request payload.
+     *
+     * @param payload The payload of a request frame
+     * @return The request
+     * @throws IOException If the payload is not a valid request
+     */
+    public static Request decodeRequest(byte [] payload) throws IOException {
+        return decodeRequest(payload, false);
+    }
+
+    private static Request decodeRequest(byte [] payload, boolean nested) throws IOException {
+        Reader reader = new Reader(payload);
+        if (reader.readByte() != REQUEST)
+            throw new IOException("Not a request frame");
+        Request request = new Request();
+        request.setId(unzigzag(reader.readVarint()));
+        int type = reader.readByte();
+        request.setType(type == 0 ? null : REQUEST_TYPES[checkIndex(type - 1, REQUEST_TYPES.length)]);
+        byte kind = reader.readByte();
+        if (kind == DATA_STRING) {
+            request.setData(reader.readString());
+            return request;
+        }
+        Object value;
+        if (kind == PAYLOAD_BYTE)
+            value = (int) reader.readByte();
+        else if (kind == PAYLOAD_INT)
+            value = unzigzag(reader.readVarint());
+        else if (kind == PAYLOAD_LONG)
+            value = unzigzag(reader.readVarlong());
+        else if (kind == PAYLOAD_STRING)
+            value = reader.readString();
+        else if (kind == PAYLOAD_USER)
+            value = readUser(reader);
+        else if (kind == PAYLOAD_REQUESTS && !nested)
+            value = readRequests(reader);
+        else
+            throw new IOException("Unknown payload kind " + kind);
+        try {
+            request.setPayload(value);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return request;
+    }
+
+    /**
+     * Decodes a response payload.
+     *
+     * @param payload The payload of a response frame
+     * @return A {@link GamingResponse}, {@link PairingResponse}, {@link BatchResponse} or plain {@link Response},
+     * depending on the frame type
+     * @throws IOException If the payload is not a valid response
+     */
+    public static Response decodeResponse(byte [] payload) throws IOException {
+        Reader reader = new Reader(payload);
+        byte type = reader.readByte();
+        if (type != RESPONSE && type != GAMING_RESPONSE && type != BATCH_RESPONSE && type != PAIRING_RESPONSE)
+            throw new IOException("Not a response frame");
+        Response response = type == GAMING_RESPONSE ? new GamingResponse()
+                : type == BATCH_RESPONSE ? new BatchResponse()
+                : type == PAIRING_RESPONSE ? new PairingResponse() : new Response();
+        response.setId(unzigzag(reader.readVarint()));
+        int status = reader.readByte();
+        response.setStatus(status == 0 ? null : STATUSES[checkIndex(status - 1, STATUSES.length)]);
+        response.setMessage(reader.readString());
+        if (type == GAMING_RESPONSE) {
+            GamingResponse gamingResponse = (GamingResponse) response;
+            gamingResponse.setMove(reader.readByte());
+            gamingResponse.setActive(reader.readByte() != 0);
+            if (reader.hasRemaining()) {
+                gamingResponse.setSequence(reader.readVarint());
+                int count = reader.readVarint() - 1;
+                if (count >= 0) {
+                    List<Integer> moves = new ArrayList<>(Math.min(count, payload.length));
+                    for (int i = 0; i < count; i++)
+                        moves.add((int) reader.readByte());
+                    gamingResponse.setMoves(moves);
+                }
+            }
+        }
+        if (type == BATCH_RESPONSE) {
+            int count = reader.readVarint() - 1;
+            if (count > Request.MAX_BATCH)
+                throw new IOException("Too many responses: " + count);
+            if (count >= 0) {
+                List<Response> responses = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    byte [] item = reader.readBytes();
+                    responses.add(item.length == 0 ? null : decodeResponse(item));
+                }
+                ((BatchResponse) response).setResponses(responses);
+            }
+        }
+        if (type == PAIRING_RESPONSE) {
+            PairingResponse pairingResponse = (PairingResponse) response;
+            pairingResponse.setNotModified(reader.readByte() != 0);
+            pairingResponse.setVersion(reader.readVarlong());
+            int count = reader.readVarint() - 1;
+            if (count >= 0) {
+                List<User> users = new ArrayList<>(Math.min(count, payload.length));
+                for (int i = 0; i < count; i++)
+                    users.add(readUser(reader));
+                pairingResponse.setAvailableUsers(users);
+            }
+            count = reader.readVarint() - 1;
+            if (count >= 0) {
+                List<String> removed = new ArrayList<>(Math.min(count, payload.length));
+                for (int i = 0; i < count; i++)
+                    removed.add(reader.readString());
+                pairingResponse.setRemovedUsers(removed);
+            }
+            pairingResponse.setInvitation(readEvent(reader));
+            pairingResponse.setInvitationResponse(readEvent(reader));
+        }
+        return response;
+    }
+
+    private static Request [] readRequests(Reader reader) throws IOException {
+        int count = reader.readVarint() - 1;
+        if (count < 0 || count > Request.MAX_BATCH)
+            throw new IOException("Batches hold 0 to " + Request.MAX_BATCH + " requests: " + count);
+        Request [] requests = new Request[count];
+        for (int i = 0; i < count; i++) {
+            byte [] item = reader.readBytes();
+            requests[i] = item.length == 0 ? null : decodeRequest(item, true);
+        }
+        return requests;
+    }
+
+    private static void writeUser(Writer writer, User user) {
+        writer.writeString(user.getUsername());
+        writer.writeString(user.getPassword());
+        writer.writeString(user.getDisplayName());
+        writer.writeByte(Boolean.TRUE.equals(user.isOnline()) ? 1 : 0);
+    }
+
+    private static User readUser(Reader reader) throws IOException {
+        return new User(reader.readString(), reader.readString(), reader.readString(), reader.readByte() != 0);
+    }
+
+    private static void writeEvent(Writer writer, Event event) {
+        if (event == null) {
+            writer.writeByte(0);
+            return;
+        }
+        writer.writeByte(1);
+        writer.writeVarint(zigzag(event.getEventId()));
+        writer.writeString(event.getSender());
+        writer.writeString(event.getOpponent());
+        writer.writeByte(event.getStatus() == null ? 0 : event.getStatus().ordinal() + 1);
+        writer.writeString(event.getTurn());
+        writer.writeVarint(zigzag(event.getMove()));
+    }
+
+    private static Event readEvent(Reader reader) throws IOException {
+        if (reader.readByte() == 0)
+            return null;
+        int eventId = unzigzag(reader.readVarint());
+        String sender = reader.readString();
+        String opponent = reader.readString();
+        int status = reader.readByte();
+        Event.EventStatus eventStatus = status == 0 ? null
+                : EVENT_STATUSES[checkIndex(status - 1, EVENT_STATUSES.length)];
+        String turn = reader.readString();
+        return new Event(eventId, sender, opponent, eventStatus, turn, unzigzag(reader.readVarint()));
+    }
+
+    /**
+     * Reads the correlation id of a request or response payload without decoding the rest.
+     *
+     * @param payload The payload of a frame
+     * @return The id
+     * @throws IOException If the payload is truncated
+     */
+    public static int peekId(byte [] payload) throws IOException {
+        Reader reader = new Reader(payload);
+        reader.readByte();
+        return unzigzag(reader.readVarint());
+    }
+
+    /**
+     * Writes a frame: the varint payload length, then the payload. The stream is not flushed.
+     *
+     * @param output The stream to write to
+     * @param payload The encoded payload
+     * @throws IOException If the stream fails
+     */
+    public static void writeFrame(DataOutputStream output, byte [] payload) throws IOException {
+        int length = payload.length;
+        while ((length & ~0x7F) != 0) {
+            output.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        output.writeByte(length);
+        output.write(payload);
+    }
+
+    /**
+     * Reads a frame written by {@link #writeFrame(DataOutputStream, byte[])}.
+     *
+     * @param input The stream to read from
+     * @return The payload
+     * @throws IOException If the stream fails or the length is invalid
+     */
+    public static byte [] readFrame(DataInputStream input) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28)
+                throw new IOException("Malformed frame length");
+            int b = input.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+        }
+        if (length < 0 || length > MAX_FRAME)
+            throw new IOException("Frame too large: " + length);
+        byte [] payload = new byte[length];
+        input.readFully(payload);
+        return payload;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int checkIndex(int index, int length) throws IOException {
+        if (index < 0 || index >= length) // Negative for bytes of 0x80 and more, which are read signed
+            throw new IOException("Unknown enum value " + index);
+        return index;
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    private static final class Writer {
+        private byte [] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte [] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeBytes(byte [] value) {
+            writeVarint(value.length + 1);
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, position, value.length);
+            position += value.length;
+        }
+
+        byte [] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    /**
+     * Bounds-checked input buffer.
+     */
+    private static final class Reader {
+        private final byte [] buffer;
+        private int position;
+
+        Reader(byte [] buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean hasRemaining() {
+            return position < buffer.length;
+        }
+
+        byte readByte() throws IOException {
+            if (position >= buffer.length)
+                throw new IOException("Truncated frame");
+            return buffer[position++];
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int length = readVarint() - 1;
+            if (length < 0)
+                return null;
+            if (length > buffer.length - position)
+                throw new IOException("Truncated frame");
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        byte [] readBytes() throws IOException {
+            int length = readVarint() - 1;
+            if (length < 0 || length > buffer.length - position)
+                throw new IOException("Truncated frame");
+            byte [] value = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package socket;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Framing of the protocol on byte buffers, for non-blocking transports that can not use
+ * DataInputStream.readUTF and {@link BinaryCodec#readFrame}: JSON frames as written by writeUTF
+ * (a 2-byte length, then modified UTF-8) and {@link BinaryCodec} frames (a varint length, then the payload).
+ */
+public final class Frames {
+    /**
+     * Largest JSON frame payload, the limit of writeUTF
+     */
+    public static final int MAX_JSON = 0xFFFF;
+
+    /**
+     * Receives the frames found by {@link #parse(ByteBuffer, Handler)}.
+     */
+    public interface Handler {
+        /**
+         * Tells which format the next frame uses. It may change between two frames, e.g. after
+         * {@link Request.RequestType#NEGOTIATE_FORMAT}.
+         *
+         * @return true for {@link BinaryCodec} frames, false for JSON frames.
+         */
+        boolean isBinary();
+
+        /**
+         * Handles a JSON frame.
+         *
+         * @param json The decoded frame.
+         * @throws IOException If the frame must close the connection.
+         */
+        void onJson(String json) throws IOException;
+
+        /**
+         * Handles a binary frame.
+         *
+         * @param payload The payload of the frame.
+         * @throws IOException If the frame must close the connection.
+         */
+        void onBinary(byte [] payload) throws IOException;
+    }
+
+    private Frames() {
+    }
+
+    /**
+     * Hands every complete frame of a buffer to a handler.
+     *
+     * @param buffer Received bytes, in read mode. Left at the start of the first incomplete frame.
+     * @param handler The handler of the frames.
+     * @return The size of the incomplete frame (or a lower bound while its header is incomplete), 0 if there is none.
+     * @throws IOException If a frame is malformed or the handler fails.
+     */
+    public static int parse(ByteBuffer buffer, Handler handler) throws IOException {
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            if (handler.isBinary()) {
+                int length = 0;
+                int shift = 0;
+                boolean complete = false;
+                while (buffer.hasRemaining() && !complete) {
+                    if (shift > 28)
+                        throw new IOException("Malformed frame length");
+                    int b = buffer.get();
+                    length |= (b & 0x7F) << shift;
+                    shift += 7;
+                    complete = (b & 0x80) == 0;
+                }
+                if (!complete) {
+                    buffer.position(start);
+                    return buffer.remaining() + 1;
+                }
+                if (length < 0 || length > BinaryCodec.MAX_FRAME)
+                    throw new IOException("Frame too large: " + length);
+                if (buffer.remaining() < length) {
+                    int header = buffer.position() - start;
+                    buffer.position(start);
+                    return header + length;
+                }
+                byte [] payload = new byte[length];
+                buffer.get(payload);
+                handler.onBinary(payload);
+            } else {
+                if (buffer.remaining() < 2)
+                    return 2;
+                int length = buffer.getShort(start) & 0xFFFF;
+                if (buffer.remaining() < 2 + length)
+                    return 2 + length;
+                buffer.position(start + 2);
+                handler.onJson(readUtf(buffer, length));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Encodes a JSON frame, as writeUTF does.
+     *
+     * @param json The frame content.
+     * @return The 2-byte length followed by the modified UTF-8 bytes.
+     * @throws UTFDataFormatException If the encoded string is longer than {@link #MAX_JSON} bytes.
+     */
+    public static byte [] encodeJson(String json) throws UTFDataFormatException {
+        int length = utfLength(json);
+        if (length > MAX_JSON)
+            throw new UTFDataFormatException("Frame too long: " + length + " bytes");
+        byte [] frame = new byte[2 + length];
+        frame[0] = (byte) (length >>> 8);
+        frame[1] = (byte) length;
+        int position = 2;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                frame[position++] = (byte) c;
+            } else if (c > 0x07FF) {
+                frame[position++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                frame[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                frame[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                frame[position++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                frame[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Encodes a binary frame, as {@link BinaryCodec#writeFrame} does.
+     *
+     * @param payload The encoded payload.
+     * @return The varint length followed by the payload.
+     */
+    public static byte [] encodeBinary(byte [] payload) {
+        int header = 1;
+        for (int length = payload.length; (length & ~0x7F) != 0; length >>>= 7)
+            header++;
+        byte [] frame = new byte[header + payload.length];
+        int length = payload.length;
+        int position = 0;
+        while ((length & ~0x7F) != 0) {
+            frame[position++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        frame[position++] = (byte) length;
+        System.arraycopy(payload, 0, frame, position, payload.length);
+        return frame;
+    }
+
+    /**
+     * Length of a string in modified UTF-8, as written by writeUTF.
+     *
+     * @param value The string.
+     * @return The number of bytes, without the 2-byte length.
+     */
+    public static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return length;
+    }
+
+    /**
+     * Decodes a modified UTF-8 string, as read by readUTF.
+     *
+     * @param buffer The buffer, positioned at the first byte of the string.
+     * @param length The number of bytes of the string.
+     * @return The string.
+     * @throws UTFDataFormatException If the bytes are not valid modified UTF-8.
+     */
+    public static String readUtf(ByteBuffer buffer, int length) throws UTFDataFormatException {
+        char [] chars = new char[length];
+        int count = 0;
+        int end = buffer.position() + length;
+        while (buffer.position() < end) {
+            int a = buffer.get() & 0xFF;
+            if (a < 0x80) {
+                chars[count++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0 && buffer.position() < end) {
+                int b = buffer.get() & 0xFF;
+                if ((b & 0xC0) != 0x80)
+                    throw new UTFDataFormatException("Malformed input");
+                chars[count++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+            } else if ((a & 0xF0) == 0xE0 && end - buffer.position() >= 2) {
+                int b = buffer.get() & 0xFF;
+                int c = buffer.get() & 0xFF;
+                if ((b & 0xC0) != 0x80 || (c & 0xC0) != 0x80)
+                    throw new UTFDataFormatException("Malformed input");
+                chars[count++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+            } else {
+                throw new UTFDataFormatException("Malformed input");
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
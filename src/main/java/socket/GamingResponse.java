@@ -1,5 +1,7 @@
 package socket;
 
+import java.util.List;
+
 import model.Event;
 
 /**
@@ -18,6 +20,18 @@ public class GamingResponse extends Response {
      */
     boolean active;
 
+    /**
+     * Number of moves played in the game, that is the sequence number of its last move, the first being 1.
+     * Only set in answer to a {@link Request.RequestType#REQUEST_MOVE} with a sequence number, and in pushed moves
+     */
+    private int sequence;
+
+    /**
+     * The moves of both players after the sequence number sent with the request, oldest first, up to
+     * {@link #sequence}. Null from servers without move logs, and for requests without a sequence number
+     */
+    private List<Integer> moves;
+
     /**
      * Default constructor, calls parent's class constructor
      */
@@ -69,4 +83,36 @@ public class GamingResponse extends Response {
     public void setActive(boolean active) {
         this.active = active;
     }
+
+    /**
+     * Getter function for {@link #sequence} attribute
+     * @return sequence
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Setter function for {@link #sequence} attribute
+     * @param sequence Number of moves played in the game
+     */
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Getter function for {@link #moves} attribute
+     * @return moves
+     */
+    public List<Integer> getMoves() {
+        return moves;
+    }
+
+    /**
+     * Setter function for {@link #moves} attribute
+     * @param moves The moves after the sequence number sent with the request, oldest first
+     */
+    public void setMoves(List<Integer> moves) {
+        this.moves = moves;
+    }
 }
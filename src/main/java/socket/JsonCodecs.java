@@ -0,0 +1,653 @@
+package socket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import model.Event;
+import model.User;
+
+/**
+ * Shared JSON configuration of the protocol: a {@link Gson} with a streaming {@link TypeAdapter} for
+ * {@link Request}, {@link Response}, {@link GamingResponse}, {@link PairingResponse}, {@link BatchResponse},
+ * {@link Event} and {@link User}.
+ * The adapters read and write the fields through the getters and setters, so no reflection is involved
+ * and the JSON keeps the field names even when R8 renames the fields.
+ * Apart from the request id, which is left out while unset, the output is the same as Gson's reflective binding with
+ * serializeNulls: every field is written, null included.
+ * When reading, unknown fields are skipped and unknown enum names become null, as with the reflective binding.
+ * A {@link Request} with a typed payload (see {@link Request.RequestType#getPayloadType()}) is written by
+ * {@link #gson()} with "data" as the serialized string, e.g. {@code "data":"4"} for SEND_MOVE, which is what servers
+ * without typed payloads read; the payload is serialized once and kept. Servers that accepted {@link #INLINE_FORMAT}
+ * in {@link Request.RequestType#NEGOTIATE_FORMAT} get the payload encoded once, inline, e.g. {@code "data":4}, from
+ * {@link #inlineGson()}. Both forms are read by either instance.
+ * The responses of a {@link BatchResponse} carry no class name: each one is read as a {@link PairingResponse} if it
+ * has pairing fields, a {@link GamingResponse} if it has a move, and a plain {@link Response} otherwise.
+ */
+public final class JsonCodecs {
+    /**
+     * Name of the JSON format with inline request payloads, for {@link Request.RequestType#NEGOTIATE_FORMAT}
+     */
+    public static final String INLINE_FORMAT = "json-inline";
+
+    /**
+     * Formats offered by clients in {@link Request.RequestType#NEGOTIATE_FORMAT}, in order of preference
+     */
+    public static final String OFFERED_FORMATS = BinaryCodec.FORMAT + "," + INLINE_FORMAT;
+
+    private static final Map<String, Request.RequestType> REQUEST_TYPES = names(Request.RequestType.values());
+    private static final Map<String, Response.ResponseStatus> STATUSES = names(Response.ResponseStatus.values());
+    private static final Map<String, Event.EventStatus> EVENT_STATUSES = names(Event.EventStatus.values());
+
+    private static final GamingResponseAdapter GAMING_RESPONSE = new GamingResponseAdapter();
+    private static final PairingResponseAdapter PAIRING_RESPONSE = new PairingResponseAdapter();
+    private static final ResponseAdapter RESPONSE = new ResponseAdapter();
+    private static final BatchResponseAdapter BATCH_RESPONSE = new BatchResponseAdapter();
+    private static final EventAdapter EVENT = new EventAdapter();
+    private static final UserAdapter USER = new UserAdapter();
+
+    private static final Gson GSON = create(false);
+    private static final Gson INLINE_GSON = create(true);
+
+    private JsonCodecs() {
+    }
+
+    private static Gson create(boolean inlinePayloads) {
+        return new GsonBuilder()
+                .serializeNulls()
+                .registerTypeAdapter(Request.class, new RequestAdapter(inlinePayloads).nullSafe())
+                .registerTypeAdapter(Response.class, RESPONSE.nullSafe())
+                .registerTypeAdapter(GamingResponse.class, GAMING_RESPONSE.nullSafe())
+                .registerTypeAdapter(PairingResponse.class, PAIRING_RESPONSE.nullSafe())
+                .registerTypeAdapter(BatchResponse.class, BATCH_RESPONSE.nullSafe())
+                .registerTypeAdapter(Event.class, EVENT.nullSafe())
+                .registerTypeAdapter(User.class, USER.nullSafe())
+                .create();
+    }
+
+    /**
+     * Gets the shared Gson instance. It is thread-safe and used for every frame and payload of the protocol, apart
+     * from the requests sent to servers that accepted {@link #INLINE_FORMAT}.
+     *
+     * @return The Gson instance with the protocol adapters registered.
+     */
+    public static Gson gson() {
+        return GSON;
+    }
+
+    /**
+     * Gets the shared Gson instance that writes request payloads inline, for servers that accepted
+     * {@link #INLINE_FORMAT}. It reads the same as {@link #gson()}.
+     *
+     * @return The Gson instance with the protocol adapters registered.
+     */
+    public static Gson inlineGson() {
+        return INLINE_GSON;
+    }
+
+    /**
+     * Gets the Gson instance that writes the requests of a connection.
+     *
+     * @param format The format the server accepted in {@link Request.RequestType#NEGOTIATE_FORMAT}, or null.
+     * @return {@link #inlineGson()} for {@link #INLINE_FORMAT}, {@link #gson()} otherwise.
+     */
+    public static Gson gson(String format) {
+        return INLINE_FORMAT.equals(format) ? INLINE_GSON : GSON;
+    }
+
+    /**
+     * Reads the format a server chose in its answer to a {@link Request.RequestType#NEGOTIATE_FORMAT} that offered
+     * {@link #OFFERED_FORMATS}.
+     *
+     * @param response The answer, or null if there was none.
+     * @return {@link BinaryCodec#FORMAT}, {@link #INLINE_FORMAT}, or null if the connection stays on JSON with
+     * payloads as strings. A SUCCESS without a message accepted the first format offered.
+     */
+    public static String negotiatedFormat(Response response) {
+        if (response == null || response.getStatus() != Response.ResponseStatus.SUCCESS)
+            return null;
+        String format = response.getMessage();
+        if (format == null || BinaryCodec.FORMAT.equals(format))
+            return BinaryCodec.FORMAT;
+        return INLINE_FORMAT.equals(format) ? INLINE_FORMAT : null;
+    }
+
+    private static <E extends Enum<E>> Map<String, E> names(E [] values) {
+        Map<String, E> names = new HashMap<>();
+        for (E value : values)
+            names.put(value.name(), value);
+        return names;
+    }
+
+    private static void writeEnum(JsonWriter out, Enum<?> value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value.name());
+        }
+    }
+
+    private static <E> E readEnum(JsonReader in, Map<String, E> names) throws IOException {
+        String name = readString(in);
+        return name == null ? null : names.get(name);
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (in.peek() == JsonToken.BOOLEAN)
+            return Boolean.toString(in.nextBoolean());
+        return in.nextString();
+    }
+
+    private static int readInt(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextInt();
+    }
+
+    private static long readLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextLong();
+    }
+
+    private static boolean readBoolean(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return false;
+        }
+        if (token == JsonToken.STRING)
+            return Boolean.parseBoolean(in.nextString());
+        return in.nextBoolean();
+    }
+
+    /**
+     * Writes a typed request payload inline.
+     */
+    @SuppressWarnings("unchecked")
+    private static void writePayload(JsonWriter out, Object payload) throws IOException {
+        if (payload instanceof Integer) {
+            out.value(((Integer) payload).intValue());
+        } else if (payload instanceof Long) {
+            out.value(((Long) payload).longValue());
+        } else if (payload instanceof String) {
+            out.value((String) payload);
+        } else {
+            // The requests of a BATCH are inline too
+            INLINE_GSON.getAdapter((Class<Object>) payload.getClass()).write(out, payload);
+        }
+    }
+
+    private static void setPayload(Request request, Object payload) {
+        try {
+            request.setPayload(payload);
+        } catch (IllegalArgumentException e) {
+            throw new JsonSyntaxException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tells the string form of a String payload (a serialized JSON string, quotes included) from the inline form.
+     */
+    private static boolean isQuoted(String data) {
+        return data.length() >= 2 && data.charAt(0) == '"' && data.charAt(data.length() - 1) == '"';
+    }
+
+    /**
+     * Reads the fields shared by {@link Response} and {@link GamingResponse}.
+     *
+     * @return true if the field was consumed.
+     */
+    private static boolean readResponseField(JsonReader in, String name, Response response) throws IOException {
+        switch (name) {
+            case "status":
+                response.setStatus(readEnum(in, STATUSES));
+                return true;
+            case "message":
+                response.setMessage(readString(in));
+                return true;
+            case "id":
+                response.setId(readInt(in));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void writeResponseFields(JsonWriter out, Response response) throws IOException {
+        out.name("status");
+        writeEnum(out, response.getStatus());
+        out.name("message").value(response.getMessage());
+        out.name("id").value(response.getId());
+    }
+
+    private static final class RequestAdapter extends TypeAdapter<Request> {
+        private final boolean inlinePayloads;
+
+        RequestAdapter(boolean inlinePayloads) {
+            this.inlinePayloads = inlinePayloads;
+        }
+
+        @Override
+        public void write(JsonWriter out, Request request) throws IOException {
+            out.beginObject();
+            out.name("type");
+            writeEnum(out, request.getType());
+            out.name("data");
+            // Requests built from a data string keep it, the server reads both forms
+            Object payload = inlinePayloads ? request.peekPayload() : null;
+            if (payload != null) {
+                writePayload(out, payload);
+            } else {
+                out.value(request.getData());
+            }
+            if (request.getId() != 0)
+                out.name("id").value(request.getId());
+            out.endObject();
+        }
+
+        @Override
+        public Request read(JsonReader in) throws IOException {
+            Request request = new Request();
+            String data = null;
+            Object payload = null;
+            JsonElement element = null; // Inline payload that came before the type.
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "type":
+                        request.setType(readEnum(in, REQUEST_TYPES));
+                        break;
+                    case "data":
+                        JsonToken token = in.peek();
+                        if (token == JsonToken.NULL || token == JsonToken.STRING) {
+                            data = readString(in);
+                        } else if (request.getType() != null && request.getType().getPayloadType() != null) {
+                            payload = GSON.getAdapter(request.getType().getPayloadType()).read(in);
+                        } else {
+                            element = JsonParser.parseReader(in);
+                        }
+                        break;
+                    case "id":
+                        request.setId(readInt(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            Class<?> payloadType = request.getType() == null ? null : request.getType().getPayloadType();
+            if (element != null) {
+                if (payloadType != null) {
+                    payload = GSON.fromJson(element, payloadType);
+                } else {
+                    data = element.toString();
+                }
+            }
+            if (payload != null) {
+                setPayload(request, payload);
+            } else if (data != null && payloadType == String.class && !isQuoted(data)) {
+                request.setPayload(data);
+            } else {
+                request.setData(data);
+            }
+            return request;
+        }
+    }
+
+    private static final class ResponseAdapter extends TypeAdapter<Response> {
+        @Override
+        public void write(JsonWriter out, Response response) throws IOException {
+            if (response instanceof GamingResponse) {
+                GAMING_RESPONSE.write(out, (GamingResponse) response);
+                return;
+            }
+            if (response instanceof PairingResponse) {
+                PAIRING_RESPONSE.write(out, (PairingResponse) response);
+                return;
+            }
+            if (response instanceof BatchResponse) {
+                BATCH_RESPONSE.write(out, (BatchResponse) response);
+                return;
+            }
+            out.beginObject();
+            writeResponseFields(out, response);
+            out.endObject();
+        }
+
+        @Override
+        public Response read(JsonReader in) throws IOException {
+            Response response = new Response();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!readResponseField(in, in.nextName(), response))
+                    in.skipValue();
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static final class GamingResponseAdapter extends TypeAdapter<GamingResponse> {
+        @Override
+        public void write(JsonWriter out, GamingResponse response) throws IOException {
+            out.beginObject();
+            out.name("move").value(response.getMove());
+            out.name("active").value(response.isActive());
+            out.name("sequence").value(response.getSequence());
+            out.name("moves");
+            if (response.getMoves() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Integer move : response.getMoves())
+                    out.value(move);
+                out.endArray();
+            }
+            writeResponseFields(out, response);
+            out.endObject();
+        }
+
+        @Override
+        public GamingResponse read(JsonReader in) throws IOException {
+            GamingResponse response = new GamingResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "move":
+                        response.setMove(readInt(in));
+                        break;
+                    case "active":
+                        response.setActive(readBoolean(in));
+                        break;
+                    case "sequence":
+                        response.setSequence(readInt(in));
+                        break;
+                    case "moves":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+                        List<Integer> moves = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext())
+                            moves.add(readInt(in));
+                        in.endArray();
+                        response.setMoves(moves);
+                        break;
+                    default:
+                        if (!readResponseField(in, name, response))
+                            in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static final class PairingResponseAdapter extends TypeAdapter<PairingResponse> {
+        @Override
+        public void write(JsonWriter out, PairingResponse response) throws IOException {
+            out.beginObject();
+            out.name("availableUsers");
+            if (response.getAvailableUsers() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (User user : response.getAvailableUsers())
+                    writeNullable(out, USER, user);
+                out.endArray();
+            }
+            out.name("removedUsers");
+            if (response.getRemovedUsers() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (String username : response.getRemovedUsers())
+                    out.value(username);
+                out.endArray();
+            }
+            out.name("version").value(response.getVersion());
+            out.name("notModified").value(response.isNotModified());
+            out.name("invitation");
+            writeNullable(out, EVENT, response.getInvitation());
+            out.name("invitationResponse");
+            writeNullable(out, EVENT, response.getInvitationResponse());
+            writeResponseFields(out, response);
+            out.endObject();
+        }
+
+        @Override
+        public PairingResponse read(JsonReader in) throws IOException {
+            PairingResponse response = new PairingResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "availableUsers":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+                        List<User> users = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext())
+                            users.add(readNullable(in, USER));
+                        in.endArray();
+                        response.setAvailableUsers(users);
+                        break;
+                    case "removedUsers":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+                        List<String> removed = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext())
+                            removed.add(readString(in));
+                        in.endArray();
+                        response.setRemovedUsers(removed);
+                        break;
+                    case "version":
+                        response.setVersion(readLong(in));
+                        break;
+                    case "notModified":
+                        response.setNotModified(readBoolean(in));
+                        break;
+                    case "invitation":
+                        response.setInvitation(readNullable(in, EVENT));
+                        break;
+                    case "invitationResponse":
+                        response.setInvitationResponse(readNullable(in, EVENT));
+                        break;
+                    default:
+                        if (!readResponseField(in, name, response))
+                            in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static final class BatchResponseAdapter extends TypeAdapter<BatchResponse> {
+        @Override
+        public void write(JsonWriter out, BatchResponse response) throws IOException {
+            out.beginObject();
+            out.name("responses");
+            if (response.getResponses() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Response item : response.getResponses())
+                    writeNullable(out, RESPONSE, item);
+                out.endArray();
+            }
+            writeResponseFields(out, response);
+            out.endObject();
+        }
+
+        @Override
+        public BatchResponse read(JsonReader in) throws IOException {
+            BatchResponse response = new BatchResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("responses")) {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        continue;
+                    }
+                    List<Response> responses = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext())
+                        responses.add(readAnyResponse(in));
+                    in.endArray();
+                    response.setResponses(responses);
+                } else if (!readResponseField(in, name, response)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+
+        private static Response readAnyResponse(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            JsonObject object = JsonParser.parseReader(in).getAsJsonObject();
+            if (object.has("availableUsers") || object.has("notModified"))
+                return PAIRING_RESPONSE.fromJsonTree(object);
+            if (object.has("move"))
+                return GAMING_RESPONSE.fromJsonTree(object);
+            if (object.has("responses"))
+                return BATCH_RESPONSE.fromJsonTree(object);
+            return RESPONSE.fromJsonTree(object);
+        }
+    }
+
+    private static <T> void writeNullable(JsonWriter out, TypeAdapter<T> adapter, T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            adapter.write(out, value);
+        }
+    }
+
+    private static <T> T readNullable(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return adapter.read(in);
+    }
+
+    private static final class EventAdapter extends TypeAdapter<Event> {
+        @Override
+        public void write(JsonWriter out, Event event) throws IOException {
+            out.beginObject();
+            out.name("eventId").value(event.getEventId());
+            out.name("sender").value(event.getSender());
+            out.name("opponent").value(event.getOpponent());
+            out.name("status");
+            writeEnum(out, event.getStatus());
+            out.name("turn").value(event.getTurn());
+            out.name("move").value(event.getMove());
+            out.endObject();
+        }
+
+        @Override
+        public Event read(JsonReader in) throws IOException {
+            Event event = new Event();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "eventId":
+                        event.setEventId(readInt(in));
+                        break;
+                    case "sender":
+                        event.setSender(readString(in));
+                        break;
+                    case "opponent":
+                        event.setOpponent(readString(in));
+                        break;
+                    case "status":
+                        event.setStatus(readEnum(in, EVENT_STATUSES));
+                        break;
+                    case "turn":
+                        event.setTurn(readString(in));
+                        break;
+                    case "move":
+                        event.setMove(readInt(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return event;
+        }
+    }
+
+    private static final class UserAdapter extends TypeAdapter<User> {
+        @Override
+        public void write(JsonWriter out, User user) throws IOException {
+            out.beginObject();
+            out.name("username").value(user.getUsername());
+            out.name("password").value(user.getPassword());
+            out.name("displayName").value(user.getDisplayName());
+            out.name("online").value(user.isOnline());
+            out.endObject();
+        }
+
+        @Override
+        public User read(JsonReader in) throws IOException {
+            User user = new User();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username":
+                        user.setUsername(readString(in));
+                        break;
+                    case "password":
+                        user.setPassword(readString(in));
+                        break;
+                    case "displayName":
+                        user.setDisplayName(readString(in));
+                        break;
+                    case "online":
+                        user.setOnline(readBoolean(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package socket;
+
+import java.util.List;
+
+import model.Event;
+import model.User;
+
+/**
+ *  Subclass of {@link Response}
+ *	This response class is used in response to clients request with type {@link Request.RequestType#UPDATE_PAIRING}
+ */
+public class PairingResponse extends Response {
+
+    /**
+     * Users that are online and not playing, other than the user who asked. In a delta ({@link #removedUsers} not
+     * null), only the users added since the version sent with the request
+     */
+    private List<User> availableUsers;
+
+    /**
+     * Usernames that are no longer available since the version sent with the request, or null if
+     * {@link #availableUsers} is the full list
+     */
+    private List<String> removedUsers;
+
+    /**
+     * Version of the available users once this response is applied, to send with the next
+     * {@link Request.RequestType#UPDATE_PAIRING}. Always 0 from servers without versions
+     */
+    private long version;
+
+    /**
+     * Nothing changed since the version sent with the request: the users and invitations are null and the client
+     * keeps what it has
+     */
+    private boolean notModified;
+
+    /**
+     * The pending invitation sent to the user who asked, or null. That is an {@link Event} with status {@link Event.EventStatus#PENDING}
+     */
+    private Event invitation;
+
+    /**
+     * The answer to the last invitation sent by the user who asked, or null. That is an {@link Event} with status
+     * {@link Event.EventStatus#ACCEPTED} or {@link Event.EventStatus#DECLINED}
+     */
+    private Event invitationResponse;
+
+    /**
+     * Default constructor, calls parent's class constructor
+     */
+    public PairingResponse() {
+        super();
+    }
+
+    /**
+     *
+     * @param status Status to indicate success or failure of the request
+     * @param message Explanation of the success or failure of the request
+     * @param availableUsers Users that are online and not playing, other than the user who asked
+     * @param invitation The pending invitation sent to the user who asked, or null
+     * @param invitationResponse The answer to the last invitation sent by the user who asked, or null
+     */
+    public PairingResponse(ResponseStatus status, String message, List<User> availableUsers, Event invitation, Event invitationResponse) {
+        super(status, message);
+        this.availableUsers = availableUsers;
+        this.invitation = invitation;
+        this.invitationResponse = invitationResponse;
+    }
+
+    /**
+     * Getter function for {@link #availableUsers} attribute
+     * @return availableUsers
+     */
+    public List<User> getAvailableUsers() {
+        return availableUsers;
+    }
+
+    /**
+     * Setter function for {@link #availableUsers} attribute
+     * @param availableUsers Users that are online and not playing, other than the user who asked
+     */
+    public void setAvailableUsers(List<User> availableUsers) {
+        this.availableUsers = availableUsers;
+    }
+
+    /**
+     * Getter function for {@link #removedUsers} attribute
+     * @return removedUsers
+     */
+    public List<String> getRemovedUsers() {
+        return removedUsers;
+    }
+
+    /**
+     * Setter function for {@link #removedUsers} attribute
+     * @param removedUsers Usernames no longer available since the version sent with the request, or null for a full list
+     */
+    public void setRemovedUsers(List<String> removedUsers) {
+        this.removedUsers = removedUsers;
+    }
+
+    /**
+     * Getter function for {@link #version} attribute
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Setter function for {@link #version} attribute
+     * @param version Version of the available users once this response is applied
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Getter function for {@link #notModified} attribute
+     * @return notModified
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Setter function for {@link #notModified} attribute
+     * @param notModified Whether nothing changed since the version sent with the request
+     */
+    public void setNotModified(boolean notModified) {
+        this.notModified = notModified;
+    }
+
+    /**
+     * Getter function for {@link #invitation} attribute
+     * @return invitation
+     */
+    public Event getInvitation() {
+        return invitation;
+    }
+
+    /**
+     * Setter function for {@link #invitation} attribute
+     * @param invitation The pending invitation sent to the user who asked, or null
+     */
+    public void setInvitation(Event invitation) {
+        this.invitation = invitation;
+    }
+
+    /**
+     * Getter function for {@link #invitationResponse} attribute
+     * @return invitationResponse
+     */
+    public Event getInvitationResponse() {
+        return invitationResponse;
+    }
+
+    /**
+     * Setter function for {@link #invitationResponse} attribute
+     * @param invitationResponse The answer to the last invitation sent by the user who asked, or null
+     */
+    public void setInvitationResponse(Event invitationResponse) {
+        this.invitationResponse = invitationResponse;
+    }
+}
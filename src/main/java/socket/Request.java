@@ -13,49 +13,53 @@ public class Request {
      */
     public enum RequestType {
         /**
-         * Login request, {@link #data} is serialized object of {@link User}
+         * Login request, {@link #payload} is a {@link User}. On servers with sessions, the message of the SUCCESS
+         * response is the token for {@link #RESUME_SESSION}
          */
-        LOGIN,
+        LOGIN(User.class),
 
         /**
-         * Registration request, {@link #data} is serialized object of {@link User}
+         * Registration request, {@link #payload} is a {@link User}
          */
-        REGISTER,
+        REGISTER(User.class),
 
         /**
-         * Request to get pairing update, {@link #data} is null
+         * Request to get pairing update, {@link #payload} is the Long {@link PairingResponse#getVersion()} the client
+         * has, to get only what changed since, or null for everything
          */
-        UPDATE_PAIRING,
+        UPDATE_PAIRING(Long.class),
 
         /**
-         * Request to send game invitation, {@link #data} is serialized object of {@link Event#getOpponent()}
+         * Request to send game invitation, {@link #payload} is the String {@link Event#getOpponent()}
          */
-        SEND_INVITATION,
+        SEND_INVITATION(String.class),
 
         /**
-         * Request to accept game invitation, {@link #data} is serialized object of {@link Event#getEventId()}
+         * Request to accept game invitation, {@link #payload} is the Integer {@link Event#getEventId()}
          */
-        ACCEPT_INVITATION,
+        ACCEPT_INVITATION(Integer.class),
 
         /**
-         * Request to decline game invitation, {@link #data} is serialized object of {@link Event#getEventId()}
+         * Request to decline game invitation, {@link #payload} is the Integer {@link Event#getEventId()}
          */
-        DECLINE_INVITATION,
+        DECLINE_INVITATION(Integer.class),
 
         /**
-         * Request to acknowledge opponent invitation response, {@link #data} is serialized object of {@link Event#getEventId()}
+         * Request to acknowledge opponent invitation response, {@link #payload} is the Integer {@link Event#getEventId()}
          */
-        ACKNOWLEDGE_RESPONSE,
+        ACKNOWLEDGE_RESPONSE(Integer.class),
 
         /**
-         * Request to get user's opponent last move, {@link #data} is null
+         * Request to get user's opponent last move, {@link #payload} is the Integer {@link GamingResponse#getSequence()}
+         * the client has, to also get every move since in {@link GamingResponse#getMoves()}, or null for the last
+         * move only
          */
-        REQUEST_MOVE,
+        REQUEST_MOVE(Integer.class),
 
         /**
-         * Request to send a game move, {@link #data} is Integer from 0-8 (TicTacToe cell)
+         * Request to send a game move, {@link #payload} is an Integer from 0-8 (TicTacToe cell)
          */
-        SEND_MOVE,
+        SEND_MOVE(Integer.class),
 
         /**
          * Request to abort current game, {@link #data} is null
@@ -66,18 +70,95 @@ public class Request {
          * Request to complete current game after receiving last game move, {@link #data} is null
          */
         COMPLETE_GAME,
+
+        /**
+         * Request to have the opponent's moves pushed for the current game, {@link #data} is null.
+         * After a SUCCESS response the server sends a {@link GamingResponse} with id {@link Response#PUSH_ID}
+         * as soon as the opponent moves, until the game ends. Servers without push answer FAILURE
+         */
+        SUBSCRIBE_MOVES,
+
+        /**
+         * Request to switch the connection to another wire format, {@link #data} is the format name, e.g. {@link BinaryCodec#FORMAT},
+         * or several names separated by commas in order of preference, e.g. {@link JsonCodecs#OFFERED_FORMATS}.
+         * Sent as JSON before any other request; after a SUCCESS response, whose message is the format chosen, both
+         * sides use that format. {@link JsonCodecs#INLINE_FORMAT} keeps JSON with request payloads inline. Servers
+         * that answer FAILURE keep JSON
+         */
+        NEGOTIATE_FORMAT,
+
+        /**
+         * Request to be paired with a waiting player of a close rating instead of inviting one, {@link #data} is null.
+         * The SUCCESS response has the message "Matched" if the game was created right away, with the waiting player
+         * as {@link Event#getSender()} and an ACCEPTED status, or "Waiting" otherwise, in which case the game shows up
+         * as an ACCEPTED {@link PairingResponse#getInvitationResponse()} to acknowledge
+         */
+        QUICK_MATCH,
+
+        /**
+         * Request to attach a new connection to the session of an earlier LOGIN, {@link #payload} is the String token
+         * from the LOGIN response. After a SUCCESS response the connection is logged in as that user, still in its game,
+         * with its invitations and move subscription. FAILURE means the session expired and LOGIN is needed
+         */
+        RESUME_SESSION(String.class),
+
+        /**
+         * Several requests in one round trip, {@link #payload} is the Request[] to handle, in order, at most
+         * {@link #MAX_BATCH} of them. The server handles each one as if it had been sent alone, whatever the result of
+         * the others, and answers with a {@link BatchResponse} of their responses. Sub-requests can not be BATCH or
+         * NEGOTIATE_FORMAT. Servers without batches answer FAILURE, without responses
+         */
+        BATCH(Request[].class);
+
+        /**
+         * Class of the typed payload, or null if the request has none and {@link #data} is used as is
+         */
+        private final Class<?> payloadType;
+
+        RequestType() {
+            this(null);
+        }
+
+        RequestType(Class<?> payloadType) {
+            this.payloadType = payloadType;
+        }
+
+        /**
+         * Getter function for {@link #payloadType} attribute
+         * @return payloadType
+         */
+        public Class<?> getPayloadType() {
+            return payloadType;
+        }
     }
 
+    /**
+     * Largest number of sub-requests of a {@link RequestType#BATCH}
+     */
+    public static final int MAX_BATCH = 16;
+
     /**
      * The type of request client sends to the server
      */
     private RequestType type;
 
     /**
-     * The request payload, it's a serialized string of the payload object
+     * The request payload, it's a serialized string of the payload object.
+     * Kept for requests without a typed payload and for peers that still send the string form
      */
     private String data;
 
+    /**
+     * The typed payload, of class {@link RequestType#getPayloadType()}. Serialized once into {@link #data} for JSON,
+     * sent natively by {@link BinaryCodec} when it is a number
+     */
+    private Object payload;
+
+    /**
+     * Correlation id assigned by the client for each frame, echoed by the server in {@link Response#getId()}. 0 if unset
+     */
+    private int id;
+
     /**
      * Default constructor
      */
@@ -94,6 +175,21 @@ public class Request {
         this.data = data;
     }
 
+    /**
+     * Creates a request with a typed payload, which is encoded once, instead of serialized by the caller and again
+     * with the request.
+     *
+     * @param type The type of request client sends to the server
+     * @param payload The payload, an instance of {@link RequestType#getPayloadType()}
+     * @return The request
+     * @throws IllegalArgumentException If the payload does not match the type
+     */
+    public static Request of(RequestType type, Object payload) {
+        Request request = new Request(type, null);
+        request.setPayload(payload);
+        return request;
+    }
+
     /**
      * Getter function for {@link #type} attribute
      * @return type
@@ -108,22 +204,87 @@ public class Request {
      */
     public void setType(RequestType type) {
         this.type = type;
+        if (data != null)
+            payload = null; // Decoded again for the new type.
+    }
+
+    /**
+     * Getter function for {@link #id} attribute
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Setter function for {@link #id} attribute
+     * @param id Correlation id assigned by the client for each frame
+     */
+    public void setId(int id) {
+        this.id = id;
     }
 
     /**
-     * Getter function for {@link #data} attribute
+     * Getter function for {@link #data} attribute. A typed payload is serialized on the first call
      * @return data
      */
     public String getData() {
+        if (data == null && payload != null)
+            data = JsonCodecs.gson().toJson(payload);
         return data;
     }
 
     /**
-     * Setter function for {@link #data} attribute
+     * Setter function for {@link #data} attribute, replaces the typed payload
      * @param data The request payload, it's a serialized string of the payload object
      */
     public void setData(String data) {
         this.data = data;
+        this.payload = null;
+    }
+
+    /**
+     * Getter function for {@link #payload} attribute. A payload received in the string form is deserialized on the first call
+     * @return payload, or null if the request has none
+     */
+    public Object getPayload() {
+        if (payload == null && data != null && type != null && type.getPayloadType() != null)
+            payload = JsonCodecs.gson().fromJson(data, type.getPayloadType());
+        return payload;
+    }
+
+    /**
+     * The typed payload as it was set, without deserializing the string form, for codecs that encode it natively
+     * @return payload, or null if the request has none or only has the string form
+     */
+    Object peekPayload() {
+        return payload;
+    }
+
+    /**
+     * Getter function for {@link #payload} attribute, checked against the expected class
+     * @param payloadType The expected class of the payload
+     * @param <T> The expected type of the payload
+     * @return payload, or null if the request has none
+     * @throws ClassCastException If the payload is of another class
+     */
+    public <T> T getPayload(Class<T> payloadType) {
+        return payloadType.cast(getPayload());
+    }
+
+    /**
+     * Setter function for {@link #payload} attribute, replaces the string form
+     * @param payload The typed payload, an instance of {@link RequestType#getPayloadType()}, or null
+     * @throws IllegalArgumentException If the payload does not match the type
+     */
+    public void setPayload(Object payload) {
+        if (payload != null) {
+            Class<?> payloadType = type == null ? null : type.getPayloadType();
+            if (payloadType == null || !payloadType.isInstance(payload))
+                throw new IllegalArgumentException(type + " does not take a " + payload.getClass().getSimpleName() + " payload");
+        }
+        this.payload = payload;
+        this.data = null;
     }
 
 }
@@ -32,6 +32,16 @@ public class Response {
      */
     private String message;
 
+    /**
+     * Value of {@link #id} for frames the server pushes without a request, e.g. moves after {@link Request.RequestType#SUBSCRIBE_MOVES}
+     */
+    public static final int PUSH_ID = -1;
+
+    /**
+     * Correlation id of the request this response answers, 0 if the server does not echo ids, {@link #PUSH_ID} for pushed frames
+     */
+    private int id;
+
     /**
      * Default constructor
      */
@@ -48,6 +58,22 @@ public class Response {
         this.message = message;
     }
 
+    /**
+     * Getter function for {@link #id} attribute
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Setter function for {@link #id} attribute
+     * @param id Correlation id of the request this response answers
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Getter function for {@link #status} attribute
      * @return status
@@ -0,0 +1,59 @@
+package clarkson.ee408.tictactoev4;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link OutcomeTable} and {@link OutcomeTableGenerator}.
+ */
+public class OutcomeTableTest {
+
+    @Test
+    public void generator_findsEveryLegalPosition() throws IOException {
+        File file = File.createTempFile("outcomes", ".bin");
+        file.deleteOnExit();
+        OutcomeTableGenerator generator = new OutcomeTableGenerator();
+        generator.generate();
+        generator.write(file);
+        assertEquals(5478, generator.getReachable());
+        assertEquals(OutcomeTable.HEADER_SIZE + OutcomeTable.POSITIONS, file.length());
+        assertEquals(5478, OutcomeTable.map(file).getReachable());
+    }
+
+    @Test
+    public void lookups_matchTheSolver() throws IOException {
+        OutcomeTableGenerator generator = new OutcomeTableGenerator();
+        byte [] entries = generator.generate();
+        ByteBuffer buffer = ByteBuffer.allocate(OutcomeTable.HEADER_SIZE + entries.length);
+        buffer.putInt(OutcomeTable.MAGIC).putInt(generator.getReachable()).put(entries).flip();
+        OutcomeTable table = new OutcomeTable(buffer);
+
+        TicTacToeSolver solver = new TicTacToeSolver();
+        Random random = new Random(5478);
+        for (int i = 0; i < 500; i++) {
+            TicTacToe game = new TicTacToe(1);
+            while (!game.isGameOver()) {
+                int mover = game.getTurn();
+                int me = game.getMarks(mover);
+                int opponent = game.getMarks(mover == 1 ? 2 : 1);
+                assertTrue(table.contains(game.getMarks(1), game.getMarks(2)));
+                assertEquals(solver.value(me, opponent), table.value(game.getMarks(1), game.getMarks(2)));
+                assertEquals(solver.bestMove(me, opponent), table.bestMove(game));
+                game.play(random.nextInt(TicTacToe.SIDE), random.nextInt(TicTacToe.SIDE));
+            }
+            assertEquals(-1, table.bestMove(game));
+        }
+        assertFalse(table.contains(0x1FF, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void constructor_rejectsOtherFiles() throws IOException {
+        new OutcomeTable(ByteBuffer.allocate(OutcomeTable.HEADER_SIZE + OutcomeTable.POSITIONS));
+    }
+}
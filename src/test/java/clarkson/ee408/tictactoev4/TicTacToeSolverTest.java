@@ -0,0 +1,80 @@
+package clarkson.ee408.tictactoev4;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TicTacToeSolver}.
+ */
+public class TicTacToeSolverTest {
+
+    private static void play(TicTacToe game, int cell) {
+        assertNotEquals(0, game.play(cell / TicTacToe.SIDE, cell % TicTacToe.SIDE));
+    }
+
+    @Test
+    public void emptyBoard_isADraw() {
+        TicTacToeSolver.Solution solution = new TicTacToeSolver().solve(new TicTacToe(1));
+        assertEquals(TicTacToeSolver.DRAW, solution.getValue());
+        assertTrue(solution.getMove() >= 0 && solution.getMove() < 9);
+    }
+
+    @Test
+    public void solve_takesAnImmediateWinAndBlocksOtherwise() {
+        TicTacToeSolver solver = new TicTacToeSolver();
+        TicTacToe game = new TicTacToe(1);
+        for (int cell : new int[] {0, 3, 1, 4})
+            play(game, cell);
+        TicTacToeSolver.Solution win = solver.solve(game);
+        assertEquals(2, win.getMove());
+        assertEquals(TicTacToeSolver.WIN, win.getValue());
+
+        game = new TicTacToe(1);
+        for (int cell : new int[] {4, 0, 8})
+            play(game, cell);
+        // X holds the center and a corner: O has to take a free corner, an edge lets X fork.
+        assertEquals(TicTacToeSolver.DRAW, solver.solve(game).getValue());
+        int move = solver.solve(game).getMove();
+        assertTrue(move == 2 || move == 6);
+    }
+
+    @Test
+    public void solve_reportsFinishedGames() {
+        TicTacToe game = new TicTacToe(1);
+        for (int cell : new int[] {0, 3, 1, 4, 2})
+            play(game, cell);
+        TicTacToeSolver.Solution solution = new TicTacToeSolver().solve(game);
+        assertEquals(-1, solution.getMove());
+        assertEquals(TicTacToeSolver.LOSS, solution.getValue());
+    }
+
+    @Test
+    public void perfectPlay_neverLosesToRandomMoves() {
+        TicTacToeSolver solver = new TicTacToeSolver();
+        Random random = new Random(408);
+        for (int i = 0; i < 500; i++) {
+            TicTacToe game = new TicTacToe(1);
+            int solverPlayer = 1 + i % 2;
+            while (!game.isGameOver()) {
+                if (game.getTurn() == solverPlayer) {
+                    play(game, solver.solve(game).getMove());
+                } else {
+                    game.play(random.nextInt(TicTacToe.SIDE), random.nextInt(TicTacToe.SIDE));
+                }
+            }
+            assertNotEquals(solverPlayer == 1 ? 2 : 1, game.whoWon());
+        }
+    }
+
+    @Test
+    public void perfectPlay_againstItselfIsATie() {
+        TicTacToeSolver solver = new TicTacToeSolver();
+        TicTacToe game = new TicTacToe(1);
+        while (!game.isGameOver())
+            play(game, solver.bestMove(game.getMarks(game.getTurn()), game.getMarks(game.getTurn() == 1 ? 2 : 1)));
+        assertEquals(0, game.whoWon());
+    }
+}
@@ -0,0 +1,130 @@
+package clarkson.ee408.tictactoev4;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link TicTacToe} game engine.
+ */
+public class TicTacToeTest {
+
+    private static TicTacToe playAll(int player, int... moves) {
+        TicTacToe game = new TicTacToe(player);
+        for (int move : moves)
+            game.play(move / TicTacToe.SIDE, move % TicTacToe.SIDE);
+        return game;
+    }
+
+    @Test
+    public void play_alternatesTurnsAndRejectsTakenCells() {
+        TicTacToe game = new TicTacToe(1);
+        assertEquals(1, game.play(1, 1));
+        assertEquals(2, game.getTurn());
+        assertEquals(0, game.play(1, 1));
+        assertEquals(0, game.play(3, 0));
+        assertEquals(2, game.play(0, 0));
+        assertEquals(1 << 4, game.getMarks(1));
+        assertEquals(1, game.getMarks(2));
+    }
+
+    @Test
+    public void whoWon_detectsRowsColumnsAndDiagonals() {
+        assertEquals(1, playAll(1, 3, 0, 4, 1, 5).checkRows());
+        assertEquals(2, playAll(1, 0, 2, 1, 5, 3, 8).checkColumns());
+        assertEquals(1, playAll(1, 0, 1, 4, 2, 8).checkDiagonals());
+        assertEquals(2, playAll(1, 0, 2, 1, 4, 8, 6).whoWon());
+        assertEquals(0, playAll(1, 0, 1, 4).whoWon());
+    }
+
+    @Test
+    public void result_reportsTieAndGameOver() {
+        TicTacToe game = playAll(1, 4, 0, 8, 2, 1, 7, 6, 3, 5);
+        assertEquals(0, game.whoWon());
+        assertTrue(game.canNotPlay());
+        assertTrue(game.isGameOver());
+        assertEquals("Tie Game", game.result());
+    }
+
+    @Test
+    public void result_reportsWinnerFromPlayersPointOfView() {
+        assertEquals("You won", playAll(1, 0, 3, 1, 4, 2).result());
+        assertEquals("You lost", playAll(2, 0, 3, 1, 4, 2).result());
+        assertEquals("Waiting for Opponent", playAll(2).result());
+    }
+
+    @Test
+    public void resetGame_clearsTheBoard() {
+        TicTacToe game = playAll(1, 0, 3, 1, 4, 2);
+        game.resetGame();
+        assertEquals(0, game.getMarks(1) | game.getMarks(2));
+        assertEquals(1, game.getTurn());
+        assertFalse(game.isGameOver());
+    }
+
+    @Test
+    public void play_tracksWinnerAndMoveCountIncrementally() {
+        Random random = new Random(408);
+        for (int i = 0; i < 1000; i++) {
+            TicTacToe game = new TicTacToe(1);
+            while (!game.isGameOver()) {
+                game.play(random.nextInt(TicTacToe.SIDE), random.nextInt(TicTacToe.SIDE));
+                assertEquals(game.scanWinner(), game.whoWon());
+                assertEquals(Integer.bitCount(game.getMarks(1) | game.getMarks(2)), game.getMoveCount());
+            }
+        }
+    }
+
+    @Test
+    public void largeBoard_winsWithKInARowThroughTheLastMove() {
+        TicTacToe game = new TicTacToe(1, 15, 5);
+        int [][] moves = { {7, 3}, {0, 0}, {7, 5}, {0, 1}, {7, 4}, {0, 2}, {7, 7}, {0, 3}, {7, 6} };
+        for (int [] move : moves) {
+            assertFalse(game.isGameOver());
+            game.play(move[0], move[1]);
+        }
+        assertEquals(1, game.whoWon());
+        assertEquals(1, game.checkRows());
+        assertEquals(0, game.checkColumns());
+        assertEquals(2, game.getCell(0, 3));
+        assertEquals(0, game.play(15, 0));
+    }
+
+    @Test
+    public void largeBoard_detectsAntiDiagonalsAndShortLines() {
+        TicTacToe game = new TicTacToe(1, 4, 3);
+        int [][] moves = { {0, 3}, {0, 0}, {1, 2}, {1, 0}, {2, 1} };
+        for (int [] move : moves)
+            game.play(move[0], move[1]);
+        assertEquals(1, game.whoWon());
+        assertEquals(1, game.checkDiagonals());
+
+        TicTacToe small = new TicTacToe(1, 2, 2);
+        small.play(0, 0);
+        small.play(0, 1);
+        small.play(1, 1);
+        assertEquals(1, small.whoWon());
+        small.resetGame();
+        assertEquals(0, small.getMoveCount());
+        assertEquals(0, small.getCell(0, 0));
+    }
+
+    @Test
+    public void largeBoard_matchesFullScanOnRandomGames() {
+        Random random = new Random(15);
+        for (int i = 0; i < 200; i++) {
+            TicTacToe game = new TicTacToe(1, 8, 4);
+            while (!game.isGameOver()) {
+                game.play(random.nextInt(8), random.nextInt(8));
+                assertEquals(game.scanWinner(), game.whoWon());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsWinLengthLongerThanTheBoard() {
+        new TicTacToe(1, 3, 4);
+    }
+}
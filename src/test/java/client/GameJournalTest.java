@@ -0,0 +1,135 @@
+package client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import model.Event;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GameJournal}, against a temporary file written on the calling thread.
+ */
+public class GameJournalTest {
+    private static final Executor DIRECT = Runnable::run;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("game", ".journal");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private GameJournal open(int capacity) throws IOException {
+        return new GameJournal(file, capacity, DIRECT);
+    }
+
+    @Test
+    public void reopening_recoversTheGameInProgress() throws IOException {
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            assertNull(journal.recover());
+            journal.startGame(2, 7);
+            journal.eventStatus(new Event(7, "alice", "bob", Event.EventStatus.PLAYING, "bob", 4));
+            journal.move(4);
+            journal.move(0);
+        }
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            GameJournal.Game game = journal.recover();
+            assertEquals(2, game.getPlayer());
+            assertEquals(7, game.getEventId());
+            assertEquals(Event.EventStatus.PLAYING, game.getStatus());
+            assertEquals(Arrays.asList(4, 0), game.getMoves());
+        }
+    }
+
+    @Test
+    public void reopening_restoresConfirmedMovesAsConfirmed() throws IOException {
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            journal.startGame(1, 0);
+            journal.eventStatus(0, Event.EventStatus.PLAYING);
+            journal.move(4);
+            journal.move(0);
+            journal.confirmed(2);
+            journal.confirmed(3); // Before the move is played
+            journal.move(8);
+            journal.move(2); // Local, not confirmed yet
+        }
+        MoveLog moveLog = new MoveLog();
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            GameJournal.Game game = journal.recover();
+            assertEquals(Event.EventStatus.PLAYING, game.getStatus());
+            assertEquals(3, game.getConfirmed());
+            moveLog.restore(game.getMoves(), game.getConfirmed());
+        }
+        assertEquals(3, (int) moveLog.newRequest().getPayload(Integer.class));
+        assertTrue(moveLog.discardLocal());
+        assertEquals("a failed move only takes back the local ones", Arrays.asList(4, 0, 8), moveLog.getMoves());
+    }
+
+    @Test
+    public void endingAGame_compactsTheJournal() throws IOException {
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            journal.startGame(1, 0);
+            journal.move(4);
+            journal.endGame();
+            assertNull(journal.recover());
+            assertEquals(0, journal.getRecordCount());
+            journal.startGame(2, 0);
+            journal.move(8);
+        }
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            assertEquals(Arrays.asList(8), journal.recover().getMoves());
+            assertEquals(2, journal.getRecordCount());
+        }
+    }
+
+    @Test
+    public void aTornRecord_endsTheReplay() throws IOException {
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            journal.startGame(1, 0);
+            journal.move(4);
+            journal.move(0);
+            journal.move(8);
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(GameJournal.HEADER_SIZE + 2 * GameJournal.RECORD_SIZE + 1);
+            raw.write(5); // The cell of the second move, without its checksum
+        }
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            assertEquals(Arrays.asList(4), journal.recover().getMoves());
+            journal.move(2);
+        }
+        try (GameJournal journal = open(GameJournal.DEFAULT_CAPACITY)) {
+            assertEquals("the records after the torn one are gone", Arrays.asList(4, 2), journal.recover().getMoves());
+        }
+    }
+
+    @Test
+    public void aFullJournal_keepsTheGameInProgress() throws IOException {
+        try (GameJournal journal = open(GameJournal.MIN_CAPACITY)) {
+            for (int restart = 0; restart < 10; restart++) {
+                journal.startGame(1, restart);
+                journal.move(restart % 9);
+                journal.move(8 - restart % 9);
+            }
+            assertTrue(journal.getRecordCount() <= GameJournal.MIN_CAPACITY);
+        }
+        try (GameJournal journal = open(GameJournal.MIN_CAPACITY)) {
+            GameJournal.Game game = journal.recover();
+            assertEquals(9, game.getEventId());
+            assertEquals(Arrays.asList(0, 8), game.getMoves());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_boundTheirValuesWithinThreePercent() {
+        long [] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(value + " <= " + upper, value <= upper);
+            assertTrue(value + " vs " + upper, upper - value <= value / 32);
+            if (bucket > 0)
+                assertTrue(LatencyHistogram.upperBound(bucket - 1) < value);
+        }
+    }
+
+    @Test
+    public void percentiles_followTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (long value = 1; value <= 10000; value++)
+            histogram.record(value * 1000);
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000500, histogram.getMean(), 1);
+        assertEquals(5000000, histogram.getPercentile(50), 5000000 / 32);
+        assertEquals(9900000, histogram.getPercentile(99), 9900000 / 32);
+        assertEquals(9990000, histogram.getPercentile(99.9), 9990000 / 32);
+        assertEquals(10000000, histogram.getPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+}
@@ -0,0 +1,77 @@
+package client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import socket.GamingResponse;
+import socket.Request;
+import socket.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MoveLog}.
+ */
+public class MoveLogTest {
+    private final MoveLog log = new MoveLog();
+
+    private static GamingResponse moves(int sequence, Integer... moves) {
+        GamingResponse response = new GamingResponse(Response.ResponseStatus.SUCCESS, null, -1, true);
+        response.setSequence(sequence);
+        response.setMoves(Arrays.asList(moves));
+        return response;
+    }
+
+    @Test
+    public void polls_catchUpOnEveryMissedMove() {
+        assertEquals(Integer.valueOf(0), log.newRequest().getPayload(Integer.class));
+        assertEquals(Arrays.asList(4, 0, 8), log.apply(moves(3, 4, 0, 8)));
+        assertEquals(Request.RequestType.REQUEST_MOVE, log.newRequest().getType());
+        assertEquals(Integer.valueOf(3), log.newRequest().getPayload(Integer.class));
+        assertEquals(Collections.emptyList(), log.apply(moves(3, 8)));
+    }
+
+    @Test
+    public void localMoves_areConfirmedByTheLog() {
+        log.addLocal(4);
+        assertEquals(Collections.singletonList(0), log.apply(moves(2, 4, 0)));
+        assertEquals(2, log.getConfirmed());
+        log.addLocal(8);
+        assertFalse(log.apply(moves(2)) == null);
+        assertEquals(Arrays.asList(4, 0, 8), log.getMoves());
+    }
+
+    @Test
+    public void aLogThatDisagrees_replacesTheLocalMoves() {
+        log.addLocal(4);
+        log.addLocal(5); // Rejected by the server
+        List<Integer> applied = log.apply(moves(2, 4, 0));
+        assertNull(applied);
+        assertEquals(Arrays.asList(4, 0), log.getMoves());
+        log.addLocal(8);
+        assertTrue(log.discardLocal());
+        assertEquals(Arrays.asList(4, 0), log.getMoves());
+    }
+
+    @Test
+    public void pushedMovesAfterAGap_waitForAPoll() {
+        log.apply(moves(1, 4));
+        assertEquals(Collections.emptyList(), log.apply(moves(3, 8)));
+        assertTrue(log.isBehind());
+        assertEquals(Integer.valueOf(1), log.newRequest().getPayload(Integer.class));
+        assertEquals(Arrays.asList(0, 8), log.apply(moves(3, 0, 8)));
+        assertFalse(log.isBehind());
+    }
+
+    @Test
+    public void serversWithoutLogs_appendTheLastMove() {
+        log.addLocal(4);
+        assertEquals(Collections.singletonList(0), log.apply(new GamingResponse(Response.ResponseStatus.SUCCESS, null, 0, true)));
+        assertEquals(Collections.emptyList(), log.apply(new GamingResponse(Response.ResponseStatus.SUCCESS, null, -1, true)));
+        assertEquals(Arrays.asList(4, 0), log.getMoves());
+        assertEquals(2, log.getConfirmed());
+    }
+}
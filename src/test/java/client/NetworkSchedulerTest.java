@@ -0,0 +1,107 @@
+package client;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import socket.Request;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NetworkScheduler}.
+ */
+public class NetworkSchedulerTest {
+    private final NetworkScheduler scheduler = new NetworkScheduler(2, 2, 32, true);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void laneOf_putsPollsInTheBackground() {
+        assertEquals(NetworkScheduler.Lane.BACKGROUND, NetworkScheduler.laneOf(Request.RequestType.REQUEST_MOVE));
+        assertEquals(NetworkScheduler.Lane.BACKGROUND, NetworkScheduler.laneOf(Request.RequestType.UPDATE_PAIRING));
+        assertEquals(NetworkScheduler.Lane.INTERACTIVE, NetworkScheduler.laneOf(Request.RequestType.SEND_MOVE));
+        assertEquals(NetworkScheduler.Lane.INTERACTIVE, NetworkScheduler.laneOf(Request.RequestType.ACCEPT_INVITATION));
+        assertEquals(NetworkScheduler.Lane.INTERACTIVE, NetworkScheduler.laneOf(Request.RequestType.ABORT_GAME));
+    }
+
+    @Test
+    public void fullLane_rejectsAndCounts() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Executor background = scheduler.lane(NetworkScheduler.Lane.BACKGROUND);
+        int rejected = 0;
+        for (int i = 0; i < 40; i++) {
+            try {
+                background.execute(() -> awaitQuietly(release));
+            } catch (RejectedExecutionException e) {
+                rejected++;
+            }
+        }
+        release.countDown();
+        assertEquals(40 - 2 - 32, rejected);
+        assertEquals(rejected, scheduler.getRejectedCount());
+    }
+
+    @Test
+    public void moves_doNotWaitBehindPolls() throws InterruptedException {
+        AtomicBoolean polling = new AtomicBoolean(true);
+        Thread flood = new Thread(() -> {
+            Executor background = scheduler.forRequest(Request.RequestType.REQUEST_MOVE);
+            while (polling.get()) {
+                try {
+                    background.execute(() -> sleepQuietly(20)); // A poll waiting on the server
+                } catch (RejectedExecutionException e) {
+                    Thread.yield(); // Lane full, as it stays for the whole test
+                }
+            }
+        });
+        flood.start();
+        Thread.sleep(50);
+
+        int moves = 200;
+        LatencyHistogram waits = new LatencyHistogram();
+        CountDownLatch sent = new CountDownLatch(moves);
+        Executor interactive = scheduler.forRequest(Request.RequestType.SEND_MOVE);
+        for (int i = 0; i < moves; i++) {
+            long queued = System.nanoTime();
+            interactive.execute(() -> {
+                waits.recordSince(queued);
+                sleepQuietly(1);
+                sent.countDown();
+            });
+            Thread.sleep(2);
+        }
+        assertTrue(sent.await(10, TimeUnit.SECONDS));
+        polling.set(false);
+        flood.join();
+
+        // A poll takes 20 ms and 32 of them are queued, so sharing their pool would mean waits of hundreds of ms
+        long p99 = waits.getPercentile(99);
+        assertTrue("p99 " + TimeUnit.NANOSECONDS.toMillis(p99) + " ms", p99 < TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(scheduler.getRejectedCount() > 0);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package client;
+
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import socket.BinaryCodec;
+import socket.JsonCodecs;
+import socket.Request;
+import socket.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NioSocketClient}, against a server on the loopback interface that reads requests
+ * in batches and answers each batch in reverse order, with the request's data (or type) as message.
+ */
+public class NioSocketClientTest {
+    private static final int BATCH = 4;
+
+    private final Gson gson = JsonCodecs.gson();
+    private ServerSocket serverSocket;
+    private NioEventLoop loop;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        loop = new NioEventLoop();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        loop.close();
+        serverSocket.close();
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream input = new DataInputStream(s.getInputStream());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            boolean binary = false;
+            while (true) {
+                List<Request> requests = new ArrayList<>();
+                while (requests.size() < BATCH) {
+                    Request request = binary ? BinaryCodec.decodeRequest(BinaryCodec.readFrame(input))
+                            : gson.fromJson(input.readUTF(), Request.class);
+                    if (request.getType() == Request.RequestType.NEGOTIATE_FORMAT) {
+                        Response accepted = new Response(Response.ResponseStatus.SUCCESS, null);
+                        accepted.setId(request.getId());
+                        output.writeUTF(gson.toJson(accepted));
+                        output.flush();
+                        binary = true;
+                    } else {
+                        requests.add(request);
+                    }
+                }
+                Collections.reverse(requests);
+                for (Request request : requests) {
+                    Response response = new Response(Response.ResponseStatus.SUCCESS,
+                            request.getData() != null ? request.getData() : request.getType().name());
+                    response.setId(request.getId());
+                    if (binary) {
+                        BinaryCodec.writeFrame(output, BinaryCodec.encode(response));
+                    } else {
+                        output.writeUTF(gson.toJson(response));
+                    }
+                }
+                output.flush();
+            }
+        } catch (IOException e) {
+            // Client closed the connection
+        }
+    }
+
+    private static List<CompletableFuture<Response>> sendBatch(NioSocketClient client, String... data) {
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (String value : data)
+            futures.add(client.send(new Request(Request.RequestType.COMPLETE_GAME, value), Response.class));
+        return futures;
+    }
+
+    private static void assertMessages(List<CompletableFuture<Response>> futures, String... data) throws Exception {
+        for (int i = 0; i < data.length; i++)
+            assertEquals(data[i], futures.get(i).get(5, TimeUnit.SECONDS).getMessage());
+    }
+
+    @Test
+    public void send_matchesOutOfOrderResponsesById() throws Exception {
+        NioSocketClient client = loop.connect("127.0.0.1", serverSocket.getLocalPort()).get(5, TimeUnit.SECONDS);
+        assertFalse(client.isBinary());
+        String [] data = {"a", "\u00e9\u4e2d", "c", "d"};
+        assertMessages(sendBatch(client, data), data);
+        client.close();
+    }
+
+    @Test
+    public void send_negotiatesBinaryAndReassemblesLargeFrames() throws Exception {
+        NioSocketClient client = loop.connect("127.0.0.1", serverSocket.getLocalPort(), true).get(5, TimeUnit.SECONDS);
+        assertTrue(client.isBinary());
+        char [] large = new char[3 * NioEventLoop.BUFFER_SIZE];
+        Arrays.fill(large, 'x');
+        String [] data = {"small", new String(large), "", "last"};
+        assertMessages(sendBatch(client, data), data);
+        client.close();
+    }
+
+    @Test
+    public void eventLoop_servesManyConnections() throws Exception {
+        List<NioSocketClient> clients = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            clients.add(loop.connect("127.0.0.1", serverSocket.getLocalPort(), i % 2 == 0).get(5, TimeUnit.SECONDS));
+        List<List<CompletableFuture<Response>>> batches = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++)
+            batches.add(sendBatch(clients.get(i), i + "-1", i + "-2", i + "-3", i + "-4"));
+        for (int i = 0; i < clients.size(); i++) {
+            assertMessages(batches.get(i), i + "-1", i + "-2", i + "-3", i + "-4");
+            clients.get(i).close();
+        }
+    }
+
+    @Test
+    public void close_failsOutstandingRequests() throws Exception {
+        NioSocketClient client = loop.connect("127.0.0.1", serverSocket.getLocalPort()).get(5, TimeUnit.SECONDS);
+        CompletableFuture<Response> future = client.send(new Request(Request.RequestType.REQUEST_MOVE, null),
+                Response.class);
+        client.close();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertNull(client.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), Response.class));
+    }
+}
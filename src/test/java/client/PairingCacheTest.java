@@ -0,0 +1,69 @@
+package client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import model.Event;
+import model.User;
+import socket.PairingResponse;
+import socket.Request;
+import socket.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PairingCache}.
+ */
+public class PairingCacheTest {
+    private final PairingCache cache = new PairingCache();
+
+    private static PairingResponse response(long version, String [] removed, String... added) {
+        User [] users = new User[added.length];
+        for (int i = 0; i < added.length; i++)
+            users[i] = new User(added[i], null, added[i], false);
+        PairingResponse response = new PairingResponse(Response.ResponseStatus.SUCCESS, null, Arrays.asList(users),
+                null, null);
+        response.setRemovedUsers(removed == null ? null : Arrays.asList(removed));
+        response.setVersion(version);
+        return response;
+    }
+
+    @Test
+    public void appliesDeltasToTheFullList() {
+        assertNull(cache.newRequest().getPayload());
+        assertTrue(cache.apply(response(3, null, "alice", "bob")));
+        Request poll = cache.newRequest();
+        assertEquals(Request.RequestType.UPDATE_PAIRING, poll.getType());
+        assertEquals(Long.valueOf(3), poll.getPayload(Long.class));
+
+        assertTrue(cache.apply(response(5, new String[] {"alice"}, "carol")));
+        assertEquals(2, cache.getAvailableUsers().size());
+        assertEquals("bob", cache.getAvailableUsers().get(0).getUsername());
+        assertEquals("carol", cache.getAvailableUsers().get(1).getUsername());
+        assertEquals(5, cache.getVersion());
+
+        assertTrue(cache.apply(response(6, null, "dave"))); // A full list replaces the copy
+        assertEquals(1, cache.getAvailableUsers().size());
+    }
+
+    @Test
+    public void keepsEverythingWhenNotModified() {
+        PairingResponse first = response(1, null, "alice");
+        first.setInvitation(new Event(4, "alice", "bob", Event.EventStatus.PENDING, null, -1));
+        cache.apply(first);
+        PairingResponse notModified = new PairingResponse(Response.ResponseStatus.SUCCESS, null, null, null, null);
+        notModified.setVersion(1);
+        notModified.setNotModified(true);
+        assertFalse(cache.apply(notModified));
+        assertFalse(cache.apply(new PairingResponse(Response.ResponseStatus.FAILURE, "Not logged in",
+                Collections.<User>emptyList(), null, null)));
+        assertEquals(1, cache.getAvailableUsers().size());
+        assertEquals(4, cache.getInvitation().getEventId());
+
+        cache.clear();
+        assertTrue(cache.getAvailableUsers().isEmpty());
+        assertNull(cache.newRequest().getPayload());
+    }
+}
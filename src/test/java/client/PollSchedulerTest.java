@@ -0,0 +1,95 @@
+package client;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PollScheduler}.
+ */
+public class PollSchedulerTest {
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void emptyPolls_backOffUpToTheMaximum() throws InterruptedException {
+        AtomicInteger polls = new AtomicInteger();
+        PollScheduler scheduler = new PollScheduler(timer, 1, 8, () -> {
+            polls.incrementAndGet();
+            return CompletableFuture.completedFuture(false);
+        });
+        scheduler.start();
+        Thread.sleep(200);
+        scheduler.stop();
+        assertEquals(8, scheduler.getDelayMillis());
+        // 1 + 2 + 4 then 8 ms apart: far fewer polls than a fixed 1 ms period
+        assertTrue(polls.get() > 3 && polls.get() < 60);
+    }
+
+    @Test
+    public void start_resetsTheDelay() {
+        PollScheduler scheduler = new PollScheduler(timer, 1000, 8000, () -> CompletableFuture.completedFuture(false));
+        scheduler.start();
+        assertEquals(1000, scheduler.getDelayMillis());
+        scheduler.stop();
+    }
+
+    @Test
+    public void slowPolls_areNeverOverlapped() throws InterruptedException {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        PollScheduler scheduler = new PollScheduler(timer, 1, 1, () -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                sleep(20);
+                inFlight.decrementAndGet();
+                return false;
+            });
+        });
+        scheduler.start();
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(5);
+            scheduler.start();
+        }
+        Thread.sleep(100);
+        scheduler.stop();
+        assertEquals(1, maxInFlight.get());
+    }
+
+    @Test
+    public void pause_stopsPollingUntilResume() throws InterruptedException {
+        AtomicInteger polls = new AtomicInteger();
+        PollScheduler scheduler = new PollScheduler(timer, 1, 1, () -> {
+            polls.incrementAndGet();
+            return CompletableFuture.completedFuture(false);
+        });
+        scheduler.start();
+        scheduler.pause();
+        Thread.sleep(50);
+        int paused = polls.get();
+        assertTrue(paused <= 1);
+        scheduler.resume();
+        Thread.sleep(50);
+        scheduler.stop();
+        assertTrue(polls.get() > paused);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
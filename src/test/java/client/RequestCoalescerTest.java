@@ -0,0 +1,108 @@
+package client;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import socket.GamingResponse;
+import socket.PairingResponse;
+import socket.Request;
+import socket.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RequestCoalescer}, against a sender whose responses are completed by hand.
+ */
+public class RequestCoalescerTest {
+    private final List<Request> sent = new ArrayList<>();
+    private final List<CompletableFuture<Object>> responses = new ArrayList<>();
+
+    private final RequestCoalescer.Sender sender = new RequestCoalescer.Sender() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> CompletableFuture<T> send(Request request, Class<T> responseClass) {
+            CompletableFuture<Object> response = new CompletableFuture<>();
+            sent.add(request);
+            responses.add(response);
+            return (CompletableFuture<T>) response;
+        }
+    };
+
+    private static Request poll() {
+        return new Request(Request.RequestType.REQUEST_MOVE, null);
+    }
+
+    @Test
+    public void identicalPollsInFlight_shareOneRoundTrip() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(sender, 0);
+        CompletableFuture<Response> first = coalescer.send(poll(), Response.class);
+        CompletableFuture<Response> second = coalescer.send(poll(), Response.class);
+        assertEquals(1, sent.size());
+        Response response = new Response(Response.ResponseStatus.SUCCESS, "move");
+        responses.get(0).complete(response);
+        assertSame(response, first.get());
+        assertSame(response, second.get());
+        assertEquals(1, coalescer.getSharedCount());
+
+        coalescer.send(poll(), Response.class);
+        assertEquals("without a TTL, answered polls are not reused", 2, sent.size());
+    }
+
+    @Test
+    public void samePayloads_areSharedWhateverTheirForm() {
+        RequestCoalescer coalescer = new RequestCoalescer(sender, 0);
+        coalescer.send(Request.of(Request.RequestType.REQUEST_MOVE, 3), GamingResponse.class);
+        coalescer.send(new Request(Request.RequestType.REQUEST_MOVE, "3"), GamingResponse.class);
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void differentPayloadsAndSideEffects_areNotShared() {
+        RequestCoalescer coalescer = new RequestCoalescer(sender, 60_000);
+        coalescer.send(Request.of(Request.RequestType.UPDATE_PAIRING, 1L), PairingResponse.class);
+        coalescer.send(Request.of(Request.RequestType.UPDATE_PAIRING, 2L), PairingResponse.class);
+        coalescer.send(Request.of(Request.RequestType.SEND_MOVE, 4), Response.class);
+        coalescer.send(Request.of(Request.RequestType.SEND_MOVE, 4), Response.class);
+        assertEquals(4, sent.size());
+        assertEquals(0, coalescer.getSharedCount());
+    }
+
+    @Test
+    public void ttl_reusesResponsesUntilARequestWithSideEffects() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(sender, 60_000);
+        coalescer.send(poll(), Response.class);
+        Response response = new Response(Response.ResponseStatus.SUCCESS, "move");
+        responses.get(0).complete(response);
+        assertSame(response, coalescer.send(poll(), Response.class).get());
+        assertEquals(1, sent.size());
+
+        coalescer.send(Request.of(Request.RequestType.SEND_MOVE, 4), Response.class);
+        coalescer.send(poll(), Response.class);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void failures_areNotReused() {
+        RequestCoalescer coalescer = new RequestCoalescer(sender, 60_000);
+        CompletableFuture<Response> failed = coalescer.send(poll(), Response.class);
+        responses.get(0).completeExceptionally(new IOException("Not connected"));
+        assertTrue(failed.isCompletedExceptionally());
+        coalescer.send(poll(), Response.class);
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void cancellingOneCaller_leavesTheOthersWaiting() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(sender, 0);
+        CompletableFuture<Response> cancelled = coalescer.send(poll(), Response.class);
+        CompletableFuture<Response> waiting = coalescer.send(poll(), Response.class);
+        cancelled.cancel(false);
+        Response response = new Response(Response.ResponseStatus.SUCCESS, "move");
+        responses.get(0).complete(response);
+        assertSame(response, waiting.get());
+    }
+}
@@ -0,0 +1,59 @@
+package client;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import socket.BinaryCodec;
+import socket.JsonCodecs;
+import socket.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ResponseRouter}, fed with frames by hand.
+ */
+public class ResponseRouterTest {
+
+    private static String json(int id, String message) {
+        Response response = new Response(Response.ResponseStatus.SUCCESS, message);
+        response.setId(id);
+        return JsonCodecs.gson().toJson(response);
+    }
+
+    @Test
+    public void responsesWithIds_leaveTheSendOrder() throws Exception {
+        ResponseRouter router = new ResponseRouter();
+        for (int i = 0; i < 1000; i++) {
+            int id = router.nextId();
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            router.register(id, future, Response.class);
+            if (i % 2 == 0) {
+                router.dispatchJson(json(id, "json"));
+            } else {
+                Response response = new Response(Response.ResponseStatus.SUCCESS, "binary");
+                response.setId(id);
+                router.dispatchBinary(BinaryCodec.encode(response));
+            }
+            assertTrue(future.isDone());
+        }
+        assertEquals(0, router.getSendOrderSize());
+        assertFalse(router.hasPending());
+    }
+
+    @Test
+    public void responsesWithoutIds_goToTheOldestRequest() throws Exception {
+        ResponseRouter router = new ResponseRouter();
+        CompletableFuture<Response> first = new CompletableFuture<>();
+        CompletableFuture<Response> second = new CompletableFuture<>();
+        CompletableFuture<Response> third = new CompletableFuture<>();
+        int firstId = router.nextId();
+        router.register(firstId, first, Response.class);
+        router.register(router.nextId(), second, Response.class);
+        router.register(router.nextId(), third, Response.class);
+        router.dispatchJson(json(firstId, "first"));
+        router.dispatchJson(json(0, "second"));
+        assertEquals("second", second.get().getMessage());
+        assertEquals(1, router.getSendOrderSize());
+    }
+}
@@ -0,0 +1,310 @@
+package client;
+
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import model.User;
+import socket.GamingResponse;
+import socket.JsonCodecs;
+import socket.Request;
+import socket.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the pipelined {@link SocketClient}, against a one-connection server on the loopback interface.
+ */
+public class SocketClientTest {
+    private final Gson gson = new Gson();
+    private ServerSocket serverSocket;
+
+    @After
+    public void tearDown() throws IOException {
+        if (serverSocket != null)
+            serverSocket.close();
+    }
+
+    /**
+     * Starts a server that reads a batch of requests, then answers them with their type as message.
+     */
+    private int startServer(int batch, boolean reverse, boolean echoIds) throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket socket = serverSocket.accept();
+                 DataInputStream input = new DataInputStream(socket.getInputStream());
+                 DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
+                List<Request> requests = new ArrayList<>();
+                for (int i = 0; i < batch; i++)
+                    requests.add(gson.fromJson(input.readUTF(), Request.class));
+                if (reverse)
+                    Collections.reverse(requests);
+                for (Request request : requests) {
+                    Response response = new Response(Response.ResponseStatus.SUCCESS, request.getType().name());
+                    if (echoIds)
+                        response.setId(request.getId());
+                    output.writeUTF(gson.toJson(response));
+                }
+                output.flush();
+                input.read();
+            } catch (IOException e) {
+                // Test finished
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return serverSocket.getLocalPort();
+    }
+
+    private static List<CompletableFuture<Response>> sendAll(SocketClient client, Request.RequestType... types) {
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (Request.RequestType type : types)
+            futures.add(client.send(new Request(type, null), Response.class));
+        return futures;
+    }
+
+    /**
+     * Waits for the callbacks of a completed future, which may still run after the waiting thread woke up.
+     */
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean() && System.nanoTime() - deadline < 0)
+            Thread.sleep(1);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void send_matchesOutOfOrderResponsesById() throws Exception {
+        SocketClient client = new SocketClient("127.0.0.1", startServer(3, true, true));
+        Request.RequestType [] types = {Request.RequestType.REQUEST_MOVE, Request.RequestType.UPDATE_PAIRING,
+                Request.RequestType.SEND_MOVE};
+        List<CompletableFuture<Response>> futures = sendAll(client, types);
+        for (int i = 0; i < types.length; i++)
+            assertEquals(types[i].name(), futures.get(i).get(5, TimeUnit.SECONDS).getMessage());
+        client.close();
+    }
+
+    @Test
+    public void send_matchesResponsesWithoutIdsInOrder() throws Exception {
+        SocketClient client = new SocketClient("127.0.0.1", startServer(2, false, false));
+        List<CompletableFuture<Response>> futures = sendAll(client, Request.RequestType.LOGIN,
+                Request.RequestType.ABORT_GAME);
+        assertEquals("LOGIN", futures.get(0).get(5, TimeUnit.SECONDS).getMessage());
+        assertEquals("ABORT_GAME", futures.get(1).get(5, TimeUnit.SECONDS).getMessage());
+        client.close();
+    }
+
+    @Test
+    public void close_failsOutstandingRequests() throws Exception {
+        SocketClient client = new SocketClient("127.0.0.1", startServer(2, false, true));
+        CompletableFuture<Response> future = client.send(new Request(Request.RequestType.REQUEST_MOVE, null),
+                Response.class);
+        client.close();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertNull(client.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), Response.class));
+    }
+
+    @Test
+    public void send_failsRequestsPastTheirDeadline() throws Exception {
+        SocketClient client = new SocketClient("127.0.0.1", startServer(2, false, true));
+        client.setDeadline(Request.RequestType.REQUEST_MOVE, 100);
+        long start = System.nanoTime();
+        // The server answers after two requests only
+        assertNull(client.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), Response.class));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        awaitTrue(() -> client.getTimeoutCount() == 1);
+        // The late response of the first request is dropped, not given to the second
+        assertEquals("ABORT_GAME", client.sendRequest(new Request(Request.RequestType.ABORT_GAME, null), Response.class)
+                .getMessage());
+        client.close();
+    }
+
+    @Test
+    public void send_failsOnDeadlineWhileReconnecting() throws Exception {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        List<Socket> accepted = Collections.synchronizedList(new ArrayList<>());
+        Thread thread = new Thread(() -> {
+            try {
+                serverSocket.accept().close(); // Fails the first connect
+                accepted.add(serverSocket.accept()); // Never answers NEGOTIATE_FORMAT, so the reconnect hangs
+            } catch (IOException e) {
+                // Test finished
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        SocketClient client = new SocketClient("127.0.0.1", serverSocket.getLocalPort(), true);
+        client.setDeadline(Request.RequestType.REQUEST_MOVE, 200);
+        long start = System.nanoTime();
+        List<CompletableFuture<Response>> futures = sendAll(client, Request.RequestType.REQUEST_MOVE,
+                Request.RequestType.REQUEST_MOVE);
+        assertTrue("sending does not wait for the reconnect", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+        for (CompletableFuture<Response> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("Expected the request to time out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        client.close();
+        for (Socket socket : accepted)
+            socket.close();
+    }
+
+    @Test
+    public void aBrokenConnection_failsRequestsOutsideTheWriteLock() throws Exception {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket socket = serverSocket.accept();
+                 DataInputStream input = new DataInputStream(socket.getInputStream())) {
+                input.readUTF(); // Drops the connection without answering
+            } catch (IOException e) {
+                // Test finished
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        SocketClient client = new SocketClient("127.0.0.1", serverSocket.getLocalPort());
+        CompletableFuture<Boolean> sentFromAnotherThread = new CompletableFuture<>();
+        client.send(new Request(Request.RequestType.REQUEST_MOVE, null), Response.class).whenComplete((response, error) -> {
+            // A stage that waits for another sender, which needs the write lock
+            Thread sender = new Thread(() -> client.send(new Request(Request.RequestType.REQUEST_MOVE, null), Response.class));
+            sender.start();
+            try {
+                sender.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sentFromAnotherThread.complete(!sender.isAlive());
+        });
+        assertTrue(sentFromAnotherThread.get(5, TimeUnit.SECONDS));
+        client.close();
+    }
+
+    @Test
+    public void send_reportsMetrics() throws Exception {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Metrics.setRegistry(metrics);
+        try {
+            SocketClient client = new SocketClient("127.0.0.1", startServer(2, false, true));
+            List<CompletableFuture<Response>> futures = sendAll(client, Request.RequestType.REQUEST_MOVE,
+                    Request.RequestType.REQUEST_MOVE);
+            for (CompletableFuture<Response> future : futures)
+                future.get(5, TimeUnit.SECONDS);
+            client.close();
+            awaitTrue(() -> metrics.snapshot().get("latency.REQUEST_MOVE.count") == 2);
+            Map<String, Long> snapshot = metrics.snapshot();
+            assertEquals(0, (long) snapshot.get("latency.REQUEST_MOVE.failures"));
+            assertFalse(snapshot.containsKey("latency.SEND_MOVE.count"));
+            assertEquals(1, (long) snapshot.get("connections.opened"));
+            assertTrue(snapshot.get("bytes.out") > 2 * 2 && snapshot.get("bytes.in") > 2 * 2);
+            assertTrue(metrics.dump().contains("bytes.out="));
+        } finally {
+            Metrics.setRegistry(null);
+        }
+    }
+
+    @Test
+    public void send_reconnectsAndResumesTheSession() throws Exception {
+        Gson gson = JsonCodecs.gson(); // Reads the payloads of the requests
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        List<Request> received = Collections.synchronizedList(new ArrayList<>());
+        Thread thread = new Thread(() -> {
+            try {
+                try (Socket socket = serverSocket.accept();
+                     DataInputStream input = new DataInputStream(socket.getInputStream());
+                     DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
+                    Request login = gson.fromJson(input.readUTF(), Request.class);
+                    Response response = new Response(Response.ResponseStatus.SUCCESS, "token-1");
+                    response.setId(login.getId());
+                    output.writeUTF(gson.toJson(response));
+                } // Drops the connection
+                try (Socket socket = serverSocket.accept();
+                     DataInputStream input = new DataInputStream(socket.getInputStream());
+                     DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
+                    for (int i = 0; i < 2; i++) {
+                        Request request = gson.fromJson(input.readUTF(), Request.class);
+                        received.add(request);
+                        Response response = new Response(Response.ResponseStatus.SUCCESS, request.getType().name());
+                        response.setId(request.getId());
+                        output.writeUTF(gson.toJson(response));
+                    }
+                    input.read();
+                }
+            } catch (IOException e) {
+                // Test finished
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        SocketClient client = new SocketClient("127.0.0.1", serverSocket.getLocalPort());
+        User user = new User("player1", "secret", null, false);
+        assertEquals("token-1", client.sendRequest(Request.of(Request.RequestType.LOGIN, user), Response.class).getMessage());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.getReconnectCount() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        Response move = client.sendRequest(new Request(Request.RequestType.REQUEST_MOVE, null), Response.class);
+        assertEquals("REQUEST_MOVE", move.getMessage());
+        assertEquals(1, client.getReconnectCount());
+        assertEquals(Request.RequestType.RESUME_SESSION, received.get(0).getType());
+        assertEquals("token-1", received.get(0).getPayload(String.class));
+        client.close();
+    }
+
+    @Test
+    public void subscribeMoves_deliversPushedMovesToTheListener() throws Exception {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket socket = serverSocket.accept();
+                 DataInputStream input = new DataInputStream(socket.getInputStream());
+                 DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
+                Request request = gson.fromJson(input.readUTF(), Request.class);
+                Response accepted = new Response(Response.ResponseStatus.SUCCESS, null);
+                accepted.setId(request.getId());
+                output.writeUTF(gson.toJson(accepted));
+                GamingResponse move = new GamingResponse(Response.ResponseStatus.SUCCESS, null, 7, true);
+                move.setId(Response.PUSH_ID);
+                output.writeUTF(gson.toJson(move));
+                input.read();
+            } catch (IOException e) {
+                // Test finished
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        SocketClient client = new SocketClient("127.0.0.1", serverSocket.getLocalPort());
+        CompletableFuture<Integer> pushed = new CompletableFuture<>();
+        client.setMoveListener(response -> pushed.complete(response.getMove()));
+        assertTrue(client.subscribeMoves().get(5, TimeUnit.SECONDS));
+        assertEquals(7, (int) pushed.get(5, TimeUnit.SECONDS));
+        client.close();
+    }
+}
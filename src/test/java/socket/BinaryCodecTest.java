@@ -0,0 +1,212 @@
+package socket;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import model.Event;
+import model.User;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BinaryCodec}.
+ */
+public class BinaryCodecTest {
+
+    @Test
+    public void request_roundTrips() throws IOException {
+        Request request = new Request(Request.RequestType.SEND_INVITATION, "\"\u00e9l\u00e8ve\"");
+        request.setId(123456);
+        Request decoded = BinaryCodec.decodeRequest(BinaryCodec.encode(request));
+        assertEquals(123456, decoded.getId());
+        assertEquals(Request.RequestType.SEND_INVITATION, decoded.getType());
+        assertEquals(request.getData(), decoded.getData());
+
+        Request empty = BinaryCodec.decodeRequest(BinaryCodec.encode(new Request()));
+        assertNull(empty.getType());
+        assertNull(empty.getData());
+    }
+
+    @Test
+    public void numericPayloads_areEncodedNatively() throws IOException {
+        Request move = Request.of(Request.RequestType.SEND_MOVE, 8);
+        move.setId(3);
+        byte [] payload = BinaryCodec.encode(move);
+        assertEquals("type, id, request type, kind and the cell", 5, payload.length);
+        Request decodedMove = BinaryCodec.decodeRequest(payload);
+        assertEquals(3, decodedMove.getId());
+        assertEquals(8, (int) decodedMove.getPayload(Integer.class));
+        assertEquals("8", decodedMove.getData());
+
+        Request sequence = BinaryCodec.decodeRequest(BinaryCodec.encode(Request.of(Request.RequestType.REQUEST_MOVE, 300)));
+        assertEquals(300, (int) sequence.getPayload(Integer.class));
+        Request version = BinaryCodec.decodeRequest(BinaryCodec.encode(
+                Request.of(Request.RequestType.UPDATE_PAIRING, 1L << 40)));
+        assertEquals(1L << 40, (long) version.getPayload(Long.class));
+    }
+
+    @Test
+    public void userAndBatchPayloads_areEncodedNatively() throws IOException {
+        Request login = Request.of(Request.RequestType.LOGIN, new User("alice", "secret", null, false));
+        byte [] payload = BinaryCodec.encode(login);
+        assertFalse("no JSON inside the frame", new String(payload, StandardCharsets.UTF_8).contains("{"));
+        User user = BinaryCodec.decodeRequest(payload).getPayload(User.class);
+        assertEquals("alice", user.getUsername());
+        assertEquals("secret", user.getPassword());
+        assertNull(user.getDisplayName());
+
+        Request invitation = BinaryCodec.decodeRequest(BinaryCodec.encode(
+                Request.of(Request.RequestType.SEND_INVITATION, "bob")));
+        assertEquals("bob", invitation.getPayload());
+
+        Request nestedBatch = Request.of(Request.RequestType.BATCH, new Request[0]);
+        Request batch = Request.of(Request.RequestType.BATCH, new Request[] {
+                Request.of(Request.RequestType.SEND_MOVE, 4), login, null, nestedBatch});
+        byte [] batchPayload = BinaryCodec.encode(batch);
+        assertFalse(new String(batchPayload, StandardCharsets.UTF_8).contains("{"));
+        Request [] requests = BinaryCodec.decodeRequest(batchPayload).getPayload(Request[].class);
+        assertEquals(4, requests.length);
+        assertEquals(4, (int) requests[0].getPayload(Integer.class));
+        assertEquals("secret", requests[1].getPayload(User.class).getPassword());
+        assertNull(requests[2]);
+        assertEquals("a nested batch is kept for the server to refuse", 0,
+                requests[3].getPayload(Request[].class).length);
+    }
+
+    @Test(expected = IOException.class)
+    public void numericPayloads_ofTheWrongType_areRejected() throws IOException {
+        byte [] payload = BinaryCodec.encode(Request.of(Request.RequestType.UPDATE_PAIRING, 1L));
+        payload[2] = (byte) (Request.RequestType.SEND_MOVE.ordinal() + 1); // A Long cell
+        BinaryCodec.decodeRequest(payload);
+    }
+
+    @Test
+    public void responses_keepTheirClassAndFields() throws IOException {
+        GamingResponse move = new GamingResponse(Response.ResponseStatus.SUCCESS, null, 8, true);
+        move.setId(Response.PUSH_ID);
+        Response decoded = BinaryCodec.decodeResponse(BinaryCodec.encode(move));
+        assertTrue(decoded instanceof GamingResponse);
+        assertEquals(Response.PUSH_ID, decoded.getId());
+        assertEquals(8, ((GamingResponse) decoded).getMove());
+        assertTrue(((GamingResponse) decoded).isActive());
+        assertNull(decoded.getMessage());
+
+        GamingResponse noMove = new GamingResponse(Response.ResponseStatus.FAILURE, "No game", -1, false);
+        GamingResponse decodedNoMove = (GamingResponse) BinaryCodec.decodeResponse(BinaryCodec.encode(noMove));
+        assertEquals(-1, decodedNoMove.getMove());
+        assertEquals("No game", decodedNoMove.getMessage());
+
+        GamingResponse log = new GamingResponse(Response.ResponseStatus.SUCCESS, null, 7, true);
+        log.setSequence(5);
+        log.setMoves(Arrays.asList(0, 7));
+        GamingResponse decodedLog = (GamingResponse) BinaryCodec.decodeResponse(BinaryCodec.encode(log));
+        assertEquals(5, decodedLog.getSequence());
+        assertEquals(Arrays.asList(0, 7), decodedLog.getMoves());
+        byte [] withoutLog = BinaryCodec.encode(noMove);
+        assertNull(((GamingResponse) BinaryCodec.decodeResponse(Arrays.copyOf(withoutLog, withoutLog.length - 2))).getMoves());
+
+        Response plain = BinaryCodec.decodeResponse(BinaryCodec.encode(new Response(Response.ResponseStatus.SUCCESS, "ok")));
+        assertFalse(plain instanceof GamingResponse);
+        assertEquals(Response.ResponseStatus.SUCCESS, plain.getStatus());
+    }
+
+    @Test
+    public void batchResponses_nestTheirResponses() throws IOException {
+        BatchResponse batch = new BatchResponse(Response.ResponseStatus.SUCCESS, null, Arrays.asList(
+                new Response(Response.ResponseStatus.FAILURE, "Not your turn"),
+                new GamingResponse(Response.ResponseStatus.SUCCESS, null, 5, true)));
+        batch.setId(77);
+        BatchResponse decoded = (BatchResponse) BinaryCodec.decodeResponse(BinaryCodec.encode(batch));
+        assertEquals(77, decoded.getId());
+        assertEquals("Not your turn", decoded.getResponses().get(0).getMessage());
+        assertEquals(5, ((GamingResponse) decoded.getResponses().get(1)).getMove());
+
+        BatchResponse failed = new BatchResponse(Response.ResponseStatus.FAILURE, "Not supported", null);
+        assertNull(((BatchResponse) BinaryCodec.decodeResponse(BinaryCodec.encode(failed))).getResponses());
+    }
+
+    @Test
+    public void pairingResponses_keepTheirDelta() throws IOException {
+        PairingResponse delta = new PairingResponse(Response.ResponseStatus.SUCCESS, null,
+                Arrays.asList(new User("bob", null, "Bob", true)),
+                new Event(9, "carol", "alice", Event.EventStatus.PENDING, null, -1), null);
+        delta.setRemovedUsers(Arrays.asList("dave"));
+        delta.setVersion(1L << 40);
+        delta.setId(12);
+        PairingResponse decoded = (PairingResponse) BinaryCodec.decodeResponse(BinaryCodec.encode(delta));
+        assertEquals(12, decoded.getId());
+        assertEquals(1L << 40, decoded.getVersion());
+        assertFalse(decoded.isNotModified());
+        assertEquals("Bob", decoded.getAvailableUsers().get(0).getDisplayName());
+        assertTrue(decoded.getAvailableUsers().get(0).isOnline());
+        assertEquals(Arrays.asList("dave"), decoded.getRemovedUsers());
+        assertEquals(Event.EventStatus.PENDING, decoded.getInvitation().getStatus());
+        assertEquals(-1, decoded.getInvitation().getMove());
+        assertEquals("carol", decoded.getInvitation().getSender());
+        assertNull(decoded.getInvitationResponse());
+
+        PairingResponse notModified = new PairingResponse();
+        notModified.setStatus(Response.ResponseStatus.SUCCESS);
+        notModified.setNotModified(true);
+        PairingResponse decodedNotModified = (PairingResponse) BinaryCodec.decodeResponse(BinaryCodec.encode(notModified));
+        assertTrue(decodedNotModified.isNotModified());
+        assertNull(decodedNotModified.getAvailableUsers());
+        assertNull(decodedNotModified.getRemovedUsers());
+    }
+
+    @Test
+    public void frames_areSmallerThanJson() {
+        Gson gson = JsonCodecs.gson();
+        GamingResponse move = new GamingResponse(Response.ResponseStatus.SUCCESS, null, 4, true);
+        move.setId(42);
+        int json = gson.toJson(move).getBytes(StandardCharsets.UTF_8).length + 2;
+        int binary = BinaryCodec.encode(move).length + 1;
+        assertTrue(binary + " vs " + json, binary * 5 < json);
+    }
+
+    @Test
+    public void frames_survivePayloadsLargerThanWriteUtf() throws IOException {
+        char [] large = new char[100000];
+        Arrays.fill(large, 'x');
+        Request request = new Request(Request.RequestType.LOGIN, new String(large));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryCodec.writeFrame(new DataOutputStream(bytes), BinaryCodec.encode(request));
+        byte [] payload = BinaryCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(100000, BinaryCodec.decodeRequest(payload).getData().length());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedPayloads_areRejected() throws IOException {
+        byte [] payload = BinaryCodec.encode(new Request(Request.RequestType.LOGIN, "user"));
+        BinaryCodec.decodeRequest(Arrays.copyOf(payload, payload.length - 2));
+    }
+
+    @Test
+    public void highEnumBytes_areRejected() {
+        byte [] request = BinaryCodec.encode(new Request(Request.RequestType.LOGIN, "user"));
+        request[2] = (byte) 0x90; // The request type
+        byte [] response = BinaryCodec.encode(new Response(Response.ResponseStatus.SUCCESS, null));
+        response[2] = (byte) 0xFF; // The status
+        try {
+            BinaryCodec.decodeRequest(request);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+        try {
+            BinaryCodec.decodeResponse(response);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package socket;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import model.Event;
+import model.User;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link JsonCodecs}.
+ */
+public class JsonCodecsTest {
+    private final Gson gson = JsonCodecs.gson();
+    private final Gson reflective = new GsonBuilder().serializeNulls().create();
+
+    private void assertSameJson(Object value) {
+        assertEquals(JsonParser.parseString(reflective.toJson(value)), JsonParser.parseString(gson.toJson(value)));
+    }
+
+    @Test
+    public void adapters_writeTheSameJsonAsReflection() {
+        Request request = new Request(Request.RequestType.NEGOTIATE_FORMAT, BinaryCodec.FORMAT);
+        request.setId(7);
+        assertEquals("{\"type\":\"NEGOTIATE_FORMAT\",\"data\":\"binary-v1\",\"id\":7}", gson.toJson(request));
+        assertEquals("the fields of servers without ids", "{\"type\":null,\"data\":null}", gson.toJson(new Request()));
+        assertSameJson(new Response(Response.ResponseStatus.FAILURE, null));
+        GamingResponse move = new GamingResponse(Response.ResponseStatus.SUCCESS, "ok", 4, true);
+        move.setId(Response.PUSH_ID);
+        assertSameJson(move);
+        assertSameJson(new Event(408, "player1", "player2", Event.EventStatus.PLAYING, null, 8));
+        assertSameJson(new User("player1", "secret", null, true));
+        assertSameJson(new PairingResponse(Response.ResponseStatus.SUCCESS, null,
+                Arrays.asList(new User("player2", null, "Player Two", true), null),
+                new Event(5, "player2", "player1", Event.EventStatus.PENDING, null, -1), null));
+        assertSameJson(new PairingResponse());
+    }
+
+    @Test
+    public void adapters_readReflectiveJson() {
+        GamingResponse move = new GamingResponse(Response.ResponseStatus.SUCCESS, "ok", 4, true);
+        move.setId(12);
+        GamingResponse decoded = gson.fromJson(reflective.toJson(move), GamingResponse.class);
+        assertEquals(12, decoded.getId());
+        assertEquals(Response.ResponseStatus.SUCCESS, decoded.getStatus());
+        assertEquals("ok", decoded.getMessage());
+        assertEquals(4, decoded.getMove());
+        assertTrue(decoded.isActive());
+
+        Event event = gson.fromJson(reflective.toJson(
+                new Event(408, "player1", "player2", Event.EventStatus.ACCEPTED, "player2", 3)), Event.class);
+        assertEquals(408, event.getEventId());
+        assertEquals("player1", event.getSender());
+        assertEquals("player2", event.getOpponent());
+        assertEquals(Event.EventStatus.ACCEPTED, event.getStatus());
+        assertEquals("player2", event.getTurn());
+        assertEquals(3, event.getMove());
+
+        User user = gson.fromJson(reflective.toJson(new User("player1", "secret", "Player One", true)), User.class);
+        assertEquals("player1", user.getUsername());
+        assertEquals("secret", user.getPassword());
+        assertEquals("Player One", user.getDisplayName());
+        assertTrue(user.isOnline());
+
+        PairingResponse pairing = gson.fromJson(reflective.toJson(new PairingResponse(Response.ResponseStatus.SUCCESS, "ok",
+                Arrays.asList(new User("player2", null, "Player Two", true)), null,
+                new Event(5, "player1", "player2", Event.EventStatus.ACCEPTED, null, -1))), PairingResponse.class);
+        assertEquals("player2", pairing.getAvailableUsers().get(0).getUsername());
+        assertNull(pairing.getInvitation());
+        assertEquals(Event.EventStatus.ACCEPTED, pairing.getInvitationResponse().getStatus());
+        assertEquals("ok", pairing.getMessage());
+    }
+
+    @Test
+    public void adapters_skipUnknownFieldsAndEnumNames() {
+        Request request = gson.fromJson("{\"type\":\"TELEPORT\",\"extra\":{\"a\":[1,2]},\"data\":\"x\",\"id\":3}", Request.class);
+        assertNull(request.getType());
+        assertEquals("x", request.getData());
+        assertEquals(3, request.getId());
+
+        Response response = gson.fromJson("{\"status\":null}", Response.class);
+        assertNull(response.getStatus());
+        assertNull(response.getMessage());
+        assertEquals(0, response.getId());
+        assertNull(gson.fromJson("null", Response.class));
+    }
+
+    @Test
+    public void payloads_areWrittenAsStrings() {
+        Request move = Request.of(Request.RequestType.SEND_MOVE, 4);
+        move.setId(9);
+        assertEquals("{\"type\":\"SEND_MOVE\",\"data\":\"4\",\"id\":9}", gson.toJson(move));
+
+        Request login = Request.of(Request.RequestType.LOGIN, new User("player1", "secret", null, false));
+        String json = gson.toJson(login);
+        assertEquals("a server binding data to a String reads it", login.getData(),
+                reflective.fromJson(json, Request.class).getData());
+        User user = gson.fromJson(json, Request.class).getPayload(User.class);
+        assertEquals("player1", user.getUsername());
+        assertEquals("secret", user.getPassword());
+
+        Request invitation = gson.fromJson(gson.toJson(Request.of(Request.RequestType.SEND_INVITATION, "player2")), Request.class);
+        assertEquals("player2", invitation.getPayload());
+        assertEquals("\"player2\"", invitation.getData());
+    }
+
+    @Test
+    public void payloads_areWrittenInlineWhenNegotiated() {
+        Gson inline = JsonCodecs.gson(JsonCodecs.INLINE_FORMAT);
+        assertSame(JsonCodecs.inlineGson(), inline);
+        assertSame(gson, JsonCodecs.gson(BinaryCodec.FORMAT));
+        Request move = Request.of(Request.RequestType.SEND_MOVE, 4);
+        move.setId(9);
+        assertEquals("{\"type\":\"SEND_MOVE\",\"data\":4,\"id\":9}", inline.toJson(move));
+        assertEquals("a server that did not negotiate keeps the string form",
+                "{\"type\":\"SEND_MOVE\",\"data\":\"4\",\"id\":9}", gson.toJson(move));
+
+        Request batch = Request.of(Request.RequestType.BATCH, new Request[] {
+                Request.of(Request.RequestType.LOGIN, new User("player1", "secret", null, false)),
+                new Request(Request.RequestType.SEND_MOVE, "5")});
+        String json = inline.toJson(batch);
+        assertTrue(json, json.startsWith("{\"type\":\"BATCH\",\"data\":[{\"type\":\"LOGIN\",\"data\":{"));
+        Request [] requests = gson.fromJson(json, Request.class).getPayload(Request[].class);
+        assertEquals("secret", requests[0].getPayload(User.class).getPassword());
+        assertEquals(Integer.valueOf(5), requests[1].getPayload(Integer.class));
+
+        assertEquals(JsonCodecs.INLINE_FORMAT, JsonCodecs.negotiatedFormat(
+                new Response(Response.ResponseStatus.SUCCESS, JsonCodecs.INLINE_FORMAT)));
+        assertEquals("servers that do not name the format accepted the first one", BinaryCodec.FORMAT,
+                JsonCodecs.negotiatedFormat(new Response(Response.ResponseStatus.SUCCESS, null)));
+        assertNull(JsonCodecs.negotiatedFormat(new Response(Response.ResponseStatus.FAILURE, "Unsupported format")));
+    }
+
+    @Test
+    public void payloads_acceptTheStringForm() {
+        Request move = gson.fromJson(reflective.toJson(new Request(Request.RequestType.SEND_MOVE, "4")), Request.class);
+        assertEquals(Integer.valueOf(4), move.getPayload(Integer.class));
+
+        Request invitation = gson.fromJson(
+                reflective.toJson(new Request(Request.RequestType.SEND_INVITATION, "\"player2\"")), Request.class);
+        assertEquals("player2", invitation.getPayload());
+
+        Request accept = gson.fromJson("{\"data\":408,\"type\":\"ACCEPT_INVITATION\"}", Request.class); // Inline
+        assertEquals(Integer.valueOf(408), accept.getPayload(Integer.class));
+
+        Request login = new Request(Request.RequestType.LOGIN, reflective.toJson(new User("player1", "secret", null, true)));
+        assertEquals("player1", login.getPayload(User.class).getUsername());
+    }
+
+    @Test
+    public void batches_keepTheirRequestsAndResponseClasses() {
+        Request batch = Request.of(Request.RequestType.BATCH, new Request[] {
+                Request.of(Request.RequestType.SEND_MOVE, 4), new Request(Request.RequestType.REQUEST_MOVE, null)});
+        Request [] requests = gson.fromJson(gson.toJson(batch), Request.class).getPayload(Request[].class);
+        assertEquals(2, requests.length);
+        assertEquals(Integer.valueOf(4), requests[0].getPayload(Integer.class));
+        assertEquals(Request.RequestType.REQUEST_MOVE, requests[1].getType());
+
+        BatchResponse response = new BatchResponse(Response.ResponseStatus.SUCCESS, null, Arrays.asList(
+                new Response(Response.ResponseStatus.SUCCESS, null),
+                new GamingResponse(Response.ResponseStatus.SUCCESS, null, 3, true),
+                new PairingResponse(Response.ResponseStatus.SUCCESS, null, null, null, null),
+                null));
+        BatchResponse decoded = gson.fromJson(gson.toJson(response), BatchResponse.class);
+        assertEquals(4, decoded.getResponses().size());
+        assertEquals(Response.class, decoded.getResponses().get(0).getClass());
+        assertEquals(3, ((GamingResponse) decoded.getResponses().get(1)).getMove());
+        assertTrue(decoded.getResponses().get(2) instanceof PairingResponse);
+        assertNull(decoded.getResponses().get(3));
+
+        assertNull(gson.fromJson("{\"status\":\"FAILURE\",\"message\":\"Not supported\"}", BatchResponse.class)
+                .getResponses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void payloads_mustMatchTheType() {
+        Request.of(Request.RequestType.SEND_MOVE, "4");
+    }
+}